@@ -5,5 +5,9 @@ import com.crashinvaders.common.Version;
 public class AppConstants {
     public static final String PREF_NAME_COMMON = "common.xml";
     public static final String PROJECT_FILE_EXT = "tpproj";
+    /** Binary project format, for projects with a lot of packs */
+    public static final String PROJECT_BINARY_FILE_EXT = "tpprojb";
+    /** Preferences and caches, relative to the user's home directory */
+    public static final String APP_DATA_DIR = ".gdxtexturepackergui";
     public static final Version version = new Version("4.2.0");
 }
\ No newline at end of file
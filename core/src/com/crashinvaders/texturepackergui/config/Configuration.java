@@ -14,9 +14,7 @@ import com.badlogic.gdx.utils.viewport.ScreenViewport;
 import com.badlogic.gdx.utils.viewport.Viewport;
 import com.crashinvaders.texturepackergui.App;
 import com.crashinvaders.texturepackergui.AppParams;
-import com.crashinvaders.texturepackergui.services.ProjectSerializer;
-import com.crashinvaders.texturepackergui.services.model.ModelService;
-import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.services.CommonDialogs;
 import com.github.czyzby.autumn.annotation.Component;
 import com.github.czyzby.autumn.annotation.Initiate;
 import com.github.czyzby.autumn.mvc.component.i18n.LocaleService;
@@ -113,16 +111,19 @@ public class Configuration {
 
     // Try load initial project
     @Initiate(priority = -1000)
-    public void startupProject(ModelService modelService, ProjectSerializer projectSerializer) {
+    public void startupProject(final CommonDialogs commonDialogs) {
         AppParams params = App.inst().getParams();
         if (params.startupProject == null) return;
 
-        FileHandle projectFile = FileUtils.toFileHandle(params.startupProject);
+        final FileHandle projectFile = FileUtils.toFileHandle(params.startupProject);
         if (!projectFile.exists()) return;
 
-        ProjectModel project = projectSerializer.loadProject(projectFile);
-        project.setProjectFile(projectFile);
-
-        modelService.setProject(project);
+        // Loaded in background the same way as from the menu, the loading dialog needs the first view to be shown
+        Gdx.app.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                commonDialogs.openProject(projectFile);
+            }
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,83 @@
+package com.crashinvaders.texturepackergui.controllers;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.I18NBundle;
+import com.crashinvaders.texturepackergui.controllers.packing.processors.CompressionEstimator;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.utils.packprocessing.StageMetrics;
+import com.kotcrab.vis.ui.widget.VisLabel;
+import com.kotcrab.vis.ui.widget.VisTextButton;
+
+import java.util.Locale;
+
+/**
+ * Runs {@link CompressionEstimator} on a background thread and shows the result in the compression settings dialog.
+ * Estimate button is disabled while the estimation is in progress.
+ */
+class CompressionEstimateTask implements Runnable {
+    private static final String TAG = CompressionEstimateTask.class.getSimpleName();
+
+    private final CompressionEstimator estimator;
+    private final Array<PackModel> packs;
+    private final VisTextButton btnEstimate;
+    private final VisLabel lblEstimate;
+    private final I18NBundle i18n;
+
+    private CompressionEstimateTask(CompressionEstimator estimator, Array<PackModel> packs,
+                                    VisTextButton btnEstimate, VisLabel lblEstimate, I18NBundle i18n) {
+        this.estimator = estimator;
+        this.packs = packs;
+        this.btnEstimate = btnEstimate;
+        this.lblEstimate = lblEstimate;
+        this.i18n = i18n;
+    }
+
+    /** @param estimator should be created for a copy of the compression model, as the dialog keeps changing it */
+    static void start(CompressionEstimator estimator, Array<PackModel> packs,
+                      VisTextButton btnEstimate, VisLabel lblEstimate, I18NBundle i18n) {
+        btnEstimate.setDisabled(true);
+        lblEstimate.setText(i18n.get("dCompEstimating"));
+        lblEstimate.setVisible(true);
+
+        Thread thread = new Thread(new CompressionEstimateTask(estimator, new Array<>(packs), btnEstimate, lblEstimate, i18n),
+                "CompressionEstimator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        String message;
+        try {
+            CompressionEstimator.Estimate estimate = estimator.estimate(packs);
+            if (estimate == null) {
+                message = i18n.get("dCompEstimateNoPages");
+            } else {
+                message = i18n.format("dCompEstimateResult",
+                        estimate.pageCount,
+                        StageMetrics.formatBytes(estimate.originalBytes),
+                        StageMetrics.formatBytes(estimate.compressedBytes),
+                        String.format(Locale.US, "%.1f", estimate.getSavedRate() * 100f),
+                        formatDuration(estimate.wallMillis));
+            }
+        } catch (Exception e) {
+            Gdx.app.error(TAG, "Error during compression estimation", e);
+            message = i18n.format("dCompEstimateFailed", e.getMessage());
+        }
+
+        final String result = message;
+        Gdx.app.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                lblEstimate.setText(result);
+                btnEstimate.setDisabled(false);
+            }
+        });
+    }
+
+    private static String formatDuration(long millis) {
+        if (millis < 120000L) return String.format(Locale.US, "%.1fs", millis / 1000f);
+        return String.format(Locale.US, "%.1f min", millis / 60000f);
+    }
+}
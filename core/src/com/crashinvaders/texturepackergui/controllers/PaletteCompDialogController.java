@@ -0,0 +1,78 @@
+package com.crashinvaders.texturepackergui.controllers;
+
+import com.badlogic.gdx.Gdx;
+import com.crashinvaders.texturepackergui.services.model.ModelService;
+import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.services.model.compression.PaletteCompressionModel;
+import com.crashinvaders.texturepackergui.services.model.compression.PngCompressionModel;
+import com.github.czyzby.autumn.annotation.Inject;
+import com.github.czyzby.autumn.mvc.stereotype.ViewDialog;
+import com.github.czyzby.lml.annotation.LmlAction;
+import com.github.czyzby.lml.annotation.LmlActor;
+import com.github.czyzby.lml.annotation.LmlAfter;
+import com.github.czyzby.lml.parser.action.ActionContainer;
+import com.kotcrab.vis.ui.widget.spinner.FloatSpinnerModel;
+import com.kotcrab.vis.ui.widget.spinner.IntSpinnerModel;
+import com.kotcrab.vis.ui.widget.spinner.Spinner;
+
+import java.math.BigDecimal;
+
+@ViewDialog(id = "dialog_comp_palette", value = "lml/compression/dialogPalette.lml")
+public class PaletteCompDialogController implements ActionContainer {
+    private static final String TAG = PaletteCompDialogController.class.getSimpleName();
+
+    @Inject ModelService modelService;
+
+    @LmlActor("spnMaxColors") Spinner spnMaxColors;
+    @LmlActor("spnDithering") Spinner spnDithering;
+    @LmlActor("spnQualityFloor") Spinner spnQualityFloor;
+
+    private PaletteCompressionModel compressionModel;
+
+    @LmlAfter
+    public void initialize() {
+        compressionModel = obtainCompressionModel();
+        if (compressionModel == null) return;
+
+        updateValuesFromModel();
+    }
+
+    @LmlAction("onMaxColorsValueChanged") void onMaxColorsValueChanged() {
+        int maxColors = ((IntSpinnerModel) spnMaxColors.getModel()).getValue();
+        if (compressionModel.getMaxColors() == maxColors) return;
+        compressionModel.setMaxColors(maxColors);
+        modelService.getProject().notifyPngCompressionChanged();
+    }
+
+    @LmlAction("onDitheringValueChanged") void onDitheringValueChanged() {
+        float dithering = ((FloatSpinnerModel) spnDithering.getModel()).getValue().floatValue();
+        if (compressionModel.getDithering() == dithering) return;
+        compressionModel.setDithering(dithering);
+        modelService.getProject().notifyPngCompressionChanged();
+    }
+
+    @LmlAction("onQualityFloorValueChanged") void onQualityFloorValueChanged() {
+        int qualityFloor = ((IntSpinnerModel) spnQualityFloor.getModel()).getValue();
+        if (compressionModel.getQualityFloor() == qualityFloor) return;
+        compressionModel.setQualityFloor(qualityFloor);
+        modelService.getProject().notifyPngCompressionChanged();
+    }
+
+    private void updateValuesFromModel() {
+        ((IntSpinnerModel) spnMaxColors.getModel()).setValue(compressionModel.getMaxColors());
+        ((FloatSpinnerModel) spnDithering.getModel()).setValue(BigDecimal.valueOf(compressionModel.getDithering()));
+        ((IntSpinnerModel) spnQualityFloor.getModel()).setValue(compressionModel.getQualityFloor());
+    }
+
+    private PaletteCompressionModel obtainCompressionModel() {
+        ProjectModel project = modelService.getProject();
+        PngCompressionModel pngCompression = project.getPngCompression();
+
+        if (pngCompression == null || pngCompression.getType() != PngCompressionType.PALETTE) {
+            Gdx.app.error(TAG, "Dialog was created while model holds different compression type");
+            return null;
+        }
+        return (PaletteCompressionModel) project.getPngCompression();
+    }
+}
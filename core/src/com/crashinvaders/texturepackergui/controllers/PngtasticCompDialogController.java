@@ -1,18 +1,22 @@
 package com.crashinvaders.texturepackergui.controllers;
 
 import com.badlogic.gdx.Gdx;
+import com.crashinvaders.texturepackergui.controllers.packing.processors.CompressionEstimator;
 import com.crashinvaders.texturepackergui.services.model.ModelService;
 import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
 import com.crashinvaders.texturepackergui.services.model.ProjectModel;
 import com.crashinvaders.texturepackergui.services.model.compression.PngCompressionModel;
 import com.crashinvaders.texturepackergui.services.model.compression.PngtasticCompressionModel;
 import com.github.czyzby.autumn.annotation.Inject;
+import com.github.czyzby.autumn.mvc.component.i18n.LocaleService;
 import com.github.czyzby.autumn.mvc.stereotype.ViewDialog;
 import com.github.czyzby.lml.annotation.LmlAction;
 import com.github.czyzby.lml.annotation.LmlActor;
 import com.github.czyzby.lml.annotation.LmlAfter;
 import com.github.czyzby.lml.parser.action.ActionContainer;
 import com.kotcrab.vis.ui.widget.VisCheckBox;
+import com.kotcrab.vis.ui.widget.VisLabel;
+import com.kotcrab.vis.ui.widget.VisTextButton;
 import com.kotcrab.vis.ui.widget.spinner.IntSpinnerModel;
 import com.kotcrab.vis.ui.widget.spinner.Spinner;
 
@@ -21,9 +25,12 @@ public class PngtasticCompDialogController implements ActionContainer {
     private static final String TAG = PngtasticCompDialogController.class.getSimpleName();
 
     @Inject ModelService modelService;
+    @Inject LocaleService localeService;
 
     @LmlActor("spnLevel") Spinner spnLevel;
     @LmlActor("chbRemoveGamma") VisCheckBox chbRemoveGamma;
+    @LmlActor("btnEstimate") VisTextButton btnEstimate;
+    @LmlActor("lblEstimate") VisLabel lblEstimate;
 
     private PngtasticCompressionModel compressionModel;
 
@@ -37,12 +44,24 @@ public class PngtasticCompDialogController implements ActionContainer {
 
     @LmlAction("onLevelValueChanged") void onLevelValueChanged() {
         int level = ((IntSpinnerModel) spnLevel.getModel()).getValue();
+        if (compressionModel.getLevel() == level) return;
         compressionModel.setLevel(level);
+        modelService.getProject().notifyPngCompressionChanged();
     }
 
     @LmlAction("onRemoveGammaChanged") void onRemoveGammaChanged() {
         boolean removeGamma = chbRemoveGamma.isChecked();
+        if (compressionModel.isRemoveGamma() == removeGamma) return;
         compressionModel.setRemoveGamma(removeGamma);
+        modelService.getProject().notifyPngCompressionChanged();
+    }
+
+    @LmlAction("estimateCompression") void estimateCompression() {
+        // Estimation runs in the background, so it works on a copy of the settings
+        PngtasticCompressionModel settings = new PngtasticCompressionModel();
+        settings.deserializeState(compressionModel.serializeState());
+        CompressionEstimateTask.start(new CompressionEstimator(settings), modelService.getProject().getPacks(),
+                btnEstimate, lblEstimate, localeService.getI18nBundle());
     }
 
     private void updateValuesFromModel() {
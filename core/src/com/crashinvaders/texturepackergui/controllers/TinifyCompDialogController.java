@@ -2,19 +2,26 @@ package com.crashinvaders.texturepackergui.controllers;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.scenes.scene2d.Stage;
+import com.crashinvaders.texturepackergui.events.ToastNotificationEvent;
 import com.crashinvaders.texturepackergui.services.TinifyService;
 import com.crashinvaders.texturepackergui.utils.WidgetUtils;
+import com.crashinvaders.texturepackergui.utils.packprocessing.StageMetrics;
 import com.github.czyzby.autumn.annotation.Inject;
+import com.github.czyzby.autumn.mvc.component.i18n.LocaleService;
 import com.github.czyzby.autumn.mvc.component.ui.InterfaceService;
 import com.github.czyzby.autumn.mvc.stereotype.ViewDialog;
 import com.github.czyzby.autumn.mvc.stereotype.ViewStage;
+import com.github.czyzby.autumn.processor.event.EventDispatcher;
 import com.github.czyzby.lml.annotation.LmlAction;
 import com.github.czyzby.lml.annotation.LmlActor;
 import com.github.czyzby.lml.annotation.LmlAfter;
 import com.github.czyzby.lml.parser.action.ActionContainer;
 import com.kotcrab.vis.ui.widget.VisImageButton;
+import com.kotcrab.vis.ui.widget.VisLabel;
 import com.kotcrab.vis.ui.widget.VisTextField;
 import com.kotcrab.vis.ui.widget.VisWindow;
+import com.kotcrab.vis.ui.widget.spinner.IntSpinnerModel;
+import com.kotcrab.vis.ui.widget.spinner.Spinner;
 import com.tinify.Exception;
 
 @ViewDialog(id = "dialog_comp_tinify", value = "lml/compression/dialogTinify.lml")
@@ -24,10 +31,14 @@ public class TinifyCompDialogController implements ActionContainer {
     @Inject InterfaceService interfaceService;
     @Inject TinifyService tinifyService;
     @Inject ErrorDialogController errorDialogController;
+    @Inject LocaleService localeService;
+    @Inject EventDispatcher eventDispatcher;
 
     @ViewStage Stage stage;
 
     @LmlActor("edtApiKey") VisTextField edtApiKey;
+    @LmlActor("spnUploadConcurrency") Spinner spnUploadConcurrency;
+    @LmlActor("lblCompressionCount") VisLabel lblCompressionCount;
 
     @LmlAfter
     public void initialize() {
@@ -38,6 +49,17 @@ public class TinifyCompDialogController implements ActionContainer {
         tinifyService.setApiKey(edtApiKey.getText());
     }
 
+    @LmlAction("onUploadConcurrencyChanged") void onUploadConcurrencyChanged() {
+        int uploadConcurrency = ((IntSpinnerModel) spnUploadConcurrency.getModel()).getValue();
+        tinifyService.setUploadConcurrency(uploadConcurrency);
+    }
+
+    @LmlAction("clearCache") void clearCache() {
+        long freedBytes = tinifyService.clearCache();
+        eventDispatcher.postEvent(new ToastNotificationEvent()
+                .message(localeService.getI18nBundle().format("toastTinifyCacheCleared", StageMetrics.formatBytes(freedBytes))));
+    }
+
     @LmlAction("registerNewUser") void registerNewUser() {
         Gdx.net.openURI("https://tinypng.com/developers");
     }
@@ -55,6 +77,7 @@ public class TinifyCompDialogController implements ActionContainer {
             @Override
             public void onValid() {
                 Gdx.app.log(TAG, "Tinify API key validation succeed");
+                updateCompressionCount();
 
                 pleaseWaitDialog.findActor("groupChecking").setVisible(false);
                 pleaseWaitDialog.findActor("groupValid").setVisible(true);
@@ -85,5 +108,16 @@ public class TinifyCompDialogController implements ActionContainer {
 
     private void updateValuesFromTinifyService() {
         edtApiKey.setText(tinifyService.getApiKey());
+        ((IntSpinnerModel) spnUploadConcurrency.getModel()).setValue(tinifyService.getUploadConcurrency());
+        updateCompressionCount();
+    }
+
+    private void updateCompressionCount() {
+        int compressionCount = tinifyService.getCompressionCount();
+        lblCompressionCount.setVisible(compressionCount >= 0);
+        if (compressionCount >= 0) {
+            lblCompressionCount.setText(localeService.getI18nBundle().format("dCompTinifyCompressionCount",
+                    compressionCount, tinifyService.getRemainingFreeCompressions()));
+        }
     }
 }
\ No newline at end of file
@@ -1,28 +1,40 @@
 package com.crashinvaders.texturepackergui.controllers;
 
 import com.badlogic.gdx.Gdx;
+import com.crashinvaders.texturepackergui.controllers.packing.processors.CompressionEstimator;
 import com.crashinvaders.texturepackergui.services.model.ModelService;
 import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
 import com.crashinvaders.texturepackergui.services.model.ProjectModel;
 import com.crashinvaders.texturepackergui.services.model.compression.PngCompressionModel;
 import com.crashinvaders.texturepackergui.services.model.compression.ZopfliCompressionModel;
 import com.github.czyzby.autumn.annotation.Inject;
+import com.github.czyzby.autumn.mvc.component.i18n.LocaleService;
 import com.github.czyzby.autumn.mvc.stereotype.ViewDialog;
 import com.github.czyzby.lml.annotation.LmlAction;
 import com.github.czyzby.lml.annotation.LmlActor;
 import com.github.czyzby.lml.annotation.LmlAfter;
 import com.github.czyzby.lml.parser.action.ActionContainer;
+import com.kotcrab.vis.ui.widget.VisLabel;
+import com.kotcrab.vis.ui.widget.VisTextButton;
+import com.kotcrab.vis.ui.widget.spinner.FloatSpinnerModel;
 import com.kotcrab.vis.ui.widget.spinner.IntSpinnerModel;
 import com.kotcrab.vis.ui.widget.spinner.Spinner;
 
+import java.math.BigDecimal;
+
 @ViewDialog(id = "dialog_comp_zopfli", value = "lml/compression/dialogZopfli.lml")
 public class ZopfliCompDialogController implements ActionContainer {
     private static final String TAG = ZopfliCompDialogController.class.getSimpleName();
 
     @Inject ModelService modelService;
+    @Inject LocaleService localeService;
 
     @LmlActor("spnLevel") Spinner spnLevel;
     @LmlActor("spnIterations") Spinner spnIterations;
+    @LmlActor("spnPageTimeLimit") Spinner spnPageTimeLimit;
+    @LmlActor("spnMinStepGain") Spinner spnMinStepGain;
+    @LmlActor("btnEstimate") VisTextButton btnEstimate;
+    @LmlActor("lblEstimate") VisLabel lblEstimate;
 
     private ZopfliCompressionModel compressionModel;
 
@@ -36,17 +48,45 @@ public class ZopfliCompDialogController implements ActionContainer {
 
     @LmlAction("onLevelValueChanged") void onLevelValueChanged() {
         int level = ((IntSpinnerModel) spnLevel.getModel()).getValue();
+        if (compressionModel.getLevel() == level) return;
         compressionModel.setLevel(level);
+        modelService.getProject().notifyPngCompressionChanged();
     }
 
     @LmlAction("onIterationsValueChanged") void onIterationsValueChanged() {
         int level = ((IntSpinnerModel) spnIterations.getModel()).getValue();
+        if (compressionModel.getIterations() == level) return;
         compressionModel.setIterations(level);
+        modelService.getProject().notifyPngCompressionChanged();
+    }
+
+    @LmlAction("onPageTimeLimitValueChanged") void onPageTimeLimitValueChanged() {
+        int pageTimeLimit = ((IntSpinnerModel) spnPageTimeLimit.getModel()).getValue();
+        if (compressionModel.getPageTimeLimit() == pageTimeLimit) return;
+        compressionModel.setPageTimeLimit(pageTimeLimit);
+        modelService.getProject().notifyPngCompressionChanged();
+    }
+
+    @LmlAction("onMinStepGainValueChanged") void onMinStepGainValueChanged() {
+        float minStepGain = ((FloatSpinnerModel) spnMinStepGain.getModel()).getValue().floatValue();
+        if (compressionModel.getMinStepGain() == minStepGain) return;
+        compressionModel.setMinStepGain(minStepGain);
+        modelService.getProject().notifyPngCompressionChanged();
+    }
+
+    @LmlAction("estimateCompression") void estimateCompression() {
+        // Estimation runs in the background, so it works on a copy of the settings
+        ZopfliCompressionModel settings = new ZopfliCompressionModel();
+        settings.deserializeState(compressionModel.serializeState());
+        CompressionEstimateTask.start(new CompressionEstimator(settings), modelService.getProject().getPacks(),
+                btnEstimate, lblEstimate, localeService.getI18nBundle());
     }
 
     private void updateValuesFromModel() {
         ((IntSpinnerModel) spnLevel.getModel()).setValue(compressionModel.getLevel());
         ((IntSpinnerModel) spnIterations.getModel()).setValue(compressionModel.getIterations());
+        ((IntSpinnerModel) spnPageTimeLimit.getModel()).setValue(compressionModel.getPageTimeLimit());
+        ((FloatSpinnerModel) spnMinStepGain.getModel()).setValue(BigDecimal.valueOf(compressionModel.getMinStepGain()));
     }
 
     private ZopfliCompressionModel obtainCompressionModel() {
@@ -3,10 +3,17 @@ package com.crashinvaders.texturepackergui.controllers.main;
 import com.badlogic.gdx.scenes.scene2d.ui.SelectBox;
 import com.crashinvaders.common.scene2d.ShrinkContainer;
 import com.github.czyzby.lml.annotation.LmlActor;
+import com.kotcrab.vis.ui.widget.VisCheckBox;
+import com.kotcrab.vis.ui.widget.spinner.Spinner;
 
 @SuppressWarnings("WeakerAccess")
 public class GlobalSettingsActors {
 
     @LmlActor("containerPngCompSettings") ShrinkContainer containerPngCompSettings;
     @LmlActor("cboPngCompression") SelectBox<WidgetData.CompressionPng> cboPngCompression;
+    @LmlActor("cboEtcOutput") SelectBox<WidgetData.EtcOutput> cboEtcOutput;
+    @LmlActor("cbEtcZipped") VisCheckBox cbEtcZipped;
+    @LmlActor("spnWorkerThreads") Spinner spnWorkerThreads;
+    @LmlActor("spnPackTimeBudget") Spinner spnPackTimeBudget;
+    @LmlActor("cbWatchMode") VisCheckBox cbWatchMode;
 }
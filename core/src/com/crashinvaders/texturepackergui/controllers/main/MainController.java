@@ -13,12 +13,17 @@ import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.viewport.Viewport;
 import com.crashinvaders.texturepackergui.config.attributes.OnRightClickLmlAttribute;
 import com.crashinvaders.texturepackergui.events.*;
-import com.crashinvaders.texturepackergui.services.ProjectSerializer;
+import com.crashinvaders.texturepackergui.services.CommonDialogs;
+import com.crashinvaders.texturepackergui.services.PackWatchService;
 import com.crashinvaders.texturepackergui.services.RecentProjectsRepository;
+import com.crashinvaders.texturepackergui.services.WorkerPoolService;
+import com.crashinvaders.texturepackergui.services.model.EtcFormat;
+import com.crashinvaders.texturepackergui.services.model.EtcOutputModel;
 import com.crashinvaders.texturepackergui.services.model.ModelService;
 import com.crashinvaders.texturepackergui.services.model.PackModel;
 import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
 import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.services.model.compression.PaletteCompressionModel;
 import com.crashinvaders.texturepackergui.services.model.compression.PngCompressionModel;
 import com.crashinvaders.texturepackergui.services.model.compression.PngtasticCompressionModel;
 import com.crashinvaders.texturepackergui.services.model.compression.TinyPngCompressionModel;
@@ -55,9 +60,11 @@ public class MainController implements ActionContainer, ViewResizer {
     @Inject ModelService modelService;
     @Inject LocaleService localeService;
     @Inject EventDispatcher eventDispatcher;
-    @Inject ProjectSerializer projectSerializer;
+    @Inject CommonDialogs commonDialogs;
     @Inject RecentProjectsRepository recentProjects;
     @Inject CanvasController canvasController;
+    @Inject WorkerPoolService workerPoolService;
+    @Inject PackWatchService packWatchService;
 
     @ViewStage Stage stage;
 
@@ -73,6 +80,8 @@ public class MainController implements ActionContainer, ViewResizer {
 
     /** Indicates that view is shown and ready to be used in code */
     private boolean initialized;
+    /** Settings widgets fire change events when they are filled from the pack, such changes are not pack modifications */
+    private boolean updatingViewsFromPack;
 
     @SuppressWarnings("unchecked")
     @LmlAfter
@@ -84,6 +93,10 @@ public class MainController implements ActionContainer, ViewResizer {
         actorsPackSettings.cboWrapX.setItems(WidgetData.textureWraps);
         actorsPackSettings.cboWrapY.setItems(WidgetData.textureWraps);
         actorsGlobalSettings.cboPngCompression.setItems(WidgetData.CompressionPng.values());
+        actorsGlobalSettings.cboEtcOutput.setItems(WidgetData.EtcOutput.values());
+        ((IntSpinnerModel) actorsGlobalSettings.spnWorkerThreads.getModel()).setValue(workerPoolService.getWorkerThreads(), false);
+        ((IntSpinnerModel) actorsGlobalSettings.spnPackTimeBudget.getModel()).setValue(workerPoolService.getPackTimeBudget(), false);
+        actorsGlobalSettings.cbWatchMode.setChecked(packWatchService.isEnabled());
 
         toastManager = new ToastManager(getStage());
         toastManager.setAlignment(Align.bottomRight);
@@ -96,6 +109,7 @@ public class MainController implements ActionContainer, ViewResizer {
         updateViewsFromPack(getSelectedPack());
         updateRecentProjects();
         updatePngCompression();
+        updateEtcOutput();
     }
 
     @Override
@@ -113,6 +127,7 @@ public class MainController implements ActionContainer, ViewResizer {
             updateViewsFromPack(event.getProject().getSelectedPack());
             updateRecentProjects();
             updatePngCompression();
+            updateEtcOutput();
         }
     }
 
@@ -128,6 +143,9 @@ public class MainController implements ActionContainer, ViewResizer {
                 case PNG_COMPRESSION:
                     updatePngCompression();
                     break;
+                case ETC_OUTPUT:
+                    updateEtcOutput();
+                    break;
             }
         }
     }
@@ -319,6 +337,7 @@ public class MainController implements ActionContainer, ViewResizer {
             case "cbGrid": settings.grid = checkBox.isChecked(); break;
             case "cbSquare": settings.square = checkBox.isChecked(); break;
         }
+        onPackSettingsChanged(pack);
     }
 
     @LmlAction("onSettingsIntSpinnerChanged") void onSettingsIntSpinnerChanged(Spinner spinner) {
@@ -336,6 +355,7 @@ public class MainController implements ActionContainer, ViewResizer {
             case "spnPaddingX": settings.paddingX = model.getValue(); break;
             case "spnPaddingY": settings.paddingY = model.getValue(); break;
         }
+        onPackSettingsChanged(pack);
     }
 
     @LmlAction("onSettingsFloatSpinnerChanged") void onSettingsFloatSpinnerChanged(Spinner spinner) {
@@ -347,6 +367,7 @@ public class MainController implements ActionContainer, ViewResizer {
         switch (spinner.getName()) {
             case "spnJpegQuality": settings.jpegQuality = model.getValue().floatValue(); break;
         }
+        onPackSettingsChanged(pack);
     }
 
     @LmlAction("onSettingsCboChanged") void onSettingsCboChanged(VisSelectBox selectBox) {
@@ -364,8 +385,44 @@ public class MainController implements ActionContainer, ViewResizer {
             case "cboWrapX": settings.wrapX = (Texture.TextureWrap) value; break;
             case "cboWrapY": settings.wrapY = (Texture.TextureWrap) value; break;
             case "cboOutputFormat": settings.outputFormat = (String) value; break;
-            case "cboPngCompression": onPngCompressionTypeChanged(); break;
+            // Project settings, not the pack ones
+            case "cboPngCompression": onPngCompressionTypeChanged(); return;
+            case "cboEtcOutput": onEtcOutputFormatChanged(); return;
         }
+        onPackSettingsChanged(pack);
+    }
+
+    @LmlAction("onWorkerThreadsChanged") void onWorkerThreadsChanged(Spinner spinner) {
+        if (!initialized) return;
+
+        IntSpinnerModel model = (IntSpinnerModel) spinner.getModel();
+        workerPoolService.setWorkerThreads(model.getValue());
+    }
+
+    @LmlAction("onPackTimeBudgetChanged") void onPackTimeBudgetChanged(Spinner spinner) {
+        if (!initialized) return;
+
+        IntSpinnerModel model = (IntSpinnerModel) spinner.getModel();
+        workerPoolService.setPackTimeBudget(model.getValue());
+    }
+
+    @LmlAction("onWatchModeChecked") void onWatchModeChecked(VisCheckBox checkBox) {
+        if (!initialized) return;
+
+        packWatchService.setEnabled(checkBox.isChecked());
+    }
+
+    @LmlAction("onEtcZippedChecked") void onEtcZippedChecked(VisCheckBox checkBox) {
+        if (!initialized) return;
+
+        ProjectModel project = getProject();
+        EtcOutputModel etcOutput = project.getEtcOutput();
+        if (etcOutput == null || etcOutput.isZipped() == checkBox.isChecked()) return;
+
+        // Model is replaced (not modified) so the change is reported as any other project property change
+        EtcOutputModel newEtcOutput = new EtcOutputModel(etcOutput.getFormat());
+        newEtcOutput.setZipped(checkBox.isChecked());
+        project.setEtcOutput(newEtcOutput);
     }
     //endregion
 
@@ -418,6 +475,7 @@ public class MainController implements ActionContainer, ViewResizer {
 
         if (pack != null) {
             TexturePacker.Settings settings = pack.getSettings();
+            updatingViewsFromPack = true;
 
             actorsPackSettings.cbUseFastAlgorithm.setChecked(settings.fast);
             actorsPackSettings.cbEdgePadding.setChecked(settings.edgePadding);
@@ -452,9 +510,16 @@ public class MainController implements ActionContainer, ViewResizer {
             actorsPackSettings.cboMagFilter.setSelected(settings.filterMag);
             actorsPackSettings.cboWrapX.setSelected(settings.wrapX);
             actorsPackSettings.cboWrapY.setSelected(settings.wrapY);
+
+            updatingViewsFromPack = false;
         }
     }
 
+    private void onPackSettingsChanged(PackModel pack) {
+        if (updatingViewsFromPack) return;
+        pack.notifySettingsChanged();
+    }
+
     private void updatePackList() {
         Array<PackModel> packs = getProject().getPacks();
         actorsPacks.listPacks.setItems(packs);
@@ -472,6 +537,13 @@ public class MainController implements ActionContainer, ViewResizer {
         actorsGlobalSettings.containerPngCompSettings.setVisible(compValue.hasSettings);
     }
 
+    private void updateEtcOutput() {
+        EtcOutputModel etcOutput = getProject().getEtcOutput();
+        actorsGlobalSettings.cboEtcOutput.setSelected(WidgetData.EtcOutput.valueOf(etcOutput == null ? null : etcOutput.getFormat()));
+        actorsGlobalSettings.cbEtcZipped.setChecked(etcOutput == null || etcOutput.isZipped());
+        actorsGlobalSettings.cbEtcZipped.setDisabled(etcOutput == null);
+    }
+
     private void updateRecentProjects() {
         Array<FileHandle> recentProjects = this.recentProjects.getRecentProjects();
         actorsFileMenu.miOpenRecent.setDisabled(recentProjects.size == 0);
@@ -491,10 +563,7 @@ public class MainController implements ActionContainer, ViewResizer {
                     Gdx.app.postRunnable(new Runnable() {
                         @Override
                         public void run() {
-                            ProjectModel project = projectSerializer.loadProject(file);
-                            if (project != null) {
-                                modelService.setProject(project);
-                            }
+                            commonDialogs.openProject(file);
                         }
                     });
                 }
@@ -503,6 +572,25 @@ public class MainController implements ActionContainer, ViewResizer {
         }
     }
 
+    private void onEtcOutputFormatChanged() {
+        if (!initialized) return;
+
+        ProjectModel project = getProject();
+        EtcFormat format = actorsGlobalSettings.cboEtcOutput.getSelected().format;
+        EtcOutputModel etcOutput = project.getEtcOutput();
+
+        if (format == null) {
+            project.setEtcOutput(null);
+            return;
+        }
+
+        if (etcOutput == null || format != etcOutput.getFormat()) {
+            EtcOutputModel newEtcOutput = new EtcOutputModel(format);
+            newEtcOutput.setZipped(actorsGlobalSettings.cbEtcZipped.isChecked());
+            project.setEtcOutput(newEtcOutput);
+        }
+    }
+
     private void onPngCompressionTypeChanged() {
         if (!initialized) return;
 
@@ -522,6 +610,9 @@ public class MainController implements ActionContainer, ViewResizer {
                 case ZOPFLI:
                     project.setPngCompression(new ZopfliCompressionModel());
                     break;
+                case PALETTE:
+                    project.setPngCompression(new PaletteCompressionModel());
+                    break;
                 case TINY_PNG:
                     project.setPngCompression(new TinyPngCompressionModel());
                     break;
@@ -4,6 +4,7 @@ import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.utils.Array;
 import com.crashinvaders.texturepackergui.App;
+import com.crashinvaders.texturepackergui.services.model.EtcFormat;
 import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
 
 public class WidgetData {
@@ -36,6 +37,7 @@ public class WidgetData {
     public enum CompressionPng {
         NONE (null, "compressionNone", false),
         PNGTASTIC (PngCompressionType.PNGTASTIC, "compressionPngtastic", true),
+        PALETTE (PngCompressionType.PALETTE, "compressionPalette", true),
         TINY_PNG (PngCompressionType.TINY_PNG, "compressionTinyPng", true);
 //        ZOPFLI (PngCompressionType.ZOPFLI, "compressionZopfli", true);
 
@@ -64,4 +66,33 @@ public class WidgetData {
             return App.inst().getI18n().get(nameKey);
         }
     }
+
+    public enum EtcOutput {
+        NONE (null, "etcOutputNone"),
+        ETC1 (EtcFormat.ETC1, "etcOutputEtc1"),
+        ETC2 (EtcFormat.ETC2, "etcOutputEtc2");
+
+        public final EtcFormat format;
+        public final String nameKey;
+
+        EtcOutput(EtcFormat format, String nameKey) {
+            this.format = format;
+            this.nameKey = nameKey;
+        }
+
+        public static EtcOutput valueOf(EtcFormat format) {
+            for (int i = 0; i < values().length; i++) {
+                EtcOutput value = values()[i];
+                if (value.format == format) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Can't find constant for " + format);
+        }
+
+        @Override
+        public String toString() {
+            return App.inst().getI18n().get(nameKey);
+        }
+    }
 }
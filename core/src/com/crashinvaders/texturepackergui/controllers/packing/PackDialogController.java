@@ -10,16 +10,15 @@ import com.badlogic.gdx.scenes.scene2d.utils.Drawable;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.crashinvaders.texturepackergui.AppConstants;
-import com.crashinvaders.texturepackergui.controllers.packing.processors.PackingProcessor;
-import com.crashinvaders.texturepackergui.controllers.packing.processors.PngtasticCompressingProcessor;
-import com.crashinvaders.texturepackergui.controllers.packing.processors.TinifyCompressingProcessor;
-import com.crashinvaders.texturepackergui.controllers.packing.processors.ZopfliCompressingProcessor;
+import com.crashinvaders.texturepackergui.controllers.packing.processors.DefaultPackPipeline;
 import com.crashinvaders.texturepackergui.events.PackAtlasUpdatedEvent;
 import com.crashinvaders.texturepackergui.services.TinifyService;
+import com.crashinvaders.texturepackergui.services.WorkerPoolService;
 import com.crashinvaders.texturepackergui.services.model.PackModel;
 import com.crashinvaders.texturepackergui.services.model.ProjectModel;
 import com.crashinvaders.texturepackergui.utils.WidgetUtils;
-import com.crashinvaders.texturepackergui.utils.packprocessing.CompositePackProcessor;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackDurationHistory;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackMetricsReport;
 import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessingManager;
 import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessor;
 import com.github.czyzby.autumn.annotation.Initiate;
@@ -41,12 +40,14 @@ import com.kotcrab.vis.ui.widget.*;
 
 @ViewDialog(id = "dialog_packing", value = "lml/dialogPacking.lml")
 public class PackDialogController implements ActionContainer {
+    private static final String TAG = PackDialogController.class.getSimpleName();
     private static final String PREF_KEY_AUTO_CLOSE = "auto_close_pack_dialog";
 
     @Inject InterfaceService interfaceService;
     @Inject EventDispatcher eventDispatcher;
     @Inject LocaleService localeService;
     @Inject TinifyService tinifyService;
+    @Inject WorkerPoolService workerPoolService;
 
     @ViewStage Stage stage;
     private Preferences prefs;
@@ -56,8 +57,12 @@ public class PackDialogController implements ActionContainer {
     @LmlActor("listItems") ListView.ListViewTable<PackModel> listItems;
     @LmlActor("cbAutoClose") VisCheckBox cbAutoClose;
     @LmlActor("progressBar") VisProgressBar progressBar;
+    @LmlActor("btnCancel") VisTextButton btnCancel;
     private VisImageButton btnClose;
 
+    /** Manager of the current processing run, null if nothing is processing */
+    private PackProcessingManager packProcessingManager;
+
     @Initiate
     public void initialize() {
         prefs = Gdx.app.getPreferences(AppConstants.PREF_NAME_COMMON);
@@ -78,35 +83,52 @@ public class PackDialogController implements ActionContainer {
         return new PackListAdapter(interfaceService);
     }
 
+    @LmlAction("cancelPacking") void cancelPacking() {
+        if (packProcessingManager == null) return;
+
+        btnCancel.setDisabled(true);
+        packProcessingManager.cancel();
+    }
+
     @LmlAction("onAutoCloseChecked") void onAutoCloseChecked(VisCheckBox cbAutoClose) {
         prefs.putBoolean(PREF_KEY_AUTO_CLOSE, cbAutoClose.isChecked());
         prefs.flush();
     }
 
     public void launchPack(ProjectModel project, PackModel pack) {
-        launchPack(project, Array.with(pack));
+        launchPack(project, Array.with(pack), false);
     }
 
     public void launchPack(ProjectModel project, Array<PackModel> packs) {
+        launchPack(project, packs, false);
+    }
+
+    /** @param forceRepack if true, packs that are up to date will be processed anyway */
+    public void launchPack(ProjectModel project, Array<PackModel> packs, boolean forceRepack) {
         PackListAdapter adapter = (PackListAdapter)listItems.getListView().getAdapter();
         adapter.clear();
         for (PackModel pack : packs) {
             adapter.add(pack);
         }
 
-        PackProcessingManager packProcessingManager = new PackProcessingManager(
-                new CompositePackProcessor(
-                        new PackingProcessor(),
-                        new PngtasticCompressingProcessor(),
-                        new ZopfliCompressingProcessor(),
-                        new TinifyCompressingProcessor(tinifyService)),
-//                new TestProcessor(),
-                new PackWorkerListener());
+        btnCancel.setDisabled(false);
+
+        packProcessingManager = new PackProcessingManager(
+                new DefaultPackPipeline(project, tinifyService,
+                        workerPoolService.getExecutor(),
+                        workerPoolService.getCompressionExecutor(),
+                        workerPoolService.getUploadExecutor()),
+//                new PackPipeline().addStage("test", new TestProcessor(), workerPoolService.getExecutor()),
+                new PackProcessingManager.SyncListener(new PackWorkerListener()));
 
         for (int i = 0; i < packs.size; i++) {
             PackModel pack = packs.get(i);
             packProcessingManager.postPack(pack);
         }
+        packProcessingManager.setForceRepack(forceRepack);
+        packProcessingManager.setTimeBudget(workerPoolService.getPackTimeBudget() * 1000L);
+        packProcessingManager.setDurationHistory(PackDurationHistory.load(project));
+        packProcessingManager.setMetricsReport(new PackMetricsReport(project));
         packProcessingManager.execute(project);
     }
 
@@ -123,6 +145,7 @@ public class PackDialogController implements ActionContainer {
     private class PackWorkerListener implements PackProcessingManager.Listener {
         final PackListAdapter adapter;
         boolean errors = false;
+        boolean cancelled = false;
         int finishedCounter = 0;
 
         public PackWorkerListener() {
@@ -137,6 +160,9 @@ public class PackDialogController implements ActionContainer {
 
         @Override
         public void onProcessingFinished() {
+            Gdx.app.log(TAG, "Pipeline stages:\n" + packProcessingManager.getStageStatsSummary());
+            packProcessingManager = null;
+            btnCancel.setDisabled(true);
             btnClose.setDisabled(false);
             btnClose.setColor(Color.WHITE);
 
@@ -144,7 +170,7 @@ public class PackDialogController implements ActionContainer {
 
             window.closeOnEscape();
 
-            if (!errors && cbAutoClose.isChecked()) {
+            if (!errors && !cancelled && cbAutoClose.isChecked()) {
                 window.hide();
             }
 
@@ -184,6 +210,27 @@ public class PackDialogController implements ActionContainer {
             adapter.getView(pack).setToSuccess();
         }
 
+        @Override
+        public void onUpToDate(PackModel pack, String log) {
+            adapter.getView(pack).setLog(log);
+            adapter.getView(pack).setToUpToDate();
+
+            finishedCounter += 1;
+            progressBar.setValue(finishedCounter);
+        }
+
+        @Override
+        public void onCancelled(PackModel pack, String log) {
+            if (log.length() > 0) {
+                adapter.getView(pack).setLog(log);
+            }
+            adapter.getView(pack).setToCancelled();
+            cancelled = true;
+
+            finishedCounter += 1;
+            progressBar.setValue(finishedCounter);
+        }
+
         private void onFinished(final PackModel pack, String log, ObjectMap metadata) {
             adapter.getView(pack).setLog(log);
             adapter.getView(pack).parseMetadata(metadata);
@@ -11,10 +11,13 @@ import com.badlogic.gdx.utils.ObjectMap;
 import com.crashinvaders.texturepackergui.App;
 import com.crashinvaders.texturepackergui.services.model.PackModel;
 import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessor;
+import com.crashinvaders.texturepackergui.utils.packprocessing.StageMetrics;
 import com.github.czyzby.lml.scene2d.ui.reflected.AnimatedImage;
 import com.kotcrab.vis.ui.VisUI;
 import com.kotcrab.vis.ui.widget.*;
 
+import java.util.Locale;
+
 class PackListViewItem extends Container<VisTable> {
 
     private final PackModel pack;
@@ -63,11 +66,41 @@ class PackListViewItem extends Container<VisTable> {
         imgStateIndicator.setCurrentFrame(0);
     }
 
+    public void setToUpToDate() {
+        imgStateIndicator.setFrames(Array.with(VisUI.getSkin().getDrawable("custom/ic-proc-success")));
+        imgStateIndicator.setCurrentFrame(0);
+        imgStateIndicator.setColor(VisUI.getSkin().getColor("light-grey"));
+        lblMetadata.setText("[light-grey]" + App.inst().getI18n().get("dPackingUpToDate") + "[]");
+    }
+
+    public void setToCancelled() {
+        imgStateIndicator.setFrames(Array.with(VisUI.getSkin().getDrawable("custom/ic-proc-error")));
+        imgStateIndicator.setCurrentFrame(0);
+        imgStateIndicator.setColor(VisUI.getSkin().getColor("light-grey"));
+        lblMetadata.setText("[light-grey]" + App.inst().getI18n().get("dPackingCancelled") + "[]");
+    }
+
     @SuppressWarnings("unchecked")
     public void parseMetadata(ObjectMap objectMap) {
+        StringBuilder sb = new StringBuilder();
         if (objectMap.containsKey(PackProcessor.META_COMPRESSION_RATE)) {
             float compression = (float) objectMap.get(PackProcessor.META_COMPRESSION_RATE);
-            lblMetadata.setText(String.format("[light-grey]%+5.2f%%[]", compression*100f));
+            sb.append(String.format("%+5.2f%%", compression*100f));
+        }
+        // Total time and the final output, per stage figures are in the log
+        Array<StageMetrics> stageMetrics = (Array<StageMetrics>) objectMap.get(PackProcessor.META_STAGE_METRICS);
+        if (stageMetrics != null && stageMetrics.size > 0) {
+            long wallMillis = 0L;
+            for (StageMetrics metrics : stageMetrics) {
+                wallMillis += metrics.getWallMillis();
+            }
+            StageMetrics lastStage = stageMetrics.peek();
+            if (sb.length() > 0) sb.append("  ");
+            sb.append(String.format(Locale.US, "%.1fs, %d pg, %s",
+                    wallMillis / 1000f, lastStage.getPages(), StageMetrics.formatBytes(lastStage.getOutputBytes())));
+        }
+        if (sb.length() > 0) {
+            lblMetadata.setText("[light-grey]" + sb + "[]");
         }
     }
 
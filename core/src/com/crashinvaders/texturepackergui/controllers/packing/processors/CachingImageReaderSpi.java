@@ -0,0 +1,158 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageInputStreamSpi;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Routes {@link javax.imageio.ImageIO#read(File)} calls to the {@link DecodedImageCache} of the current thread.
+ * <p/>
+ * File streams are created with the file reference attached, so the reader knows which file is being read.
+ * Threads without an opened cache scope are not affected, their streams are decoded by the regular readers.
+ */
+class CachingImageReaderSpi extends ImageReaderSpi {
+    private static boolean installed;
+
+    private CachingImageReaderSpi() {
+        super("gdx-texture-packer-gui", "1.0",
+                new String[]{"cached"}, null, null,
+                CachingImageReader.class.getName(),
+                new Class[]{ImageInputStream.class},
+                null, false, null, null, null, null, false, null, null, null, null);
+    }
+
+    /** Registers the providers ahead of the default ones. Safe to call many times. */
+    static synchronized void install() {
+        if (installed) return;
+        installed = true;
+
+        IIORegistry registry = IIORegistry.getDefaultInstance();
+        FileStreamSpi streamSpi = new FileStreamSpi();
+        CachingImageReaderSpi readerSpi = new CachingImageReaderSpi();
+        registry.registerServiceProvider(streamSpi, ImageInputStreamSpi.class);
+        registry.registerServiceProvider(readerSpi, ImageReaderSpi.class);
+
+        Iterator<ImageInputStreamSpi> streamSpis = registry.getServiceProviders(ImageInputStreamSpi.class, false);
+        while (streamSpis.hasNext()) {
+            ImageInputStreamSpi spi = streamSpis.next();
+            if (spi != streamSpi) registry.setOrdering(ImageInputStreamSpi.class, streamSpi, spi);
+        }
+        Iterator<ImageReaderSpi> readerSpis = registry.getServiceProviders(ImageReaderSpi.class, false);
+        while (readerSpis.hasNext()) {
+            ImageReaderSpi spi = readerSpis.next();
+            if (spi != readerSpi) registry.setOrdering(ImageReaderSpi.class, readerSpi, spi);
+        }
+    }
+
+    @Override
+    public boolean canDecodeInput(Object source) {
+        return source instanceof CacheableFileImageInputStream && DecodedImageCache.getCurrentScope() != null;
+    }
+
+    @Override
+    public ImageReader createReaderInstance(Object extension) {
+        return new CachingImageReader(this);
+    }
+
+    @Override
+    public String getDescription(Locale locale) {
+        return "Decoded image cache reader";
+    }
+
+    private static class CacheableFileImageInputStream extends FileImageInputStream {
+        final File file;
+
+        CacheableFileImageInputStream(File file) throws IOException {
+            super(file);
+            this.file = file;
+        }
+    }
+
+    private static class FileStreamSpi extends ImageInputStreamSpi {
+        FileStreamSpi() {
+            super("gdx-texture-packer-gui", "1.0", File.class);
+        }
+
+        @Override
+        public ImageInputStream createInputStreamInstance(Object input, boolean useCache, File cacheDir) throws IOException {
+            return new CacheableFileImageInputStream((File) input);
+        }
+
+        @Override
+        public String getDescription(Locale locale) {
+            return "File stream with the file reference attached";
+        }
+    }
+
+    private static class CachingImageReader extends ImageReader {
+        private BufferedImage image;
+
+        CachingImageReader(ImageReaderSpi originatingProvider) {
+            super(originatingProvider);
+        }
+
+        @Override
+        public void setInput(Object input, boolean seekForwardOnly, boolean ignoreMetadata) {
+            super.setInput(input, seekForwardOnly, ignoreMetadata);
+            image = null;
+        }
+
+        private BufferedImage getImage(int imageIndex) throws IOException {
+            if (imageIndex != 0) throw new IndexOutOfBoundsException("Only single image is supported");
+            if (image == null) {
+                DecodedImageCache.Scope scope = DecodedImageCache.getCurrentScope();
+                if (scope == null) throw new IllegalStateException("There is no cache scope opened for the current thread");
+
+                image = scope.getImage(((CacheableFileImageInputStream) getInput()).file);
+            }
+            return image;
+        }
+
+        @Override
+        public int getNumImages(boolean allowSearch) {
+            return 1;
+        }
+
+        @Override
+        public int getWidth(int imageIndex) throws IOException {
+            return getImage(imageIndex).getWidth();
+        }
+
+        @Override
+        public int getHeight(int imageIndex) throws IOException {
+            return getImage(imageIndex).getHeight();
+        }
+
+        @Override
+        public Iterator<ImageTypeSpecifier> getImageTypes(int imageIndex) throws IOException {
+            return Collections.singletonList(ImageTypeSpecifier.createFromRenderedImage(getImage(imageIndex))).iterator();
+        }
+
+        @Override
+        public IIOMetadata getStreamMetadata() {
+            return null;
+        }
+
+        @Override
+        public IIOMetadata getImageMetadata(int imageIndex) {
+            return null;
+        }
+
+        @Override
+        public BufferedImage read(int imageIndex, ImageReadParam param) throws IOException {
+            return getImage(imageIndex);
+        }
+    }
+}
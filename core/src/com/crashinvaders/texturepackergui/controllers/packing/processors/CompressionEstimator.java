@@ -0,0 +1,247 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.utils.Array;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
+import com.crashinvaders.texturepackergui.services.model.compression.PngCompressionModel;
+import com.crashinvaders.texturepackergui.services.model.compression.PngtasticCompressionModel;
+import com.crashinvaders.texturepackergui.services.model.compression.ZopfliCompressionModel;
+import com.googlecode.pngtastic.core.PngOptimizer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Dry run of the PNG compression: a few strips are sampled from every page of the last packing output,
+ * only they are compressed, and the page sizes and compression time are extrapolated from them.
+ * <p/>
+ * Pages are re-encoded the same way the packer writes them, so the estimate doesn't depend on
+ * whether the pages on disk are already compressed.
+ */
+public class CompressionEstimator {
+    /**
+     * Approximate number of pixels in a sample. Samples are full width strips of rows,
+     * so PNG filters and deflate see the same row structure they see on the whole page.
+     */
+    static final int SAMPLE_PIXELS = 32768;
+    /** Total number of samples to compress, they are distributed between the pages by their area */
+    static final int MAX_SAMPLES = 16;
+    /** Milliseconds to spend on sampling, split between the pages by their area. Every page gets at least one sample. */
+    static final long TIME_BUDGET = 10000L;
+    static final int MAX_WARM_UP_RUNS = 5;
+
+    private final PngCompressionModel compModel;
+
+    public CompressionEstimator(PngCompressionModel compModel) {
+        if (!isSupported(compModel.getType())) {
+            throw new IllegalArgumentException("Compression type is not supported: " + compModel.getType());
+        }
+        this.compModel = compModel;
+    }
+
+    /** Only the local lossless compressors can be estimated */
+    public static boolean isSupported(PngCompressionType type) {
+        return type == PngCompressionType.PNGTASTIC || type == PngCompressionType.ZOPFLI;
+    }
+
+    /**
+     * WARNING: blocking call, use separate thread
+     * @return null if none of the packs has PNG output pages to sample
+     */
+    public Estimate estimate(Array<PackModel> packs) throws IOException, InterruptedException {
+        Array<File> pageFiles = new Array<>();
+        for (PackModel pack : packs) {
+            collectPageFiles(pack, pageFiles);
+        }
+        if (pageFiles.size == 0) return null;
+
+        // Page sizes are read from the headers, pages themselves are decoded one at a time
+        long[] pageAreas = new long[pageFiles.size];
+        long totalArea = 0L;
+        for (int i = 0; i < pageFiles.size; i++) {
+            pageAreas[i] = readArea(pageFiles.get(i));
+            totalArea += pageAreas[i];
+        }
+
+        int sampleCount = 0;
+        long originalBytes = 0L;
+        double compressedBytes = 0.0;
+        double totalMillis = 0.0;
+        double longestPageMillis = 0.0;
+        for (int i = 0; i < pageFiles.size; i++) {
+            BufferedImage page = ImageIO.read(pageFiles.get(i));
+            if (page == null) throw new IOException("Can't decode atlas page " + pageFiles.get(i));
+            page = normalize(page, 0, 0, page.getWidth(), page.getHeight());
+
+            int width = page.getWidth();
+            int height = page.getHeight();
+            int sampleRows = Math.min(height, Math.max(1, (SAMPLE_PIXELS + width - 1) / width));
+            int strips = (height + sampleRows - 1) / sampleRows;
+            float areaShare = pageAreas[i] / (float) totalArea;
+            int pageSamples = Math.min(strips, Math.max(1, Math.round(MAX_SAMPLES * areaShare)));
+            long pageTimeBudget = (long) (TIME_BUDGET * areaShare);
+
+            long sampleOriginalBytes = 0L;
+            long sampleCompressedBytes = 0L;
+            long samplePixels = 0L;
+            long sampleNanos = 0L;
+            for (int sample = 0; sample < pageSamples; sample++) {
+                // Every page gets at least one sample
+                if (sample > 0 && sampleNanos / 1000000L > pageTimeBudget) break;
+                if (Thread.interrupted()) throw new InterruptedException("Estimation was cancelled");
+
+                // Samples are spread evenly over the page, so both dense and empty regions are covered
+                int y = (int) ((sample + 0.5) * strips / pageSamples) * sampleRows;
+                int rows = Math.min(sampleRows, height - y);
+                byte[] sampleBytes = writePng(normalize(page, 0, y, width, rows));
+                if (sampleCount == 0) warmUp(sampleBytes);
+
+                long startTime = System.nanoTime();
+                byte[] compressed = compress(sampleBytes);
+                sampleNanos += System.nanoTime() - startTime;
+
+                sampleOriginalBytes += sampleBytes.length;
+                // Same as during packing, the original is kept if compression doesn't make it smaller
+                sampleCompressedBytes += Math.min(compressed.length, sampleBytes.length);
+                samplePixels += width * rows;
+                sampleCount++;
+            }
+
+            long pageBytes = writePng(page).length;
+            double pageMillis = sampleNanos / 1000000.0 * width * height / samplePixels;
+            originalBytes += pageBytes;
+            compressedBytes += pageBytes * (sampleCompressedBytes / (double) sampleOriginalBytes);
+            totalMillis += pageMillis;
+            longestPageMillis = Math.max(longestPageMillis, pageMillis);
+        }
+
+        // Pages are compressed concurrently, but a single page can't be split between the threads
+        long wallMillis = (long) Math.max(totalMillis / PngPageOptimizer.getParallelism(), longestPageMillis);
+        return new Estimate(pageFiles.size, sampleCount, originalBytes, (long) compressedBytes, wallMillis);
+    }
+
+    /**
+     * Cold compressor code runs several times slower, which would spoil the time estimate.
+     * The sample is compressed until the run time stops dropping.
+     */
+    private void warmUp(byte[] sampleBytes) throws IOException, InterruptedException {
+        long warmUpNanos = 0L;
+        long lastRunNanos = Long.MAX_VALUE;
+        for (int i = 0; i < MAX_WARM_UP_RUNS && warmUpNanos / 1000000L < TIME_BUDGET / 2; i++) {
+            if (Thread.interrupted()) throw new InterruptedException("Estimation was cancelled");
+
+            long startTime = System.nanoTime();
+            compress(sampleBytes);
+            long runNanos = System.nanoTime() - startTime;
+            warmUpNanos += runNanos;
+
+            if (runNanos > lastRunNanos * 0.9) break;
+            lastRunNanos = runNanos;
+        }
+    }
+
+    private byte[] compress(byte[] pngBytes) throws IOException {
+        switch (compModel.getType()) {
+            case PNGTASTIC: {
+                PngtasticCompressionModel pngtasticModel = (PngtasticCompressionModel) compModel;
+                return PngPageOptimizer.encode(new FilterTrialOptimizer(PngPageOptimizer.LOG_LEVEL, false), pngBytes, "sample strip",
+                        pngtasticModel.isRemoveGamma(), pngtasticModel.getLevel());
+            }
+            case ZOPFLI: {
+                // Adaptive mode stops at the time limit or when the steps stop paying off, this is its upper bound
+                ZopfliCompressionModel zopfliModel = (ZopfliCompressionModel) compModel;
+                return PngPageOptimizer.encode(ZopfliCompressingProcessor.createOptimizer(PngPageOptimizer.LOG_LEVEL,
+                        zopfliModel.getIterations()), pngBytes, "sample strip", false, zopfliModel.getLevel());
+            }
+            default:
+                throw new IllegalStateException("Unexpected compression type: " + compModel.getType());
+        }
+    }
+
+    /** @return number of pixels of the image, without decoding it */
+    private static long readArea(File file) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(file);
+        if (input == null) throw new IOException("Can't read atlas page " + file);
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) throw new IOException("Can't decode atlas page " + file);
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input);
+                return (long) reader.getWidth(0) * reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void collectPageFiles(PackModel pack, Array<File> pageFiles) {
+        if (!pack.getSettings().outputFormat.equals("png")) return;
+
+        FileHandle atlasFile = Gdx.files.absolute(pack.getOutputDir()).child(pack.getCanonicalFilename());
+        if (!atlasFile.exists()) return;
+
+        TextureAtlas.TextureAtlasData atlasData = new TextureAtlas.TextureAtlasData(atlasFile, atlasFile.parent(), false);
+        for (TextureAtlas.TextureAtlasData.Page page : atlasData.getPages()) {
+            // With ETC output the atlas refers to the compressed pages, the PNG ones are kept next to them
+            FileHandle pageFile = page.textureFile.sibling(page.textureFile.nameWithoutExtension() + ".png");
+            if (pageFile.exists()) {
+                pageFiles.add(pageFile.file());
+            }
+        }
+    }
+
+    /** @return copy of the region in the same pixel layout the packer writes pages with */
+    private static BufferedImage normalize(BufferedImage image, int x, int y, int width, int height) {
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage result = new BufferedImage(width, height, type);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.drawImage(image, -x, -y, null);
+        } finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+
+    private static byte[] writePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+
+    public static class Estimate {
+        public final int pageCount;
+        public final int sampleCount;
+        /** Total size of the pages as the packer writes them */
+        public final long originalBytes;
+        public final long compressedBytes;
+        /** Expected time of the compression stage for all the pages */
+        public final long wallMillis;
+
+        Estimate(int pageCount, int sampleCount, long originalBytes, long compressedBytes, long wallMillis) {
+            this.pageCount = pageCount;
+            this.sampleCount = sampleCount;
+            this.originalBytes = originalBytes;
+            this.compressedBytes = compressedBytes;
+            this.wallMillis = wallMillis;
+        }
+
+        /** @return relative size reduction, from 0 to 1 */
+        public float getSavedRate() {
+            return originalBytes > 0L ? (originalBytes - compressedBytes) / (float) originalBytes : 0f;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.FileImageInputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Decoded input images shared between the packs of a single processing run, so images that are used by
+ * several packs are decoded only once. Least recently used images are evicted once the memory budget is exceeded.
+ * <p/>
+ * TexturePacker reads images through {@link ImageIO#read(File)}, the cache is plugged in there
+ * by {@link CachingImageReaderSpi} for the threads that have opened a {@link Scope}.
+ */
+class DecodedImageCache {
+    private static final ThreadLocal<Scope> currentScope = new ThreadLocal<>();
+
+    private final long memoryBudget;
+    /** Access ordered, so the eldest entry is the least recently used one */
+    private final LinkedHashMap<String, CachedImage> images = new LinkedHashMap<>(64, 0.75f, true);
+    /** Images that are being decoded right now, other threads wait for them instead of decoding the same file */
+    private final Map<String, FutureTask<BufferedImage>> pendingImages = new HashMap<>();
+    private long memoryUsed;
+
+    /** @param memoryBudget max total size of the decoded images in bytes */
+    DecodedImageCache(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /** Enables the cache for {@link ImageIO#read(File)} calls made by the current thread, until the scope is closed */
+    Scope openScope() {
+        CachingImageReaderSpi.install();
+
+        Scope scope = new Scope(this);
+        currentScope.set(scope);
+        return scope;
+    }
+
+    /** @return null if the current thread has no opened scope */
+    static Scope getCurrentScope() {
+        return currentScope.get();
+    }
+
+    synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    private BufferedImage getImage(final File file, Scope scope) throws IOException {
+        final String key = file.getCanonicalPath() + "|" + file.lastModified() + "|" + file.length();
+
+        FutureTask<BufferedImage> task;
+        boolean owner = false;
+        synchronized (this) {
+            CachedImage cachedImage = images.get(key);
+            if (cachedImage != null) {
+                scope.hits++;
+                return cachedImage.image;
+            }
+
+            task = pendingImages.get(key);
+            if (task == null) {
+                task = new FutureTask<>(new Callable<BufferedImage>() {
+                    @Override
+                    public BufferedImage call() throws Exception {
+                        return decode(file);
+                    }
+                });
+                pendingImages.put(key, task);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            scope.misses++;
+            task.run();
+        } else {
+            scope.hits++;
+        }
+
+        BufferedImage image = null;
+        try {
+            image = task.get();
+            return image;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Image decoding was interrupted: " + file);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Error decoding image: " + file, e.getCause());
+        } finally {
+            if (owner) {
+                synchronized (this) {
+                    pendingImages.remove(key);
+                    if (image != null) {
+                        put(key, image);
+                    }
+                }
+            }
+        }
+    }
+
+    private void put(String key, BufferedImage image) {
+        long size = estimateSize(image);
+        // Not worth evicting everything else
+        if (size > memoryBudget / 2) return;
+
+        images.put(key, new CachedImage(image, size));
+        memoryUsed += size;
+
+        Iterator<CachedImage> iterator = images.values().iterator();
+        while (memoryUsed > memoryBudget && iterator.hasNext()) {
+            memoryUsed -= iterator.next().size;
+            iterator.remove();
+        }
+    }
+
+    private static BufferedImage decode(File file) throws IOException {
+        // Plain FileImageInputStream is not intercepted by CachingImageReaderSpi
+        FileImageInputStream stream = new FileImageInputStream(file);
+        // The stream is closed by ImageIO unless there is no suitable reader for it
+        BufferedImage image = ImageIO.read(stream);
+        if (image == null) {
+            stream.close();
+            throw new IIOException("Unsupported image format: " + file);
+        }
+        return image;
+    }
+
+    private static long estimateSize(BufferedImage image) {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        return (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+    }
+
+    private static class CachedImage {
+        final BufferedImage image;
+        final long size;
+
+        CachedImage(BufferedImage image, long size) {
+            this.image = image;
+            this.size = size;
+        }
+    }
+
+    /** Cache usage by a single thread (a single pack) */
+    static class Scope {
+        private final DecodedImageCache cache;
+        private int hits;
+        private int misses;
+
+        private Scope(DecodedImageCache cache) {
+            this.cache = cache;
+        }
+
+        BufferedImage getImage(File file) throws IOException {
+            return cache.getImage(file, this);
+        }
+
+        int getHits() {
+            return hits;
+        }
+
+        int getMisses() {
+            return misses;
+        }
+
+        void close() {
+            if (currentScope.get() == this) {
+                currentScope.remove();
+            }
+        }
+    }
+}
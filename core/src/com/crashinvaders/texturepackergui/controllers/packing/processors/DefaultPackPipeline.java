@@ -0,0 +1,60 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import com.crashinvaders.texturepackergui.services.TinifyService;
+import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.services.model.compression.PngCompressionModel;
+import com.crashinvaders.texturepackergui.utils.packprocessing.CompositePackProcessor;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackPipeline;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Complete pack processing pipeline. Used for both interactive and batch packing.
+ * CPU bound packing and compression, and network bound Tinify uploads are run by separate executors.
+ * Stages that have nothing to do with the project's compression and ETC output settings are left out.
+ */
+public class DefaultPackPipeline extends PackPipeline {
+    public static final String STAGE_PACKING = "packing";
+    public static final String STAGE_COMPRESSION = "compression";
+    public static final String STAGE_UPLOAD = "upload";
+
+    /** Share of the max heap that decoded input images may take while they are reused between packs of a run */
+    private static final float IMAGE_CACHE_HEAP_SHARE = 0.25f;
+
+    public DefaultPackPipeline(ProjectModel project, TinifyService tinifyService,
+                               ExecutorService packingExecutor,
+                               ExecutorService compressionExecutor,
+                               ExecutorService uploadExecutor) {
+
+        // The pipeline is created per processing run, so are the cached images
+        long imageCacheBudget = (long) (Runtime.getRuntime().maxMemory() * IMAGE_CACHE_HEAP_SHARE);
+        addStage(STAGE_PACKING, new PackingProcessor(imageCacheBudget), packingExecutor);
+
+        PngCompressionModel compression = project.getPngCompression();
+        boolean etcOutput = project.getEtcOutput() != null;
+
+        // ETC pages are encoded from the final pages, so they go last.
+        // Stages never share an executor, as a full bounded queue would block its own workers.
+        if (compression != null && compression.getType() == PngCompressionType.TINY_PNG) {
+            addStage(STAGE_UPLOAD, new TinifyCompressingProcessor(tinifyService), uploadExecutor);
+            if (etcOutput) {
+                addStage(STAGE_COMPRESSION, new EtcOutputProcessor(), compressionExecutor);
+            }
+        } else if (compression != null || etcOutput) {
+            addStage(STAGE_COMPRESSION, new CompositePackProcessor(
+                    new PngtasticCompressingProcessor(),
+                    new ZopfliCompressingProcessor(),
+                    new PaletteCompressingProcessor(),
+                    new EtcOutputProcessor()), compressionExecutor);
+        }
+    }
+
+    /**
+     * Pages of the compression stage are optimized concurrently by a pool that is shared between all the pipelines.
+     * It should be sized the same as the stage executors, otherwise pages would run on every core anyway.
+     */
+    public static void setPageParallelism(int threads) {
+        PngPageOptimizer.setParallelism(threads);
+    }
+}
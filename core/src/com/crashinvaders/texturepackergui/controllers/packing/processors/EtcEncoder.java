@@ -0,0 +1,349 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import com.badlogic.gdx.math.MathUtils;
+
+import java.util.Arrays;
+
+/**
+ * Encodes ARGB pixels into ETC1 and ETC2 blocks without any native code.
+ * <p/>
+ * Color blocks are encoded in ETC1 individual and differential modes only. Such blocks are valid ETC2 RGB8 blocks as well,
+ * so the same color data goes to the both formats. ETC2 RGBA8 adds an EAC alpha block in front of every color block.
+ * <p/>
+ * Blocks are laid out row by row, top to bottom. Pixels beyond the image edges repeat the edge pixels.
+ * Instances hold scratch buffers and are not thread safe.
+ */
+class EtcEncoder {
+    static final int GL_ETC1_RGB8_OES = 0x8D64;
+    static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+    static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+    static final int GL_RGB = 0x1907;
+    static final int GL_RGBA = 0x1908;
+
+    /** ETC1 intensity modifiers, indexed by table codeword and then by pixel index */
+    private static final int[][] COLOR_MODIFIERS = {
+            {2, 8, -2, -8},
+            {5, 17, -5, -17},
+            {9, 29, -9, -29},
+            {13, 42, -13, -42},
+            {18, 60, -18, -60},
+            {24, 80, -24, -80},
+            {33, 106, -33, -106},
+            {47, 183, -47, -183}};
+
+    /** EAC alpha modifiers, indexed by table index and then by pixel index */
+    private static final int[][] ALPHA_MODIFIERS = {
+            {-3, -6, -9, -15, 2, 5, 8, 14},
+            {-3, -7, -10, -13, 2, 6, 9, 12},
+            {-2, -5, -8, -13, 1, 4, 7, 12},
+            {-2, -4, -6, -13, 1, 3, 5, 12},
+            {-3, -6, -8, -12, 2, 5, 7, 11},
+            {-3, -7, -9, -11, 2, 6, 8, 10},
+            {-4, -7, -8, -11, 3, 6, 7, 10},
+            {-3, -5, -8, -11, 2, 4, 7, 10},
+            {-2, -6, -8, -10, 1, 5, 7, 9},
+            {-2, -5, -8, -10, 1, 4, 7, 9},
+            {-2, -4, -8, -10, 1, 3, 7, 9},
+            {-2, -5, -7, -10, 1, 4, 6, 9},
+            {-3, -4, -7, -10, 2, 3, 6, 9},
+            {-1, -2, -3, -10, 0, 1, 2, 9},
+            {-4, -6, -8, -9, 3, 5, 7, 8},
+            {-3, -5, -7, -9, 2, 4, 6, 8}};
+    /** Table that contains zero modifier, used for the blocks of uniform alpha */
+    private static final int UNIFORM_ALPHA_TABLE = 13;
+    private static final int UNIFORM_ALPHA_INDEX = 4;
+
+    /** Block pixels in ETC order: pixel (x, y) has index x * 4 + y */
+    private final int[] block = new int[16];
+    private final int[] indices = new int[16];
+    private final int[] bestIndices = new int[16];
+    private final int[] averages = new int[6];
+    private final int[] colors4 = new int[6];
+    private final int[] colors5 = new int[6];
+    private final int[] sums = new int[6];
+    private int subBlockTable;
+
+    static int getDataSize(int width, int height, boolean withAlpha) {
+        int blocks = ((width + 3) / 4) * ((height + 3) / 4);
+        return blocks * (withAlpha ? 16 : 8);
+    }
+
+    /** @return ETC1 data (also valid ETC2 RGB8 data), alpha is ignored */
+    byte[] encodeRgb(int[] argb, int width, int height) {
+        byte[] data = new byte[getDataSize(width, height, false)];
+        int offset = 0;
+        for (int blockY = 0; blockY < height; blockY += 4) {
+            for (int blockX = 0; blockX < width; blockX += 4) {
+                readBlock(argb, width, height, blockX, blockY);
+                writeLong(data, offset, encodeColorBlock());
+                offset += 8;
+            }
+        }
+        return data;
+    }
+
+    /** @return ETC2 RGBA8 data, every block is an EAC alpha block followed by a color block */
+    byte[] encodeRgba(int[] argb, int width, int height) {
+        byte[] data = new byte[getDataSize(width, height, true)];
+        int offset = 0;
+        for (int blockY = 0; blockY < height; blockY += 4) {
+            for (int blockX = 0; blockX < width; blockX += 4) {
+                readBlock(argb, width, height, blockX, blockY);
+                writeLong(data, offset, encodeAlphaBlock());
+                writeLong(data, offset + 8, encodeColorBlock());
+                offset += 16;
+            }
+        }
+        return data;
+    }
+
+    /** @return true if any of the pixels is not fully opaque */
+    static boolean hasAlpha(int[] argb) {
+        for (int pixel : argb) {
+            if ((pixel >>> 24) != 0xff) return true;
+        }
+        return false;
+    }
+
+    /** @return opaque pixels with alpha of the source pixels put into all the color channels */
+    static int[] extractAlpha(int[] argb) {
+        int[] alpha = new int[argb.length];
+        for (int i = 0; i < argb.length; i++) {
+            int a = argb[i] >>> 24;
+            alpha[i] = 0xff000000 | a << 16 | a << 8 | a;
+        }
+        return alpha;
+    }
+
+    /** @return image of half the size (but at least one pixel), every pixel is the average of the source 2x2 pixels */
+    static int[] downsample(int[] argb, int width, int height) {
+        int mipWidth = Math.max(1, width / 2);
+        int mipHeight = Math.max(1, height / 2);
+        int[] mip = new int[mipWidth * mipHeight];
+        for (int y = 0; y < mipHeight; y++) {
+            int y0 = Math.min(y * 2, height - 1);
+            int y1 = Math.min(y * 2 + 1, height - 1);
+            for (int x = 0; x < mipWidth; x++) {
+                int x0 = Math.min(x * 2, width - 1);
+                int x1 = Math.min(x * 2 + 1, width - 1);
+                int color = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int sum = (argb[y0 * width + x0] >>> shift & 0xff) + (argb[y0 * width + x1] >>> shift & 0xff)
+                            + (argb[y1 * width + x0] >>> shift & 0xff) + (argb[y1 * width + x1] >>> shift & 0xff);
+                    color |= ((sum + 2) / 4) << shift;
+                }
+                mip[y * mipWidth + x] = color;
+            }
+        }
+        return mip;
+    }
+
+    private void readBlock(int[] argb, int width, int height, int blockX, int blockY) {
+        for (int x = 0; x < 4; x++) {
+            int pixelX = Math.min(blockX + x, width - 1);
+            for (int y = 0; y < 4; y++) {
+                int pixelY = Math.min(blockY + y, height - 1);
+                block[x * 4 + y] = argb[pixelY * width + pixelX];
+            }
+        }
+    }
+
+    /** Tries both sub-block orientations in both individual and differential modes, the one of the least error wins */
+    private long encodeColorBlock() {
+        long bestBits = 0L;
+        long bestError = Long.MAX_VALUE;
+        for (int flip = 0; flip < 2; flip++) {
+            computeSubBlockAverages(flip, averages);
+
+            // Individual mode: 4 bits per channel for each sub-block
+            for (int i = 0; i < 6; i++) {
+                colors4[i] = Math.round(averages[i] * 15f / 255f);
+            }
+            long error = 0L;
+            long bits = 0L;
+            for (int subBlock = 0; subBlock < 2; subBlock++) {
+                int r = colors4[subBlock * 3] * 17;
+                int g = colors4[subBlock * 3 + 1] * 17;
+                int b = colors4[subBlock * 3 + 2] * 17;
+                error += encodeSubBlock(flip, subBlock, r, g, b);
+                bits |= (long) subBlockTable << (subBlock == 0 ? 37 : 34);
+            }
+            if (error < bestError) {
+                bestError = error;
+                bits |= (long) colors4[0] << 60 | (long) colors4[3] << 56
+                        | (long) colors4[1] << 52 | (long) colors4[4] << 48
+                        | (long) colors4[2] << 44 | (long) colors4[5] << 40
+                        | (long) flip << 32;
+                bestBits = bits | indexBits();
+            }
+
+            // Differential mode: 5 bits per channel for the first sub-block and 3 bit signed deltas for the second one
+            for (int i = 0; i < 6; i++) {
+                colors5[i] = Math.round(averages[i] * 31f / 255f);
+            }
+            boolean deltasFit = true;
+            for (int c = 0; c < 3; c++) {
+                int delta = colors5[3 + c] - colors5[c];
+                if (delta < -4 || delta > 3) deltasFit = false;
+            }
+            if (!deltasFit) continue;
+
+            error = 0L;
+            bits = 0L;
+            for (int subBlock = 0; subBlock < 2; subBlock++) {
+                int r = expand5(colors5[subBlock * 3]);
+                int g = expand5(colors5[subBlock * 3 + 1]);
+                int b = expand5(colors5[subBlock * 3 + 2]);
+                error += encodeSubBlock(flip, subBlock, r, g, b);
+                bits |= (long) subBlockTable << (subBlock == 0 ? 37 : 34);
+            }
+            if (error < bestError) {
+                bestError = error;
+                bits |= (long) colors5[0] << 59 | (long) ((colors5[3] - colors5[0]) & 7) << 56
+                        | (long) colors5[1] << 51 | (long) ((colors5[4] - colors5[1]) & 7) << 48
+                        | (long) colors5[2] << 43 | (long) ((colors5[5] - colors5[2]) & 7) << 40
+                        | 1L << 33 | (long) flip << 32;
+                bestBits = bits | indexBits();
+            }
+        }
+        return bestBits;
+    }
+
+    /** @param averages receives average r, g, b of the first and then of the second sub-block */
+    private void computeSubBlockAverages(int flip, int[] averages) {
+        Arrays.fill(sums, 0);
+        for (int i = 0; i < 16; i++) {
+            int subBlock = getSubBlock(flip, i);
+            int pixel = block[i];
+            sums[subBlock * 3] += pixel >>> 16 & 0xff;
+            sums[subBlock * 3 + 1] += pixel >>> 8 & 0xff;
+            sums[subBlock * 3 + 2] += pixel & 0xff;
+        }
+        for (int i = 0; i < 6; i++) {
+            averages[i] = (sums[i] + 4) / 8;
+        }
+    }
+
+    /**
+     * Picks the modifier table of the least error for the sub-block with the given base color.
+     * Chosen pixel indices go to {@link #indices}, the table goes to {@link #subBlockTable}.
+     * @return squared error of the sub-block
+     */
+    private long encodeSubBlock(int flip, int subBlock, int r, int g, int b) {
+        long bestError = Long.MAX_VALUE;
+        for (int table = 0; table < COLOR_MODIFIERS.length; table++) {
+            int[] modifiers = COLOR_MODIFIERS[table];
+            long error = 0L;
+            for (int i = 0; i < 16; i++) {
+                if (getSubBlock(flip, i) != subBlock) continue;
+
+                int pixel = block[i];
+                int pixelR = pixel >>> 16 & 0xff;
+                int pixelG = pixel >>> 8 & 0xff;
+                int pixelB = pixel & 0xff;
+                int bestPixelError = Integer.MAX_VALUE;
+                for (int index = 0; index < 4; index++) {
+                    int modifier = modifiers[index];
+                    int dr = clamp(r + modifier) - pixelR;
+                    int dg = clamp(g + modifier) - pixelG;
+                    int db = clamp(b + modifier) - pixelB;
+                    int pixelError = dr * dr + dg * dg + db * db;
+                    if (pixelError < bestPixelError) {
+                        bestPixelError = pixelError;
+                        indices[i] = index;
+                    }
+                }
+                error += bestPixelError;
+            }
+            if (error < bestError) {
+                bestError = error;
+                subBlockTable = table;
+                for (int i = 0; i < 16; i++) {
+                    if (getSubBlock(flip, i) == subBlock) bestIndices[i] = indices[i];
+                }
+            }
+        }
+        return bestError;
+    }
+
+    /** Pixel index bits of the sub-blocks encoded last, most significant bits go to the upper half */
+    private long indexBits() {
+        long bits = 0L;
+        for (int i = 0; i < 16; i++) {
+            int index = bestIndices[i];
+            bits |= (long) (index >> 1) << (16 + i) | (long) (index & 1) << i;
+        }
+        return bits;
+    }
+
+    private long encodeAlphaBlock() {
+        int min = 255;
+        int max = 0;
+        for (int pixel : block) {
+            int alpha = pixel >>> 24;
+            if (alpha < min) min = alpha;
+            if (alpha > max) max = alpha;
+        }
+
+        if (min == max) {
+            long bits = (long) min << 56 | 1L << 52 | (long) UNIFORM_ALPHA_TABLE << 48;
+            for (int i = 0; i < 16; i++) {
+                bits |= (long) UNIFORM_ALPHA_INDEX << (45 - i * 3);
+            }
+            return bits;
+        }
+
+        long bestBits = 0L;
+        long bestError = Long.MAX_VALUE;
+        for (int table = 0; table < ALPHA_MODIFIERS.length; table++) {
+            int[] modifiers = ALPHA_MODIFIERS[table];
+            // Modifiers are sorted within the negative and the positive halves, so the widest span is between 3 and 7
+            int span = modifiers[7] - modifiers[3];
+            int roughMultiplier = Math.round((max - min) / (float) span);
+            for (int multiplier = Math.max(1, roughMultiplier - 1); multiplier <= Math.min(15, roughMultiplier + 1); multiplier++) {
+                int base = clamp(Math.round((min + max) / 2f - (modifiers[7] + modifiers[3]) * multiplier / 2f));
+                long error = 0L;
+                long indexBits = 0L;
+                for (int i = 0; i < 16; i++) {
+                    int alpha = block[i] >>> 24;
+                    int bestPixelError = Integer.MAX_VALUE;
+                    int bestIndex = 0;
+                    for (int index = 0; index < 8; index++) {
+                        int delta = clamp(base + modifiers[index] * multiplier) - alpha;
+                        int pixelError = delta * delta;
+                        if (pixelError < bestPixelError) {
+                            bestPixelError = pixelError;
+                            bestIndex = index;
+                        }
+                    }
+                    error += bestPixelError;
+                    indexBits |= (long) bestIndex << (45 - i * 3);
+                }
+                if (error < bestError) {
+                    bestError = error;
+                    bestBits = (long) base << 56 | (long) multiplier << 52 | (long) table << 48 | indexBits;
+                }
+            }
+        }
+        return bestBits;
+    }
+
+    /** @return 0 for the left (or the top, if flipped) 2x4 sub-block, 1 for the other one */
+    private static int getSubBlock(int flip, int pixelIndex) {
+        return flip == 0 ? pixelIndex / 8 : (pixelIndex % 4) / 2;
+    }
+
+    private static int expand5(int value) {
+        return value << 3 | value >> 2;
+    }
+
+    private static int clamp(int value) {
+        return MathUtils.clamp(value, 0, 255);
+    }
+
+    private static void writeLong(byte[] data, int offset, long value) {
+        for (int i = 0; i < 8; i++) {
+            data[offset + i] = (byte) (value >>> (56 - i * 8));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.crashinvaders.texturepackergui.services.model.EtcFormat;
+import com.crashinvaders.texturepackergui.services.model.EtcOutputModel;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessingManager;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessor;
+import com.crashinvaders.texturepackergui.utils.packprocessing.StageMetrics;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes ETC1/ETC2 copies of the final atlas pages in KTX or ZKTX containers and points the atlas file to them.
+ * Original pages are kept next to them.
+ * <p/>
+ * ETC1 has no alpha, so pages with transparency get a separate ETC1 alpha page ("name_alpha.ktx"),
+ * its color channels hold the alpha of the page. ETC2 pages with transparency are encoded as RGBA8 instead.
+ * Mip levels are generated if the pack's min filter uses them, as compressed textures can't generate them at runtime.
+ */
+public class EtcOutputProcessor implements PackProcessor {
+    static final String ALPHA_PAGE_SUFFIX = "_alpha";
+
+    @Override
+    public void processPackage(ProjectModel projectModel, PackModel pack, ObjectMap metadata) throws Exception {
+        EtcOutputModel etcOutput = projectModel.getEtcOutput();
+        if (etcOutput == null) return;
+
+        System.out.println("ETC output started");
+
+        FileHandle atlasFile = Gdx.files.absolute(pack.getOutputDir()).child(pack.getCanonicalFilename());
+        TextureAtlas.TextureAtlasData atlasData = new TextureAtlas.TextureAtlasData(atlasFile, atlasFile.parent(), false);
+        boolean mipMaps = pack.getSettings().filterMin.isMipMap();
+
+        EtcEncoder encoder = new EtcEncoder();
+        ObjectMap<String, String> pageNames = new ObjectMap<>();
+        for (TextureAtlas.TextureAtlasData.Page page : atlasData.getPages()) {
+            PackProcessingManager.checkCancelled();
+
+            File pageFile = page.textureFile.file();
+            BufferedImage image = ImageIO.read(pageFile);
+            if (image == null) throw new IOException("Can't decode atlas page " + pageFile);
+
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+            boolean alpha = EtcEncoder.hasAlpha(pixels);
+
+            String baseName = page.textureFile.nameWithoutExtension();
+            String pageName = baseName + "." + etcOutput.getFileExtension();
+            File etcFile = new File(pageFile.getParentFile(), pageName);
+            long size;
+            String description;
+            if (etcOutput.getFormat() == EtcFormat.ETC2) {
+                size = KtxWriter.write(etcFile, etcOutput.isZipped(),
+                        alpha ? EtcEncoder.GL_COMPRESSED_RGBA8_ETC2_EAC : EtcEncoder.GL_COMPRESSED_RGB8_ETC2,
+                        alpha ? EtcEncoder.GL_RGBA : EtcEncoder.GL_RGB,
+                        width, height, encodeMipLevels(encoder, pixels, width, height, alpha, mipMaps));
+                description = alpha ? "ETC2 RGBA8" : "ETC2 RGB8";
+            } else {
+                size = KtxWriter.write(etcFile, etcOutput.isZipped(), EtcEncoder.GL_ETC1_RGB8_OES, EtcEncoder.GL_RGB,
+                        width, height, encodeMipLevels(encoder, pixels, width, height, false, mipMaps));
+                description = "ETC1";
+                if (alpha) {
+                    File alphaFile = new File(pageFile.getParentFile(), baseName + ALPHA_PAGE_SUFFIX + "." + etcOutput.getFileExtension());
+                    size += KtxWriter.write(alphaFile, etcOutput.isZipped(), EtcEncoder.GL_ETC1_RGB8_OES, EtcEncoder.GL_RGB,
+                            width, height, encodeMipLevels(encoder, EtcEncoder.extractAlpha(pixels), width, height, false, mipMaps));
+                    description = "ETC1 with alpha page " + alphaFile.getName();
+                }
+            }
+            pageNames.put(page.textureFile.name(), pageName);
+
+            System.out.println(String.format("%s -> %s (%s%s, %s)", page.textureFile.name(), pageName, description,
+                    mipMaps ? ", mipmaps" : "", StageMetrics.formatBytes(size)));
+        }
+
+        atlasFile.writeString(replacePageNames(atlasFile.readString("UTF-8"), pageNames), false, "UTF-8");
+
+        System.out.println("ETC output finished");
+    }
+
+    /** @return compressed data of the full size image and, if requested, of all its mip levels down to 1x1 */
+    private static Array<byte[]> encodeMipLevels(EtcEncoder encoder, int[] pixels, int width, int height,
+                                                 boolean alpha, boolean mipMaps) throws InterruptedException {
+        Array<byte[]> levels = new Array<>();
+        while (true) {
+            levels.add(alpha ? encoder.encodeRgba(pixels, width, height) : encoder.encodeRgb(pixels, width, height));
+            if (!mipMaps || (width == 1 && height == 1)) break;
+
+            PackProcessingManager.checkCancelled();
+            pixels = EtcEncoder.downsample(pixels, width, height);
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+        }
+        return levels;
+    }
+
+    /** Page file name goes first in every page section, sections are separated with empty lines */
+    private static String replacePageNames(String atlas, ObjectMap<String, String> pageNames) {
+        String[] lines = atlas.split("\n", -1);
+        StringBuilder sb = new StringBuilder(atlas.length());
+        boolean sectionStart = true;
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            String trimmed = line.trim();
+            if (sectionStart && pageNames.containsKey(trimmed)) {
+                line = pageNames.get(trimmed);
+            }
+            sectionStart = trimmed.isEmpty();
+
+            sb.append(line);
+            if (i < lines.length - 1) sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
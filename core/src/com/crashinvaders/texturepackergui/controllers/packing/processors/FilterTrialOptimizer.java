@@ -0,0 +1,204 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import com.googlecode.pngtastic.core.PngChunk;
+import com.googlecode.pngtastic.core.PngFilterType;
+import com.googlecode.pngtastic.core.PngImage;
+import com.googlecode.pngtastic.core.PngOptimizer;
+import com.googlecode.pngtastic.core.processing.PngByteArrayOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Pngtastic optimizer that evaluates every filter and deflate strategy combination as a separate trial.
+ * Trials may run concurrently on the fork-join pool of the calling thread.
+ * <p/>
+ * Unlike the base implementation, the result doesn't depend on the evaluation order:
+ * trials are compared in a fixed order and the first smallest one wins, so parallel and sequential runs
+ * produce identical bytes. Output format and the rest of the processing are the same as in {@link PngOptimizer}.
+ */
+class FilterTrialOptimizer extends PngOptimizer {
+    /** Same as in Pngtastic's compression handler: default, filtered and huffman only */
+    private static final int[] DEFLATE_STRATEGIES = {Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY};
+    private static final String IDAT = "IDAT";
+    private static final String IEND = "IEND";
+
+    private final boolean parallel;
+
+    /** @param parallel true to run the trials concurrently, they are run one by one on the calling thread otherwise */
+    FilterTrialOptimizer(String logLevel, boolean parallel) {
+        super(logLevel);
+        this.parallel = parallel;
+    }
+
+    @Override
+    public PngImage optimize(PngImage image, boolean removeGamma, Integer compressionLevel) throws IOException {
+        // Same as the base implementation, such images are left as they are
+        if (image.getInterlace() == 1 && image.getSampleBitCount() < 8) return image;
+
+        PngImage result = new PngImage(log);
+        result.setInterlace((short) 0);
+
+        Iterator<PngChunk> chunkIterator = image.getChunks().iterator();
+        PngChunk chunk = processHeadChunks(result, removeGamma, chunkIterator);
+        PngByteArrayOutputStream inflatedImageData = getInflatedImageData(chunk, chunkIterator);
+
+        int scanlineLength = (int) Math.ceil(image.getWidth() * image.getSampleBitCount() / 8f) + 1;
+        final List<byte[]> originalScanlines = image.getInterlace() == 1
+                ? pngInterlaceHandler.deInterlace((int) image.getWidth(), (int) image.getHeight(), image.getSampleBitCount(), inflatedImageData)
+                : getScanlines(inflatedImageData, image.getSampleBitCount(), scanlineLength, image.getHeight());
+
+        // Standard filters are independent of each other
+        final int sampleBitCount = image.getSampleBitCount();
+        PngFilterType[] filterTypes = PngFilterType.standardValues();
+        List<Callable<List<byte[]>>> filterTasks = new ArrayList<>(filterTypes.length);
+        for (final PngFilterType filterType : filterTypes) {
+            filterTasks.add(new Callable<List<byte[]>>() {
+                @Override
+                public List<byte[]> call() {
+                    List<byte[]> scanlines = copyScanlines(originalScanlines);
+                    pngFilterHandler.applyFiltering(filterType, scanlines, sampleBitCount);
+                    return scanlines;
+                }
+            });
+        }
+        List<List<byte[]>> filteredScanlines = run(filterTasks);
+
+        // Enum map has a fixed iteration order, so adaptive filter resolves ties the same way every time
+        Map<PngFilterType, List<byte[]>> filteredScanlinesMap = new EnumMap<>(PngFilterType.class);
+        List<PngByteArrayOutputStream> candidates = new ArrayList<>(filterTypes.length + 1);
+        List<PngFilterType> candidateFilters = new ArrayList<>(filterTypes.length + 1);
+        for (int i = 0; i < filterTypes.length; i++) {
+            filteredScanlinesMap.put(filterTypes[i], filteredScanlines.get(i));
+            candidates.add(serialize(filteredScanlines.get(i)));
+            candidateFilters.add(filterTypes[i]);
+        }
+        // Adaptive filter writes its result over the inflated data, the same as the base implementation does
+        pngFilterHandler.applyAdaptiveFiltering(inflatedImageData, copyScanlines(originalScanlines), filteredScanlinesMap, sampleBitCount);
+        candidates.add(inflatedImageData);
+        candidateFilters.add(PngFilterType.ADAPTIVE);
+
+        List<Callable<byte[]>> deflateTasks = new ArrayList<>(candidates.size() * DEFLATE_STRATEGIES.length);
+        for (final PngByteArrayOutputStream candidate : candidates) {
+            for (final int strategy : DEFLATE_STRATEGIES) {
+                final Integer level = compressionLevel;
+                deflateTasks.add(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        return deflate(candidate, strategy, level);
+                    }
+                });
+            }
+        }
+        List<byte[]> deflated = run(deflateTasks);
+
+        byte[] bestData = null;
+        int bestIndex = -1;
+        for (int i = 0; i < deflated.size(); i++) {
+            byte[] data = deflated.get(i);
+            if (bestData == null || data.length < bestData.length) {
+                bestData = data;
+                bestIndex = i;
+            }
+        }
+        log.debug("Best trial: filter %s, deflate strategy %d, bytes=%d",
+                candidateFilters.get(bestIndex / DEFLATE_STRATEGIES.length),
+                DEFLATE_STRATEGIES[bestIndex % DEFLATE_STRATEGIES.length], bestData.length);
+
+        result.addChunk(new PngChunk(IDAT.getBytes(), bestData));
+
+        // Critical chunks that follow the image data are kept
+        while (chunk != null) {
+            if (chunk.isCritical() && !IDAT.equals(chunk.getTypeString())) {
+                result.addChunk(new PngChunk(chunk.getType(), chunk.getData().clone()));
+            }
+            chunk = chunkIterator.hasNext() ? chunkIterator.next() : null;
+        }
+        List<PngChunk> chunks = result.getChunks();
+        if (chunks != null && !IEND.equals(chunks.get(chunks.size() - 1).getTypeString())) {
+            result.addChunk(new PngChunk(IEND.getBytes(), new byte[0]));
+        }
+        return result;
+    }
+
+    /** @return results in the same order as tasks are */
+    private <T> List<T> run(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (parallel) {
+                List<ForkJoinTask<T>> forkJoinTasks = new ArrayList<>(tasks.size());
+                for (Callable<T> task : tasks) {
+                    forkJoinTasks.add(ForkJoinTask.adapt(task));
+                }
+                for (ForkJoinTask<T> forkJoinTask : ForkJoinTask.invokeAll(forkJoinTasks)) {
+                    results.add(forkJoinTask.join());
+                }
+            } else {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        return results;
+    }
+
+    /** Same as Pngtastic's compression handler does: when level is not specified, all of them are tried */
+    private static byte[] deflate(PngByteArrayOutputStream data, int strategy, Integer level) throws IOException {
+        if (level != null && level >= 0 && level <= 9) {
+            return deflate(data, strategy, level.intValue());
+        }
+
+        byte[] best = null;
+        for (int i = 9; i > 0; i--) {
+            byte[] result = deflate(data, strategy, i);
+            if (best == null || best.length > result.length) {
+                best = result;
+            }
+        }
+        return best;
+    }
+
+    private static byte[] deflate(PngByteArrayOutputStream data, int strategy, int level) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setStrategy(strategy);
+            DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(output, deflater);
+            deflaterOutput.write(data.get(), 0, data.len());
+            deflaterOutput.close();
+        } finally {
+            deflater.end();
+        }
+        return output.toByteArray();
+    }
+
+    private static List<byte[]> copyScanlines(List<byte[]> scanlines) {
+        List<byte[]> copy = new ArrayList<>(scanlines.size());
+        for (byte[] scanline : scanlines) {
+            copy.add(scanline.clone());
+        }
+        return copy;
+    }
+
+    private static PngByteArrayOutputStream serialize(List<byte[]> scanlines) {
+        int scanlineLength = scanlines.get(0).length;
+        byte[] data = new byte[scanlineLength * scanlines.size()];
+        for (int i = 0; i < scanlines.size(); i++) {
+            System.arraycopy(scanlines.get(i), 0, data, i * scanlineLength, scanlineLength);
+        }
+        return new PngByteArrayOutputStream(data);
+    }
+}
@@ -0,0 +1,86 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes compressed 2D textures to KTX files, or to ZKTX files - the gzipped KTX data prefixed with its size,
+ * the way libGDX's {@link com.badlogic.gdx.graphics.glutils.KTXTextureData} reads them.
+ */
+class KtxWriter {
+    private static final byte[] IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'};
+    private static final int HEADER_SIZE = 64;
+
+    private KtxWriter() {
+    }
+
+    /**
+     * @param mipLevels compressed data of every mip level, starting from the full size one
+     * @return number of bytes written
+     */
+    static long write(File file, boolean zipped, int glInternalFormat, int glBaseInternalFormat,
+                      int width, int height, Array<byte[]> mipLevels) throws IOException {
+        int size = HEADER_SIZE;
+        for (byte[] level : mipLevels) {
+            // Block data is always a multiple of four bytes, so no mip padding is needed
+            size += 4 + level.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(IDENTIFIER);
+        buffer.putInt(0x04030201); // endianness
+        buffer.putInt(0); // glType, zero for compressed textures
+        buffer.putInt(1); // glTypeSize
+        buffer.putInt(0); // glFormat, zero for compressed textures
+        buffer.putInt(glInternalFormat);
+        buffer.putInt(glBaseInternalFormat);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(0); // pixelDepth
+        buffer.putInt(0); // numberOfArrayElements
+        buffer.putInt(1); // numberOfFaces
+        buffer.putInt(mipLevels.size);
+        buffer.putInt(0); // bytesOfKeyValueData
+        for (byte[] level : mipLevels) {
+            buffer.putInt(level.length);
+            buffer.put(level);
+        }
+        byte[] ktx = buffer.array();
+
+        if (!zipped) {
+            writeBytes(file, ktx);
+            return ktx.length;
+        }
+
+        ByteArrayOutputStream zippedBytes = new ByteArrayOutputStream(ktx.length / 2);
+        DataOutputStream output = new DataOutputStream(new GZIPOutputStream(zippedBytes));
+        try {
+            output.writeInt(ktx.length);
+            output.write(ktx);
+        } finally {
+            StreamUtils.closeQuietly(output);
+        }
+        writeBytes(file, zippedBytes.toByteArray());
+        return zippedBytes.size();
+    }
+
+    private static void writeBytes(File file, byte[] bytes) throws IOException {
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(bytes);
+        } finally {
+            StreamUtils.closeQuietly(output);
+        }
+    }
+}
@@ -5,12 +5,29 @@ import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.tools.texturepacker.TexturePacker;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
 import com.crashinvaders.texturepackergui.services.model.ProjectModel;
 import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessor;
+import com.crashinvaders.texturepackergui.utils.packprocessing.StageMetrics;
 
 import java.io.File;
 
 public class PackingProcessor implements PackProcessor {
+    /** Null if images shouldn't be cached */
+    private final DecodedImageCache imageCache;
+
+    public PackingProcessor() {
+        this(0L);
+    }
+
+    /**
+     * @param imageCacheBudget max memory in bytes for input images decoded by one pack and reused by the others,
+     *                         processed by the same instance. Zero disables caching.
+     */
+    public PackingProcessor(long imageCacheBudget) {
+        this.imageCache = imageCacheBudget > 0L ? new DecodedImageCache(imageCacheBudget) : null;
+    }
+
     @Override
     public void processPackage(ProjectModel projectModel, PackModel pack, ObjectMap metadata) throws Exception {
         String settingsOrigExtension = pack.getSettings().atlasExtension;
@@ -40,10 +57,56 @@ public class PackingProcessor implements PackProcessor {
             oldFile.delete();
         }
 
-        TexturePacker.process(pack.getSettings(), pack.getInputDir(), pack.getOutputDir(), filename);
+        // Pages that are going to be optimized anyway are passed to the compression stage in memory,
+        // the optimized pages of the previous run are moved aside, so they can be reused if they are the same
+        File atlasFile = new File(pack.getOutputDir(), pack.getCanonicalFilename());
+        PendingPages pendingPages = null;
+        if (isPageHandoffSupported(projectModel, pack)) {
+            PageHashIndex.preservePages(atlasFile);
+            pendingPages = new PendingPages();
+            PageCapturingOutputStreamSpi.install();
+            PageCapturingOutputStreamSpi.setCaptureTarget(pendingPages);
+        } else {
+            PageHashIndex.discard(atlasFile);
+        }
+        try {
+            if (imageCache != null) {
+                DecodedImageCache.Scope cacheScope = imageCache.openScope();
+                try {
+                    TexturePacker.process(pack.getSettings(), pack.getInputDir(), pack.getOutputDir(), filename);
+                } finally {
+                    cacheScope.close();
+                }
+                System.out.println(String.format("Image cache: %d hit(s), %d miss(es), %.1f MB cached",
+                        cacheScope.getHits(), cacheScope.getMisses(), imageCache.getMemoryUsed() / (1024f * 1024f)));
+            } else {
+                TexturePacker.process(pack.getSettings(), pack.getInputDir(), pack.getOutputDir(), filename);
+            }
+        } finally {
+            if (pendingPages != null) {
+                PageCapturingOutputStreamSpi.setCaptureTarget(null);
+                // Even pages of a failed pack reach the disk eventually
+                if (pendingPages.size() > 0) {
+                    metadata.put(META_PENDING_OUTPUT, pendingPages);
+                }
+            }
+        }
+        if (pendingPages != null && pendingPages.size() > 0) {
+            System.out.println(String.format("%d page(s) are passed to compression in memory (%s)",
+                    pendingPages.size(), StageMetrics.formatBytes(pendingPages.getTotalSize())));
+        }
 
         pack.getSettings().atlasExtension = settingsOrigExtension;
 
         System.out.println("Packing done");
     }
+
+    /** @return true if the pages are going to be re-encoded by one of the {@link PngPageOptimizer} based processors */
+    private static boolean isPageHandoffSupported(ProjectModel projectModel, PackModel pack) {
+        if (!"png".equals(pack.getSettings().outputFormat)) return false;
+        if (projectModel.getPngCompression() == null) return false;
+
+        PngCompressionType type = projectModel.getPngCompression().getType();
+        return type == PngCompressionType.PNGTASTIC || type == PngCompressionType.ZOPFLI || type == PngCompressionType.PALETTE;
+    }
 }
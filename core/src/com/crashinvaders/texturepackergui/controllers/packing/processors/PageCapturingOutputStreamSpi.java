@@ -0,0 +1,91 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageOutputStreamSpi;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Redirects PNG files written through {@link javax.imageio.ImageIO#write(java.awt.image.RenderedImage, String, File)}
+ * to the {@link PendingPages} of the current thread, instead of the disk.
+ * <p/>
+ * Threads without a capture target are not affected, their files are written as usual.
+ */
+class PageCapturingOutputStreamSpi extends ImageOutputStreamSpi {
+    private static final ThreadLocal<PendingPages> captureTarget = new ThreadLocal<>();
+    private static boolean installed;
+
+    private PageCapturingOutputStreamSpi() {
+        super("gdx-texture-packer-gui", "1.0", File.class);
+    }
+
+    /** Registers the provider ahead of the default ones. Safe to call many times. */
+    static synchronized void install() {
+        if (installed) return;
+        installed = true;
+
+        IIORegistry registry = IIORegistry.getDefaultInstance();
+        PageCapturingOutputStreamSpi streamSpi = new PageCapturingOutputStreamSpi();
+        registry.registerServiceProvider(streamSpi, ImageOutputStreamSpi.class);
+
+        Iterator<ImageOutputStreamSpi> streamSpis = registry.getServiceProviders(ImageOutputStreamSpi.class, false);
+        while (streamSpis.hasNext()) {
+            ImageOutputStreamSpi spi = streamSpis.next();
+            if (spi != streamSpi) registry.setOrdering(ImageOutputStreamSpi.class, streamSpi, spi);
+        }
+    }
+
+    /** @param pendingPages null to stop capturing on the current thread */
+    static void setCaptureTarget(PendingPages pendingPages) {
+        if (pendingPages != null) {
+            captureTarget.set(pendingPages);
+        } else {
+            captureTarget.remove();
+        }
+    }
+
+    @Override
+    public ImageOutputStream createOutputStreamInstance(Object output, boolean useCache, File cacheDir) throws IOException {
+        File file = (File) output;
+        PendingPages pendingPages = captureTarget.get();
+        if (pendingPages != null && file.getName().toLowerCase(Locale.ENGLISH).endsWith(".png")) {
+            return new CapturingOutputStream(file, pendingPages);
+        }
+        return new FileImageOutputStream(file);
+    }
+
+    @Override
+    public String getDescription(Locale locale) {
+        return "File stream that keeps atlas pages in memory";
+    }
+
+    private static class CapturingOutputStream extends MemoryCacheImageOutputStream {
+        private final File file;
+        private final PendingPages pendingPages;
+        private final ByteArrayOutputStream buffer;
+
+        CapturingOutputStream(File file, PendingPages pendingPages) {
+            this(file, pendingPages, new ByteArrayOutputStream());
+        }
+
+        private CapturingOutputStream(File file, PendingPages pendingPages, ByteArrayOutputStream buffer) {
+            super(buffer);
+            this.file = file;
+            this.pendingPages = pendingPages;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Flushes the cached content to the buffer
+            super.close();
+            pendingPages.put(file, buffer.toByteArray());
+        }
+    }
+}
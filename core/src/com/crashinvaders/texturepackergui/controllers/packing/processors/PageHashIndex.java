@@ -0,0 +1,170 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import com.crashinvaders.texturepackergui.utils.packprocessing.OptimizedPageCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keys of the pages optimized by the previous run of an atlas, stored next to it ("." + atlas file name + ".tppages").
+ * A page whose packed bytes and compressor settings give the same key doesn't have to be optimized again,
+ * the page written by that run is put back instead.
+ * <p/>
+ * The packer deletes all the pages of the atlas before packing, so the indexed pages are moved aside first
+ * ("." + page file name + ".tpprev", see {@link #preservePages(File)}). A preserved page is put back only
+ * if it's still the one written by the previous run, the rest are deleted once the pages are processed.
+ * <p/>
+ * Only the pages of the latest run are kept. The file is just a hint: if it's missing or broken, all the pages are processed.
+ */
+class PageHashIndex {
+    private static final String FILE_PREFIX = ".";
+    private static final String FILE_SUFFIX = ".tppages";
+    private static final String PRESERVED_PAGE_SUFFIX = ".tpprev";
+    /** Written files are hashed the same way page keys are computed, just with a constant compressor key */
+    private static final String OUTPUT_HASH_KEY = "output";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final File dir;
+    /** Page file name to its entry */
+    private final Map<String, Entry> previousEntries;
+    private final Map<String, Entry> currentEntries = new LinkedHashMap<>();
+
+    private PageHashIndex(File file, Map<String, Entry> previousEntries) {
+        this.file = file;
+        this.dir = file.getParentFile();
+        this.previousEntries = previousEntries;
+    }
+
+    /**
+     * Moves the pages of the previous run aside, so the packer doesn't delete them. Should be called right before packing.
+     * Pages that are missing may have been preserved by a run that failed before the compression, those are kept as they are.
+     * Failures are ignored, such pages are just optimized again.
+     */
+    static void preservePages(File atlasFile) {
+        PageHashIndex index = load(atlasFile);
+        for (String pageName : index.previousEntries.keySet()) {
+            File pageFile = new File(index.dir, pageName);
+            if (!pageFile.isFile()) continue;
+
+            try {
+                Files.move(pageFile.toPath(), getPreservedFile(pageFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /** Removes the index along with the preserved pages, for the runs that don't optimize the pages */
+    static void discard(File atlasFile) {
+        PageHashIndex index = load(atlasFile);
+        index.deletePreservedPages();
+        index.file.delete();
+    }
+
+    static PageHashIndex load(File atlasFile) {
+        File file = new File(atlasFile.getParentFile(), FILE_PREFIX + atlasFile.getName() + FILE_SUFFIX);
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        if (file.isFile()) {
+            try {
+                List<String> lines = Files.readAllLines(file.toPath(), UTF_8);
+                for (String line : lines) {
+                    String[] parts = line.split("\t");
+                    if (parts.length != 3) continue;
+                    entries.put(parts[0], new Entry(parts[1], parts[2]));
+                }
+            } catch (IOException e) {
+                entries.clear();
+            }
+        }
+        return new PageHashIndex(file, entries);
+    }
+
+    /**
+     * @param key the key of the packed page bytes, see {@link OptimizedPageCache#computeKey(byte[], String)}
+     * @return true if the preserved page is what the previous run has written for the same key, it can be put back with {@link #restore(File)}
+     */
+    boolean isUnchanged(File pageFile, String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = previousEntries.get(pageFile.getName());
+        }
+        if (entry == null || !entry.key.equals(key)) return false;
+
+        File preservedFile = getPreservedFile(pageFile);
+        if (!preservedFile.isFile()) return false;
+        try {
+            byte[] writtenBytes = Files.readAllBytes(preservedFile.toPath());
+            return entry.outputHash.equals(computeOutputHash(writtenBytes));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Puts the preserved page back in place of the page file, the page is kept in the index for the next run */
+    void restore(File pageFile) throws IOException {
+        String name = pageFile.getName();
+        Files.move(getPreservedFile(pageFile).toPath(), pageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        synchronized (this) {
+            currentEntries.put(name, previousEntries.get(name));
+        }
+    }
+
+    /** @param writtenBytes the bytes the page file was written with */
+    void put(File pageFile, String key, byte[] writtenBytes) {
+        Entry entry = new Entry(key, computeOutputHash(writtenBytes));
+        synchronized (this) {
+            currentEntries.put(pageFile.getName(), entry);
+        }
+    }
+
+    /** Stores the pages of the current run and deletes the preserved pages that were not restored, failures are ignored */
+    synchronized void save() {
+        deletePreservedPages();
+        if (currentEntries.isEmpty()) {
+            file.delete();
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Entry> entry : currentEntries.entrySet()) {
+            sb.append(entry.getKey()).append('\t')
+                    .append(entry.getValue().key).append('\t')
+                    .append(entry.getValue().outputHash).append('\n');
+        }
+        try {
+            Files.write(file.toPath(), sb.toString().getBytes(UTF_8));
+        } catch (IOException e) {
+            file.delete();
+        }
+    }
+
+    private synchronized void deletePreservedPages() {
+        for (String pageName : previousEntries.keySet()) {
+            getPreservedFile(new File(dir, pageName)).delete();
+        }
+    }
+
+    private static File getPreservedFile(File pageFile) {
+        return new File(pageFile.getParentFile(), FILE_PREFIX + pageFile.getName() + PRESERVED_PAGE_SUFFIX);
+    }
+
+    private static String computeOutputHash(byte[] bytes) {
+        return OptimizedPageCache.computeKey(bytes, OUTPUT_HASH_KEY);
+    }
+
+    private static class Entry {
+        final String key;
+        final String outputHash;
+
+        Entry(String key, String outputHash) {
+            this.key = key;
+            this.outputHash = outputHash;
+        }
+    }
+}
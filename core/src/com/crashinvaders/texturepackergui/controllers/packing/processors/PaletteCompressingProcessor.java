@@ -0,0 +1,66 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.services.model.compression.PaletteCompressionModel;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessor;
+import com.googlecode.pngtastic.core.PngOptimizer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Lossy compression without any network access, pages are quantized to a palette in memory */
+public class PaletteCompressingProcessor implements PackProcessor {
+    /** Lossless pass over the quantized pages is cheap, so it always runs at max level */
+    private static final int COMPRESSION_LEVEL = 9;
+
+    @Override
+    public void processPackage(ProjectModel projectModel, PackModel pack, ObjectMap metadata) throws Exception {
+        if (!pack.getSettings().outputFormat.equals("png")) return;
+        if (projectModel.getPngCompression() == null || projectModel.getPngCompression().getType() != PngCompressionType.PALETTE) return;
+
+        System.out.println("Palette compression started");
+
+        final PaletteCompressionModel compModel = (PaletteCompressionModel)projectModel.getPngCompression();
+        final PaletteQuantizer quantizer = new PaletteQuantizer(compModel.getMaxColors(), compModel.getDithering());
+        final AtomicInteger losslessPages = new AtomicInteger();
+        PngPageOptimizer pageOptimizer = new PngPageOptimizer(new PngPageOptimizer.OptimizerFactory() {
+            @Override
+            public PngOptimizer create(String logLevel) {
+                return new PaletteQuantizingOptimizer(logLevel, PngPageOptimizer.hasIdleWorkers(),
+                        quantizer, compModel.getQualityFloor(), losslessPages);
+            }
+        }, false, COMPRESSION_LEVEL, compModel.getType().key + ":" + compModel.serializeState());
+
+        // Compression section
+        List<PngOptimizer.OptimizerResult> results;
+        {
+            FileHandle atlasFile = Gdx.files.absolute(pack.getOutputDir()).child(pack.getCanonicalFilename());
+            TextureAtlas.TextureAtlasData atlasData = new TextureAtlas.TextureAtlasData(
+                            atlasFile, Gdx.files.absolute(pack.getOutputDir()), false);
+
+            // Pages are compressed concurrently, each one with its own optimizer
+            results = pageOptimizer.optimize(atlasData.getPages(), (PendingPages) metadata.get(META_PENDING_OUTPUT),
+                    PageHashIndex.load(atlasFile.file()));
+        }
+
+        // Compute compression rate for metadata
+        metadata.put(META_COMPRESSION_RATE, PngPageOptimizer.computeCompressionRate(results));
+
+        if (losslessPages.get() > 0) {
+            System.out.println("Quality floor: " + losslessPages.get() + " of " + results.size() + " page(s) kept lossless");
+        }
+        if (pageOptimizer.getUnchangedPageCount() > 0) {
+            System.out.println("Unchanged pages: " + pageOptimizer.getUnchangedPageCount() + " of " + results.size() + " page(s) reused from the previous run");
+        }
+        if (pageOptimizer.getCachedPageCount() > 0) {
+            System.out.println("Page cache: " + pageOptimizer.getCachedPageCount() + " of " + results.size() + " page(s) reused");
+        }
+        System.out.println("Palette compression finished");
+    }
+}
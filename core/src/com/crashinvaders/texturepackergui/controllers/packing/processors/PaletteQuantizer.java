@@ -0,0 +1,418 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+
+/**
+ * Reduces colors of an image to an indexed palette of up to 256 entries.
+ * <p/>
+ * Palette is built by median cut over the color histogram of the image: the box of the largest color variance
+ * is split in two until there are as many boxes as palette entries. Then every pixel is mapped
+ * to the nearest palette entry, optionally with Floyd-Steinberg dithering.
+ * All the fully transparent pixels share a single palette entry and never receive dithering error,
+ * so transparent areas of the atlas stay clean.
+ */
+class PaletteQuantizer {
+    /** Quality is mapped linearly from PSNR: this value and lower is zero quality */
+    private static final float MIN_PSNR = 20f;
+    /** ...and this value and higher is full quality */
+    private static final float MAX_PSNR = 50f;
+    /** Dithered pixels rarely repeat, so the lookup cache is of a fixed size and entries just replace each other */
+    private static final int NEAREST_CACHE_SIZE = 1 << 16;
+
+    private final int maxColors;
+    private final float dithering;
+
+    /**
+     * @param maxColors palette size limit, clamped to [2..256]
+     * @param dithering share of the quantization error that is spread over the neighbor pixels, clamped to [0..1]
+     */
+    PaletteQuantizer(int maxColors, float dithering) {
+        this.maxColors = MathUtils.clamp(maxColors, 2, 256);
+        this.dithering = MathUtils.clamp(dithering, 0f, 1f);
+    }
+
+    Result quantize(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        boolean hasTransparent = false;
+        for (int i = 0; i < pixels.length; i++) {
+            if ((pixels[i] >>> 24) == 0) {
+                // Color of invisible pixels doesn't matter
+                pixels[i] = 0;
+                hasTransparent = true;
+            }
+        }
+
+        // Histogram is built from the sorted pixels, hash maps degrade badly on millions of distinct colors
+        int[] sortedPixels = pixels.clone();
+        Arrays.sort(sortedPixels);
+        IntArray colors = new IntArray();
+        IntArray counts = new IntArray();
+        for (int i = 0; i < sortedPixels.length; ) {
+            int color = sortedPixels[i];
+            int end = i + 1;
+            while (end < sortedPixels.length && sortedPixels[end] == color) end++;
+            if (color != 0) {
+                colors.add(color);
+                counts.add(end - i);
+            }
+            i = end;
+        }
+
+        int slots = hasTransparent ? maxColors - 1 : maxColors;
+        boolean exact = colors.size <= slots;
+        int[] opaquePalette = exact ? colors.toArray() : medianCut(colors.items, counts.items, colors.size, slots);
+        int[] palette;
+        if (hasTransparent) {
+            palette = new int[opaquePalette.length + 1];
+            System.arraycopy(opaquePalette, 0, palette, 1, opaquePalette.length);
+        } else {
+            palette = opaquePalette;
+        }
+        sortByAlpha(palette);
+
+        int[] indices = new int[pixels.length];
+        double squaredError;
+        if (exact || dithering == 0f) {
+            squaredError = mapNearest(pixels, palette, indices);
+        } else {
+            squaredError = mapDithered(pixels, width, height, palette, indices);
+        }
+
+        return new Result(createImage(width, height, palette, indices), palette.length,
+                computeQuality(squaredError / (pixels.length * 4.0)));
+    }
+
+    private double mapNearest(int[] pixels, int[] palette, int[] indices) {
+        NearestCache nearestCache = new NearestCache(palette);
+        double squaredError = 0.0;
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            int index = nearestCache.find(pixel);
+            indices[i] = index;
+            squaredError += squaredDistance(pixel, palette[index]);
+        }
+        return squaredError;
+    }
+
+    private double mapDithered(int[] pixels, int width, int height, int[] palette, int[] indices) {
+        NearestCache nearestCache = new NearestCache(palette);
+        int transparentIndex = palette[0] == 0 ? 0 : -1;
+        // Error of the current and the next row, four channels per pixel and an extra pixel on each side
+        float[] rowError = new float[(width + 2) * 4];
+        float[] nextRowError = new float[(width + 2) * 4];
+        int[] value = new int[4];
+        float[] exactValue = new float[4];
+
+        double squaredError = 0.0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                int pixel = pixels[i];
+                if (pixel == 0 && transparentIndex >= 0) {
+                    indices[i] = transparentIndex;
+                    continue;
+                }
+
+                int errorOffset = (x + 1) * 4;
+                for (int c = 0; c < 4; c++) {
+                    exactValue[c] = channel(pixel, c) + rowError[errorOffset + c];
+                    value[c] = MathUtils.clamp(Math.round(exactValue[c]), 0, 255);
+                }
+                int ditheredPixel = value[0] << 24 | value[1] << 16 | value[2] << 8 | value[3];
+                int index = nearestCache.find(ditheredPixel);
+                indices[i] = index;
+                // Quality reflects how well the palette fits the image, the noise that dithering adds is intended
+                squaredError += squaredDistance(pixel, palette[nearestCache.find(pixel)]);
+
+                for (int c = 0; c < 4; c++) {
+                    float error = (exactValue[c] - channel(palette[index], c)) * dithering;
+                    rowError[errorOffset + 4 + c] += error * 7f / 16f;
+                    nextRowError[errorOffset - 4 + c] += error * 3f / 16f;
+                    nextRowError[errorOffset + c] += error * 5f / 16f;
+                    nextRowError[errorOffset + 4 + c] += error * 1f / 16f;
+                }
+            }
+            float[] swap = rowError;
+            rowError = nextRowError;
+            nextRowError = swap;
+            Arrays.fill(nextRowError, 0f);
+        }
+        return squaredError;
+    }
+
+    private static int findNearest(int[] palette, int pixel) {
+        int nearest = 0;
+        int nearestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < palette.length; i++) {
+            int distance = squaredDistance(pixel, palette[i]);
+            if (distance < nearestDistance) {
+                nearest = i;
+                nearestDistance = distance;
+                if (distance == 0) break;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Splits the color histogram into boxes until there are as many of them as palette entries,
+     * every box then turns into the average color of its pixels.
+     * Colors and counts arrays are reordered along the way.
+     */
+    private static int[] medianCut(int[] colors, int[] counts, int colorCount, int boxCount) {
+        int[] colorsBuffer = new int[colorCount];
+        int[] countsBuffer = new int[colorCount];
+
+        Array<Box> boxes = new Array<>(boxCount);
+        boxes.add(new Box(colors, counts, 0, colorCount));
+        while (boxes.size < boxCount) {
+            Box box = null;
+            for (Box candidate : boxes) {
+                if (candidate.score > 0.0 && (box == null || candidate.score > box.score)) {
+                    box = candidate;
+                }
+            }
+            // Every box holds a single color
+            if (box == null) break;
+
+            sortByChannel(colors, counts, colorsBuffer, countsBuffer, box.start, box.end, box.channel);
+
+            int split = findSplit(colors, counts, box);
+
+            boxes.removeValue(box, true);
+            boxes.add(new Box(colors, counts, box.start, split));
+            boxes.add(new Box(colors, counts, split, box.end));
+        }
+
+        int[] palette = new int[boxes.size];
+        for (int i = 0; i < boxes.size; i++) {
+            palette[i] = boxes.get(i).computeAverage(colors, counts);
+        }
+        return palette;
+    }
+
+    /**
+     * Box is sorted by its widest channel, the split point minimizes the total variance of the halves along it.
+     * @return index of the first color of the second half, both halves get at least one color
+     */
+    private static int findSplit(int[] colors, int[] counts, Box box) {
+        double totalSum = 0.0;
+        double totalSquaredSum = 0.0;
+        for (int i = box.start; i < box.end; i++) {
+            int value = channel(colors[i], box.channel);
+            totalSum += (double) value * counts[i];
+            totalSquaredSum += (double) value * value * counts[i];
+        }
+
+        int split = box.start + 1;
+        double minVariance = Double.MAX_VALUE;
+        double weight = 0.0;
+        double sum = 0.0;
+        double squaredSum = 0.0;
+        for (int i = box.start; i < box.end - 1; i++) {
+            int value = channel(colors[i], box.channel);
+            weight += counts[i];
+            sum += (double) value * counts[i];
+            squaredSum += (double) value * value * counts[i];
+            // Values are sorted, so there is no point to split between the equal ones
+            if (channel(colors[i + 1], box.channel) == value) continue;
+
+            double restWeight = box.weight - weight;
+            double restSum = totalSum - sum;
+            double variance = squaredSum - sum * sum / weight + (totalSquaredSum - squaredSum) - restSum * restSum / restWeight;
+            if (variance < minVariance) {
+                minVariance = variance;
+                split = i + 1;
+            }
+        }
+        return split;
+    }
+
+    /** Counting sort of the range by a single channel value */
+    private static void sortByChannel(int[] colors, int[] counts, int[] colorsBuffer, int[] countsBuffer,
+                                      int start, int end, int channel) {
+        int[] positions = new int[257];
+        for (int i = start; i < end; i++) {
+            positions[channel(colors[i], channel) + 1]++;
+        }
+        for (int i = 1; i < positions.length; i++) {
+            positions[i] += positions[i - 1];
+        }
+        for (int i = start; i < end; i++) {
+            int position = start + positions[channel(colors[i], channel)]++;
+            colorsBuffer[position] = colors[i];
+            countsBuffer[position] = counts[i];
+        }
+        System.arraycopy(colorsBuffer, start, colors, start, end - start);
+        System.arraycopy(countsBuffer, start, counts, start, end - start);
+    }
+
+    /** Semi transparent entries go first, so the transparency chunk only lists them */
+    private static void sortByAlpha(int[] palette) {
+        for (int i = 1; i < palette.length; i++) {
+            int color = palette[i];
+            int j = i - 1;
+            while (j >= 0 && (palette[j] >>> 24) > (color >>> 24)) {
+                palette[j + 1] = palette[j];
+                j--;
+            }
+            palette[j + 1] = color;
+        }
+    }
+
+    private static BufferedImage createImage(int width, int height, int[] palette, int[] indices) {
+        byte[] r = new byte[palette.length];
+        byte[] g = new byte[palette.length];
+        byte[] b = new byte[palette.length];
+        byte[] a = new byte[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            a[i] = (byte) (palette[i] >>> 24);
+            r[i] = (byte) (palette[i] >>> 16);
+            g[i] = (byte) (palette[i] >>> 8);
+            b[i] = (byte) palette[i];
+        }
+
+        // Small palettes are written with fewer bits per pixel
+        int bits = palette.length <= 2 ? 1 : palette.length <= 4 ? 2 : palette.length <= 16 ? 4 : 8;
+        IndexColorModel colorModel = new IndexColorModel(bits, palette.length, r, g, b, a);
+        BufferedImage image = new BufferedImage(width, height,
+                bits == 8 ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_BYTE_BINARY, colorModel);
+        image.getRaster().setPixels(0, 0, width, height, indices);
+        return image;
+    }
+
+    private static int computeQuality(double meanSquaredError) {
+        if (meanSquaredError == 0.0) return 100;
+
+        float psnr = (float) (10.0 * Math.log10(255.0 * 255.0 / meanSquaredError));
+        return MathUtils.clamp(Math.round((psnr - MIN_PSNR) / (MAX_PSNR - MIN_PSNR) * 100f), 0, 100);
+    }
+
+    private static int squaredDistance(int color0, int color1) {
+        int distance = 0;
+        for (int c = 0; c < 4; c++) {
+            int delta = channel(color0, c) - channel(color1, c);
+            distance += delta * delta;
+        }
+        return distance;
+    }
+
+    /** @param channel 0 - alpha, 1 - red, 2 - green, 3 - blue */
+    private static int channel(int argb, int channel) {
+        return (argb >>> (24 - channel * 8)) & 0xff;
+    }
+
+    /** Direct mapped cache of the nearest palette entries */
+    private static class NearestCache {
+        private final int[] palette;
+        private final int[] keys = new int[NEAREST_CACHE_SIZE];
+        private final int[] indices = new int[NEAREST_CACHE_SIZE];
+
+        NearestCache(int[] palette) {
+            this.palette = palette;
+            Arrays.fill(indices, -1);
+        }
+
+        int find(int pixel) {
+            int slot = (pixel * 0x9E3779B1 >>> 16) & (NEAREST_CACHE_SIZE - 1);
+            if (indices[slot] >= 0 && keys[slot] == pixel) return indices[slot];
+
+            int index = findNearest(palette, pixel);
+            keys[slot] = pixel;
+            indices[slot] = index;
+            return index;
+        }
+    }
+
+    static class Result {
+        private final BufferedImage image;
+        private final int colorCount;
+        private final int quality;
+
+        Result(BufferedImage image, int colorCount, int quality) {
+            this.image = image;
+            this.colorCount = colorCount;
+            this.quality = quality;
+        }
+
+        /** @return indexed image */
+        BufferedImage getImage() {
+            return image;
+        }
+
+        int getColorCount() {
+            return colorCount;
+        }
+
+        /** @return 100 for lossless result, lower values are mapped from PSNR of the quantized image */
+        int getQuality() {
+            return quality;
+        }
+    }
+
+    /** Range of histogram colors */
+    private static class Box {
+        final int start;
+        final int end;
+        final long weight;
+        /** Channel of the largest variance */
+        final int channel;
+        /** Total squared deviation of the box colors from their average, zero for the boxes that can't be split */
+        final double score;
+
+        Box(int[] colors, int[] counts, int start, int end) {
+            this.start = start;
+            this.end = end;
+
+            double[] sums = new double[4];
+            double[] squaredSums = new double[4];
+            long weight = 0;
+            for (int i = start; i < end; i++) {
+                int count = counts[i];
+                weight += count;
+                for (int c = 0; c < 4; c++) {
+                    int value = channel(colors[i], c);
+                    sums[c] += (double) value * count;
+                    squaredSums[c] += (double) value * value * count;
+                }
+            }
+            int channel = 0;
+            double score = 0.0;
+            double maxChannelScore = -1.0;
+            for (int c = 0; c < 4; c++) {
+                double channelScore = squaredSums[c] - sums[c] * sums[c] / weight;
+                score += channelScore;
+                if (channelScore > maxChannelScore) {
+                    maxChannelScore = channelScore;
+                    channel = c;
+                }
+            }
+            this.weight = weight;
+            this.channel = channel;
+            this.score = end - start > 1 ? score : 0.0;
+        }
+
+        int computeAverage(int[] colors, int[] counts) {
+            long[] sums = new long[4];
+            for (int i = start; i < end; i++) {
+                for (int c = 0; c < 4; c++) {
+                    sums[c] += (long) channel(colors[i], c) * counts[i];
+                }
+            }
+            int color = 0;
+            for (int c = 0; c < 4; c++) {
+                color |= (int) ((sums[c] + weight / 2) / weight) << (24 - c * 8);
+            }
+            return color;
+        }
+    }
+}
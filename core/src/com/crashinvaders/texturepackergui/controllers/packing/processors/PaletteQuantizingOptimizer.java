@@ -0,0 +1,62 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import com.googlecode.pngtastic.core.PngImage;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Quantizes the image to an indexed palette and then optimizes it losslessly.
+ * If the quantized image is of lower quality than the floor, the original image is only optimized losslessly.
+ */
+class PaletteQuantizingOptimizer extends FilterTrialOptimizer {
+    private final String logLevel;
+    private final PaletteQuantizer quantizer;
+    private final int qualityFloor;
+    private final AtomicInteger losslessPages;
+
+    /**
+     * @param qualityFloor min quality [0..100] of the quantized image
+     * @param losslessPages counts images that fell below the quality floor
+     */
+    PaletteQuantizingOptimizer(String logLevel, boolean parallel, PaletteQuantizer quantizer, int qualityFloor,
+                               AtomicInteger losslessPages) {
+        super(logLevel, parallel);
+        this.logLevel = logLevel;
+        this.quantizer = quantizer;
+        this.qualityFloor = qualityFloor;
+        this.losslessPages = losslessPages;
+    }
+
+    @Override
+    public PngImage optimize(PngImage image, boolean removeGamma, Integer compressionLevel) throws IOException {
+        ByteArrayOutputStream imageOutput = new ByteArrayOutputStream();
+        image.writeDataOutputStream(imageOutput);
+        BufferedImage decodedImage = ImageIO.read(new ByteArrayInputStream(imageOutput.toByteArray()));
+        if (decodedImage == null) throw new IOException("Can't decode image " + image.getFileName());
+
+        PaletteQuantizer.Result result = quantizer.quantize(decodedImage);
+        String fileName = new File(image.getFileName()).getName();
+        if (result.getQuality() < qualityFloor) {
+            losslessPages.incrementAndGet();
+            System.out.println(String.format("%s: %d colors, quality %d is below %d, the page is kept lossless",
+                    fileName, result.getColorCount(), result.getQuality(), qualityFloor));
+            return super.optimize(image, removeGamma, compressionLevel);
+        }
+        System.out.println(String.format("%s: %d colors, quality %d",
+                fileName, result.getColorCount(), result.getQuality()));
+
+        ByteArrayOutputStream quantizedOutput = new ByteArrayOutputStream();
+        if (!ImageIO.write(result.getImage(), "png", quantizedOutput)) {
+            throw new IOException("No PNG writer for indexed image " + image.getFileName());
+        }
+        PngImage quantizedImage = new PngImage(new ByteArrayInputStream(quantizedOutput.toByteArray()), logLevel);
+        quantizedImage.setFileName(image.getFileName());
+        return super.optimize(quantizedImage, removeGamma, compressionLevel);
+    }
+}
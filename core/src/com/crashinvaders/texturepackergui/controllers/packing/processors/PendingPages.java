@@ -0,0 +1,63 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import com.crashinvaders.texturepackergui.utils.packprocessing.PendingOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encoded atlas pages that {@link PackingProcessor} has passed to the compression stage in memory.
+ * Compressors take the pages they process, so every page is written to the disk only once - after compression.
+ */
+class PendingPages implements PendingOutput {
+    private final Map<File, byte[]> pages = new LinkedHashMap<>();
+
+    synchronized void put(File file, byte[] bytes) {
+        pages.put(file.getAbsoluteFile(), bytes);
+    }
+
+    /** @return null if the page is not pending */
+    synchronized byte[] get(File file) {
+        return pages.get(file.getAbsoluteFile());
+    }
+
+    /**
+     * Removes the page, from now on the caller is responsible for writing it.
+     * @return null if the page is not pending
+     */
+    synchronized byte[] take(File file) {
+        return pages.remove(file.getAbsoluteFile());
+    }
+
+    synchronized int size() {
+        return pages.size();
+    }
+
+    synchronized long getTotalSize() {
+        long totalSize = 0L;
+        for (byte[] bytes : pages.values()) {
+            totalSize += bytes.length;
+        }
+        return totalSize;
+    }
+
+    @Override
+    public synchronized long getPendingSize(File file) {
+        byte[] bytes = pages.get(file.getAbsoluteFile());
+        return bytes != null ? bytes.length : -1L;
+    }
+
+    @Override
+    public synchronized void writeAll() throws IOException {
+        Iterator<Map.Entry<File, byte[]>> iterator = pages.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<File, byte[]> entry = iterator.next();
+            Files.write(entry.getKey().toPath(), entry.getValue());
+            iterator.remove();
+        }
+    }
+}
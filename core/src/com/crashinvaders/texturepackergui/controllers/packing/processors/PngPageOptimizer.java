@@ -0,0 +1,371 @@
+package com.crashinvaders.texturepackergui.controllers.packing.processors;
+
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.utils.Array;
+import com.crashinvaders.texturepackergui.utils.ThreadPrintStream;
+import com.crashinvaders.texturepackergui.utils.packprocessing.OptimizedPageCache;
+import com.crashinvaders.texturepackergui.utils.packprocessing.StageMetrics;
+import com.googlecode.pngtastic.core.PngImage;
+import com.googlecode.pngtastic.core.PngOptimizer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optimizes atlas pages concurrently. Every page gets its own {@link PngOptimizer} instance,
+ * as optimizer accumulates results and is not thread safe.
+ * <p/>
+ * Pages that are the same as in the previous run of the atlas are put back as they were written (see {@link PageHashIndex}),
+ * other pages that have already been optimized with the same settings are taken from {@link OptimizedPageCache}.
+ */
+class PngPageOptimizer {
+    static final String LOG_LEVEL = "INFO";
+    /**
+     * Shared between all the packs, so total number of page optimization threads is bounded.
+     * Sized by the worker thread setting (see {@link DefaultPackPipeline#setPageParallelism(int)}).
+     */
+    private static volatile ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final OptimizerFactory optimizerFactory;
+    private final boolean removeGamma;
+    private final int compressionLevel;
+    private final String compressorKey;
+    /** May be null */
+    private final OptimizedPageCache pageCache;
+    private final AtomicInteger cachedPages = new AtomicInteger();
+    private final AtomicInteger unchangedPages = new AtomicInteger();
+
+    /**
+     * @param compressorKey identifies compressor and all of its settings, pages optimized with the same key are reused
+     */
+    PngPageOptimizer(OptimizerFactory optimizerFactory, boolean removeGamma, int compressionLevel, String compressorKey) {
+        this(optimizerFactory, removeGamma, compressionLevel, compressorKey, OptimizedPageCache.getDefault());
+    }
+
+    /** @param pageCache null to optimize every page */
+    PngPageOptimizer(OptimizerFactory optimizerFactory, boolean removeGamma, int compressionLevel,
+                     String compressorKey, OptimizedPageCache pageCache) {
+        this.optimizerFactory = optimizerFactory;
+        this.removeGamma = removeGamma;
+        this.compressionLevel = compressionLevel;
+        this.compressorKey = compressorKey;
+        this.pageCache = pageCache;
+    }
+
+    /**
+     * Replaces the pool, pages that are already submitted are finished by the old one.
+     * @param parallelism max number of pages optimized at the same time
+     */
+    static synchronized void setParallelism(int parallelism) {
+        if (parallelism == pool.getParallelism()) return;
+
+        ForkJoinPool prevPool = pool;
+        pool = new ForkJoinPool(parallelism);
+        prevPool.shutdown();
+    }
+
+    /**
+     * Page tasks may split their work further into the same pool, it only pays off while the pool has spare threads.
+     * @return true if no pages are waiting for a thread and some of the threads have nothing to do
+     */
+    static boolean hasIdleWorkers() {
+        ForkJoinPool pool = PngPageOptimizer.pool;
+        return pool.getQueuedSubmissionCount() == 0 && pool.getActiveThreadCount() < pool.getParallelism();
+    }
+
+    /** @return max number of pages optimized at the same time */
+    static int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /** @return number of pages taken from the cache by the {@link #optimize(Array, PendingPages, PageHashIndex)} calls */
+    int getCachedPageCount() {
+        return cachedPages.get();
+    }
+
+    /** @return number of pages put back from the previous run by the {@link #optimize(Array, PendingPages, PageHashIndex)} calls */
+    int getUnchangedPageCount() {
+        return unchangedPages.get();
+    }
+
+    /**
+     * Blocks until all the pages are optimized.
+     * @param pendingPages pages that the packing stage has kept in memory, may be null
+     * @param pageHashes pages of the previous run of the atlas, may be null. Stored once all the pages are done.
+     * @return optimization results in the same order as pages are
+     */
+    List<PngOptimizer.OptimizerResult> optimize(Array<TextureAtlas.TextureAtlasData.Page> pages,
+                                                final PendingPages pendingPages,
+                                                final PageHashIndex pageHashes) throws Exception {
+        // Page tasks are executed by pool threads, so route their output to the pack's log
+        final PrintStream log = ThreadPrintStream.getThreadLocalSystemOut();
+        // The same goes for the CPU time they spend
+        final AtomicLong cpuTimeCounter = StageMetrics.getHelperCpuTimeCounter();
+        // Pool threads are never interrupted, page tasks have to check it themselves
+        final CancellationFlag cancellation = new CancellationFlag();
+        // All the pages of the pack go to the same pool, even if it's replaced meanwhile
+        ForkJoinPool pool = PngPageOptimizer.pool;
+
+        List<Future<List<PngOptimizer.OptimizerResult>>> futures = new ArrayList<>(pages.size);
+        for (final TextureAtlas.TextureAtlasData.Page page : pages) {
+            if (Thread.currentThread().isInterrupted()) break;
+            futures.add(pool.submit(new Callable<List<PngOptimizer.OptimizerResult>>() {
+                @Override
+                public List<PngOptimizer.OptimizerResult> call() throws Exception {
+                    PrintStream poolThreadLog = ThreadPrintStream.getThreadLocalSystemOut();
+                    ThreadPrintStream.setThreadLocalSystemOut(log);
+                    long cpuStartTime = StageMetrics.getCurrentThreadCpuNanos();
+                    try {
+                        cancellation.check();
+                        return optimizePage(page, pendingPages, pageHashes, cancellation);
+                    } finally {
+                        ThreadPrintStream.setThreadLocalSystemOut(poolThreadLog);
+                        if (cpuTimeCounter != null && cpuStartTime >= 0) {
+                            cpuTimeCounter.addAndGet(StageMetrics.getCurrentThreadCpuNanos() - cpuStartTime);
+                        }
+                    }
+                }
+            }));
+        }
+
+        List<PngOptimizer.OptimizerResult> results = new ArrayList<>(pages.size);
+        try {
+            // Pack processing was cancelled while pages were being submitted
+            if (Thread.interrupted()) throw new InterruptedException("Page optimization was cancelled");
+            for (Future<List<PngOptimizer.OptimizerResult>> future : futures) {
+                results.addAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            // Don't waste time on the rest of the pages, the pack has failed anyway
+            cancelAll(futures, cancellation);
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        } catch (InterruptedException e) {
+            cancelAll(futures, cancellation);
+            throw e;
+        } finally {
+            // Pages that have not been finished are left out, so they are processed next time
+            if (pageHashes != null) pageHashes.save();
+        }
+        return results;
+    }
+
+    /**
+     * Page that was passed in memory stays pending until the optimized one is written,
+     * so if the task fails or gets cancelled, the page is written unoptimized as it would be without the handoff.
+     */
+    private List<PngOptimizer.OptimizerResult> optimizePage(TextureAtlas.TextureAtlasData.Page page,
+                                                            PendingPages pendingPages,
+                                                            PageHashIndex pageHashes,
+                                                            CancellationFlag cancellation) throws Exception {
+        File file = page.textureFile.file();
+        byte[] pageBytes = pendingPages != null ? pendingPages.get(file) : null;
+        if (pageBytes == null) {
+            // The packer has written the page to the disk
+            pageBytes = Files.readAllBytes(file.toPath());
+        }
+        return optimizePageBytes(file, pageBytes, pendingPages, pageHashes, cancellation);
+    }
+
+    /** Page is optimized in memory and only the final result is written */
+    private List<PngOptimizer.OptimizerResult> optimizePageBytes(File file, byte[] pageBytes,
+                                                                 PendingPages pendingPages,
+                                                                 PageHashIndex pageHashes,
+                                                                 CancellationFlag cancellation) throws Exception {
+        String path = file.getAbsolutePath();
+
+        String cacheKey = null;
+        if (pageCache != null || pageHashes != null) {
+            cacheKey = OptimizedPageCache.computeKey(pageBytes, compressorKey);
+        }
+
+        if (pageHashes != null && pageHashes.isUnchanged(file, cacheKey)) {
+            cancellation.restorePage(file, pageHashes, pendingPages);
+            unchangedPages.incrementAndGet();
+            System.out.println("Page " + file.getName() + " is unchanged");
+            return Collections.singletonList(new PngOptimizer.OptimizerResult(
+                    path, pageBytes.length, file.length(), 0, 0, null));
+        }
+
+        if (pageCache != null) {
+            byte[] optimizedBytes = pageCache.get(cacheKey);
+            if (optimizedBytes != null) {
+                cancellation.writePage(file, optimizedBytes, pendingPages);
+                if (pageHashes != null) pageHashes.put(file, cacheKey, optimizedBytes);
+                cachedPages.incrementAndGet();
+                System.out.println("Page " + file.getName() + " is taken from cache");
+                return Collections.singletonList(new PngOptimizer.OptimizerResult(
+                        path, pageBytes.length, optimizedBytes.length, 0, 0, null));
+            }
+        }
+
+        byte[] optimizedBytes;
+        if (optimizerFactory instanceof ProgressiveOptimizerFactory) {
+            optimizedBytes = optimizeProgressively((ProgressiveOptimizerFactory) optimizerFactory, file, pageBytes, cancellation);
+        } else {
+            optimizedBytes = encode(optimizerFactory.create(LOG_LEVEL), pageBytes, path, removeGamma, compressionLevel);
+        }
+        // Same as the file based optimization of Pngtastic does, the original is kept if the optimizer fails to make it smaller
+        byte[] resultBytes = optimizedBytes.length < pageBytes.length ? optimizedBytes : pageBytes;
+        cancellation.writePage(file, resultBytes, pendingPages);
+
+        if (pageCache != null) {
+            pageCache.put(cacheKey, resultBytes);
+        }
+        if (pageHashes != null) {
+            pageHashes.put(file, cacheKey, resultBytes);
+        }
+        long savedBytes = pageBytes.length - resultBytes.length;
+        System.out.println(String.format("%5.2f%% :%6dB ->%6dB (%5dB saved) - %s",
+                savedBytes * 100f / pageBytes.length, pageBytes.length, resultBytes.length, savedBytes, path));
+        return Collections.singletonList(new PngOptimizer.OptimizerResult(
+                path, pageBytes.length, resultBytes.length, 0, 0, null));
+    }
+
+    /**
+     * Repeats optimization with increasing effort, while the page time budget allows it and the steps pay off.
+     * @return the smallest result of all the steps
+     */
+    private byte[] optimizeProgressively(ProgressiveOptimizerFactory factory, File file, byte[] pageBytes,
+                                         CancellationFlag cancellation) throws Exception {
+        long pageStartTime = System.currentTimeMillis();
+        long timeBudget = factory.getPageTimeBudget();
+        float minStepGain = factory.getMinStepGain();
+
+        byte[] bestBytes = null;
+        int bestStep = 0;
+        int step = 0;
+        String stopReason = "all steps done";
+        while (true) {
+            long stepStartTime = System.currentTimeMillis();
+            byte[] stepBytes = encode(factory.create(LOG_LEVEL, step), pageBytes, file.getAbsolutePath(), removeGamma, compressionLevel);
+            long stepMillis = System.currentTimeMillis() - stepStartTime;
+
+            float stepGain = 0f;
+            if (bestBytes == null || stepBytes.length < bestBytes.length) {
+                if (bestBytes != null) {
+                    stepGain = (bestBytes.length - stepBytes.length) / (float) bestBytes.length;
+                }
+                bestBytes = stepBytes;
+                bestStep = step;
+            }
+            step++;
+
+            if (step >= factory.getStepCount()) break;
+            // The result is of no use anyway
+            cancellation.check();
+            if (step > 1 && stepGain < minStepGain) {
+                stopReason = String.format("gain of the last step %.2f%% is below %.2f%%", stepGain * 100f, minStepGain * 100f);
+                break;
+            }
+            if (timeBudget > 0L) {
+                // Step duration is assumed to grow proportionally to its cost
+                long predictedMillis = (long) (stepMillis * factory.getStepCost(step) / factory.getStepCost(step - 1));
+                long elapsedMillis = System.currentTimeMillis() - pageStartTime;
+                if (elapsedMillis + predictedMillis > timeBudget) {
+                    stopReason = String.format("next step would exceed the time budget (%.1fs predicted)", predictedMillis / 1000f);
+                    break;
+                }
+            }
+        }
+
+        System.out.println(String.format("%s: %d step(s) in %.1fs, best result at step %d, %s",
+                file.getName(), step, (System.currentTimeMillis() - pageStartTime) / 1000f, bestStep + 1, stopReason));
+        return bestBytes;
+    }
+
+    static byte[] encode(PngOptimizer pngOptimizer, byte[] pageBytes, String path,
+                         boolean removeGamma, int compressionLevel) throws IOException {
+        // Optimizer modifies the image it works on, so every run gets a fresh one
+        PngImage image = new PngImage(new ByteArrayInputStream(pageBytes), LOG_LEVEL);
+        image.setFileName(path);
+        PngImage optimizedImage = pngOptimizer.optimize(image, removeGamma, compressionLevel);
+
+        ByteArrayOutputStream optimizedOutput = new ByteArrayOutputStream(pageBytes.length);
+        optimizedImage.writeDataOutputStream(optimizedOutput);
+        return optimizedOutput.toByteArray();
+    }
+
+    /** @return average relative size change of the optimized files */
+    static float computeCompressionRate(List<PngOptimizer.OptimizerResult> results) {
+        float compressionRate = 0f;
+        for (PngOptimizer.OptimizerResult optimizerResult : results) {
+            float localCompressionRate = (optimizerResult.getOptimizedFileSize() - optimizerResult.getOriginalFileSize()) / (float) optimizerResult.getOriginalFileSize();
+            compressionRate += localCompressionRate / results.size();
+        }
+        return compressionRate;
+    }
+
+    /** Tasks that have already started stop at the nearest check of the flag, none of them writes its page after that */
+    private static void cancelAll(List<? extends Future<?>> futures, CancellationFlag cancellation) {
+        cancellation.cancel();
+        for (Future<?> future : futures) {
+            future.cancel(false);
+        }
+    }
+
+    /** Cancellation state of the page tasks of a single {@link #optimize(Array, PendingPages, PageHashIndex)} call */
+    private static class CancellationFlag {
+        private boolean cancelled;
+
+        synchronized void cancel() {
+            cancelled = true;
+        }
+
+        synchronized void check() throws InterruptedException {
+            if (cancelled) throw new InterruptedException("Page optimization was cancelled");
+        }
+
+        /** Writes the page unless the tasks were cancelled, the check and the write are atomic against {@link #cancel()} */
+        synchronized void writePage(File file, byte[] bytes, PendingPages pendingPages) throws IOException, InterruptedException {
+            check();
+            if (pendingPages != null) pendingPages.take(file);
+            Files.write(file.toPath(), bytes);
+        }
+
+        /** Puts back the page of the previous run the same way {@link #writePage(File, byte[], PendingPages)} writes it */
+        synchronized void restorePage(File file, PageHashIndex pageHashes, PendingPages pendingPages) throws IOException, InterruptedException {
+            check();
+            if (pendingPages != null) pendingPages.take(file);
+            pageHashes.restore(file);
+        }
+    }
+
+    interface OptimizerFactory {
+        PngOptimizer create(String logLevel);
+    }
+
+    /**
+     * Optimizers of increasing effort. Page is optimized by each of them in turn, while it pays off,
+     * and the smallest result is kept.
+     */
+    interface ProgressiveOptimizerFactory extends OptimizerFactory {
+        int getStepCount();
+
+        /** @param step zero based index of the step */
+        PngOptimizer create(String logLevel, int step);
+
+        /** @return relative cost of the step, used to predict its duration from the duration of the previous one */
+        float getStepCost(int step);
+
+        /** @return max time to spend on a single page in milliseconds, zero means no limit */
+        long getPageTimeBudget();
+
+        /** @return min relative size reduction of a step to try the next one, zero means no limit */
+        float getMinStepGain();
+    }
+}
@@ -1,6 +1,7 @@
 package com.crashinvaders.texturepackergui.controllers.packing.processors;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.crashinvaders.texturepackergui.services.model.PackModel;
@@ -8,12 +9,12 @@ import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
 import com.crashinvaders.texturepackergui.services.model.ProjectModel;
 import com.crashinvaders.texturepackergui.services.model.compression.PngtasticCompressionModel;
 import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessor;
-import com.googlecode.pngtastic.core.PngImage;
 import com.googlecode.pngtastic.core.PngOptimizer;
 
-public class PngtasticCompressingProcessor implements PackProcessor {
-    private static final String LOG_LEVEL = "INFO";
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+public class PngtasticCompressingProcessor implements PackProcessor {
     @Override
     public void processPackage(ProjectModel projectModel, PackModel pack, ObjectMap metadata) throws Exception {
         if (!pack.getSettings().outputFormat.equals("png")) return;
@@ -21,35 +22,43 @@ public class PngtasticCompressingProcessor implements PackProcessor {
 
         System.out.println("Pngtastic compression started");
 
-        PngtasticCompressionModel compModel = (PngtasticCompressionModel)projectModel.getPngCompression();
-        PngOptimizer pngOptimizer = new PngOptimizer(LOG_LEVEL);
+        final PngtasticCompressionModel compModel = (PngtasticCompressionModel)projectModel.getPngCompression();
+        final AtomicInteger parallelPages = new AtomicInteger();
+        PngPageOptimizer pageOptimizer = new PngPageOptimizer(new PngPageOptimizer.OptimizerFactory() {
+            @Override
+            public PngOptimizer create(String logLevel) {
+                // Filter trials of a page are spread over the threads that other pages have left unused
+                boolean parallel = PngPageOptimizer.hasIdleWorkers();
+                if (parallel) parallelPages.incrementAndGet();
+                return new FilterTrialOptimizer(logLevel, parallel);
+            }
+        }, compModel.isRemoveGamma(), compModel.getLevel(),
+                compModel.getType().key + ":" + compModel.serializeState());
 
         // Compression section
+        List<PngOptimizer.OptimizerResult> results;
         {
+            FileHandle atlasFile = Gdx.files.absolute(pack.getOutputDir()).child(pack.getCanonicalFilename());
             TextureAtlas.TextureAtlasData atlasData = new TextureAtlas.TextureAtlasData(
-                            Gdx.files.absolute(pack.getOutputDir()).child(pack.getCanonicalFilename()),
-                            Gdx.files.absolute(pack.getOutputDir()), false);
-
-            for (TextureAtlas.TextureAtlasData.Page page : atlasData.getPages()) {
-                PngImage image = new PngImage(page.textureFile.file().getAbsolutePath(), LOG_LEVEL);
-                pngOptimizer.optimize(
-                        image,
-                        page.textureFile.file().getAbsolutePath(),
-                        compModel.isRemoveGamma(),
-                        compModel.getLevel());
-            }
+                            atlasFile, Gdx.files.absolute(pack.getOutputDir()), false);
+
+            // Pages are compressed concurrently, each one with its own optimizer
+            results = pageOptimizer.optimize(atlasData.getPages(), (PendingPages) metadata.get(META_PENDING_OUTPUT),
+                    PageHashIndex.load(atlasFile.file()));
         }
 
         // Compute compression rate for metadata
-        {
-            float compressionRate = 0f;
-            for (PngOptimizer.OptimizerResult optimizerResult : pngOptimizer.getResults()) {
-                float localCompressionRate = (optimizerResult.getOptimizedFileSize() - optimizerResult.getOriginalFileSize()) / (float) optimizerResult.getOriginalFileSize();
-                compressionRate += localCompressionRate / pngOptimizer.getResults().size();
-            }
-            metadata.put(META_COMPRESSION_RATE, compressionRate);
-        }
+        metadata.put(META_COMPRESSION_RATE, PngPageOptimizer.computeCompressionRate(results));
 
+        if (parallelPages.get() > 0) {
+            System.out.println("Filter trials: " + parallelPages.get() + " of " + results.size() + " page(s) run in parallel");
+        }
+        if (pageOptimizer.getUnchangedPageCount() > 0) {
+            System.out.println("Unchanged pages: " + pageOptimizer.getUnchangedPageCount() + " of " + results.size() + " page(s) reused from the previous run");
+        }
+        if (pageOptimizer.getCachedPageCount() > 0) {
+            System.out.println("Page cache: " + pageOptimizer.getCachedPageCount() + " of " + results.size() + " page(s) reused");
+        }
         System.out.println("Pngtastic compression finished");
     }
 }
@@ -2,13 +2,18 @@ package com.crashinvaders.texturepackergui.controllers.packing.processors;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.crashinvaders.texturepackergui.services.TinifyService;
 import com.crashinvaders.texturepackergui.services.model.PackModel;
 import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
 import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessingManager;
 import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessor;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 public class TinifyCompressingProcessor implements PackProcessor {
 
     private final TinifyService tinifyService;
@@ -29,20 +34,57 @@ public class TinifyCompressingProcessor implements PackProcessor {
                         Gdx.files.absolute(pack.getOutputDir()).child(pack.getCanonicalFilename()),
                         Gdx.files.absolute(pack.getOutputDir()), false);
 
-        float compressionRateSum = 0f;
-        for (TextureAtlas.TextureAtlasData.Page page : atlasData.getPages()) {
-            long preCompressedSize = page.textureFile.length();
-
-            tinifyService.compressImageSync(page.textureFile);
+        Array<TextureAtlas.TextureAtlasData.Page> pages = atlasData.getPages();
+        long[] preCompressedSizes = new long[pages.size];
+        // Pages are uploaded concurrently, the total number of uploads is limited by the service
+        Array<Future<Boolean>> futures = new Array<>(pages.size);
+        int cachedPages = 0;
+        try {
+            for (int i = 0; i < pages.size; i++) {
+                PackProcessingManager.checkCancelled();
+                preCompressedSizes[i] = pages.get(i).textureFile.length();
+                futures.add(tinifyService.compressImageAsync(pages.get(i).textureFile));
+            }
+            for (Future<Boolean> future : futures) {
+                if (future.get()) cachedPages++;
+            }
+        } catch (ExecutionException e) {
+            cancelAll(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            throw e;
+        }
 
+        float compressionRateSum = 0f;
+        for (int i = 0; i < pages.size; i++) {
+            TextureAtlas.TextureAtlasData.Page page = pages.get(i);
+            long preCompressedSize = preCompressedSizes[i];
             long postCompressedSize = page.textureFile.length();
             float pageCompression = ((postCompressedSize-preCompressedSize) / (float)preCompressedSize);
             compressionRateSum += pageCompression;
 
             System.out.println(String.format("%s compressed for %+5.2f%%", page.textureFile.name(), pageCompression*100f));
         }
-        metadata.put(META_COMPRESSION_RATE, compressionRateSum / atlasData.getPages().size);
+        metadata.put(META_COMPRESSION_RATE, compressionRateSum / pages.size);
+
+        System.out.println(String.format("Tinify cache: %d of %d page(s) reused, %d uploaded",
+                cachedPages, pages.size, pages.size - cachedPages));
+
+        int compressionCount = tinifyService.getCompressionCount();
+        if (compressionCount >= 0) {
+            System.out.println(String.format("Tinify compressions this month: %d (%d free left)",
+                    compressionCount, tinifyService.getRemainingFreeCompressions()));
+        }
 
         System.out.println("Tinify compression finished");
     }
+
+    private static void cancelAll(Array<Future<Boolean>> futures) {
+        for (Future<Boolean> future : futures) {
+            future.cancel(true);
+        }
+    }
 }
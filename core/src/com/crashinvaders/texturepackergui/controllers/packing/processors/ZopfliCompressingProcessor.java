@@ -1,19 +1,20 @@
 package com.crashinvaders.texturepackergui.controllers.packing.processors;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.utils.IntArray;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.crashinvaders.texturepackergui.services.model.PackModel;
 import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
 import com.crashinvaders.texturepackergui.services.model.ProjectModel;
 import com.crashinvaders.texturepackergui.services.model.compression.ZopfliCompressionModel;
 import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessor;
-import com.googlecode.pngtastic.core.PngImage;
 import com.googlecode.pngtastic.core.PngOptimizer;
 
-public class ZopfliCompressingProcessor implements PackProcessor {
-    private static final String LOG_LEVEL = "INFO";
+import java.util.List;
 
+public class ZopfliCompressingProcessor implements PackProcessor {
     @Override
     public void processPackage(ProjectModel projectModel, PackModel pack, ObjectMap metadata) throws Exception {
         if (!pack.getSettings().outputFormat.equals("png")) return;
@@ -21,36 +22,94 @@ public class ZopfliCompressingProcessor implements PackProcessor {
 
         System.out.println("Zopfli compression started");
 
-        ZopfliCompressionModel compModel = (ZopfliCompressionModel)projectModel.getPngCompression();
-        PngOptimizer pngOptimizer = new PngOptimizer(LOG_LEVEL);
-        pngOptimizer.setCompressor("zopfli", compModel.getIterations());
+        final ZopfliCompressionModel compModel = (ZopfliCompressionModel)projectModel.getPngCompression();
+        PngPageOptimizer.OptimizerFactory optimizerFactory;
+        if (compModel.isAdaptive()) {
+            optimizerFactory = new AdaptiveOptimizerFactory(compModel);
+        } else {
+            optimizerFactory = new PngPageOptimizer.OptimizerFactory() {
+                @Override
+                public PngOptimizer create(String logLevel) {
+                    return createOptimizer(logLevel, compModel.getIterations());
+                }
+            };
+        }
+        PngPageOptimizer pageOptimizer = new PngPageOptimizer(optimizerFactory, false, compModel.getLevel(),
+                compModel.getType().key + ":" + compModel.serializeState());
 
         // Compression section
+        List<PngOptimizer.OptimizerResult> results;
         {
+            FileHandle atlasFile = Gdx.files.absolute(pack.getOutputDir()).child(pack.getCanonicalFilename());
             TextureAtlas.TextureAtlasData atlasData = new TextureAtlas.TextureAtlasData(
-                            Gdx.files.absolute(pack.getOutputDir()).child(pack.getCanonicalFilename()),
-                            Gdx.files.absolute(pack.getOutputDir()), false);
-
-            for (TextureAtlas.TextureAtlasData.Page page : atlasData.getPages()) {
-                PngImage image = new PngImage(page.textureFile.file().getAbsolutePath(), LOG_LEVEL);
-                pngOptimizer.optimize(
-                        image,
-                        page.textureFile.file().getAbsolutePath(),
-                        false,
-                        compModel.getLevel());
-            }
+                            atlasFile, Gdx.files.absolute(pack.getOutputDir()), false);
+
+            // Pages are compressed concurrently, each one with its own optimizer
+            results = pageOptimizer.optimize(atlasData.getPages(), (PendingPages) metadata.get(META_PENDING_OUTPUT),
+                    PageHashIndex.load(atlasFile.file()));
         }
 
         // Compute compression rate for metadata
-        {
-            float compressionRate = 0f;
-            for (PngOptimizer.OptimizerResult optimizerResult : pngOptimizer.getResults()) {
-                float localCompressionRate = (optimizerResult.getOptimizedFileSize() - optimizerResult.getOriginalFileSize()) / (float) optimizerResult.getOriginalFileSize();
-                compressionRate += localCompressionRate / pngOptimizer.getResults().size();
+        metadata.put(META_COMPRESSION_RATE, PngPageOptimizer.computeCompressionRate(results));
+
+        if (pageOptimizer.getUnchangedPageCount() > 0) {
+            System.out.println("Unchanged pages: " + pageOptimizer.getUnchangedPageCount() + " of " + results.size() + " page(s) reused from the previous run");
+        }
+        if (pageOptimizer.getCachedPageCount() > 0) {
+            System.out.println("Page cache: " + pageOptimizer.getCachedPageCount() + " of " + results.size() + " page(s) reused");
+        }
+        System.out.println("Zopfli compression finished");
+    }
+
+    static PngOptimizer createOptimizer(String logLevel, int iterations) {
+        PngOptimizer pngOptimizer = new PngOptimizer(logLevel);
+        pngOptimizer.setCompressor("zopfli", iterations);
+        return pngOptimizer;
+    }
+
+    /** Doubles the number of iterations every step, up to the number set in the model */
+    private static class AdaptiveOptimizerFactory implements PngPageOptimizer.ProgressiveOptimizerFactory {
+        private final ZopfliCompressionModel compModel;
+        private final IntArray stepIterations = new IntArray();
+
+        AdaptiveOptimizerFactory(ZopfliCompressionModel compModel) {
+            this.compModel = compModel;
+            int maxIterations = Math.max(1, compModel.getIterations());
+            for (int iterations = 1; iterations < maxIterations; iterations *= 2) {
+                stepIterations.add(iterations);
             }
-            metadata.put(META_COMPRESSION_RATE, compressionRate);
+            stepIterations.add(maxIterations);
         }
 
-        System.out.println("Zopfli compression finished");
+        @Override
+        public PngOptimizer create(String logLevel) {
+            return createOptimizer(logLevel, compModel.getIterations());
+        }
+
+        @Override
+        public int getStepCount() {
+            return stepIterations.size;
+        }
+
+        @Override
+        public PngOptimizer create(String logLevel, int step) {
+            return createOptimizer(logLevel, stepIterations.get(step));
+        }
+
+        @Override
+        public float getStepCost(int step) {
+            // Zopfli time is roughly proportional to the number of iterations
+            return stepIterations.get(step);
+        }
+
+        @Override
+        public long getPageTimeBudget() {
+            return compModel.getPageTimeLimit() * 1000L;
+        }
+
+        @Override
+        public float getMinStepGain() {
+            return compModel.getMinStepGain() / 100f;
+        }
     }
 }
@@ -24,6 +24,8 @@ public class PackPropertyChangedEvent {
         NAME,
         INPUT,
         OUTPUT,
-        FILENAME
+        FILENAME,
+        /** Any of the packer settings, they are changed in place (see {@link PackModel#notifySettingsChanged()}) */
+        SETTINGS
     }
 }
@@ -0,0 +1,323 @@
+package com.crashinvaders.texturepackergui.services;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.tools.texturepacker.TexturePacker;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.crashinvaders.texturepackergui.services.model.EtcOutputModel;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.services.model.compression.PngCompressionModel;
+import com.crashinvaders.texturepackergui.utils.PathUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Binary project file (".tpprojb"), an alternative to the text format for projects with a lot of packs.
+ * It holds the same data, so projects are converted between the formats without any loss.
+ * <p/>
+ * Layout, numbers are big-endian and strings are modified UTF-8 (see {@link java.io.DataOutput}):
+ * <pre>
+ * "TPPB", format version (int)
+ * PNG compression type and data, ETC output format and data (empty strings if not set)
+ * pack count (int), then name, body offset, body length and body CRC-32 (ints) of every pack, offsets are relative to the first body
+ * pack bodies: fixed-width settings, then output format, filename, input and output dirs (relative to the project)
+ * </pre>
+ * Only the header is parsed on load, bodies are just checked against their lengths and checksums, so a broken file fails to load.
+ * Packs are hydrated from their bodies on the first access to anything but the name.
+ * Bodies of the packs that were never hydrated are saved as they were loaded, as long as the project stays in the same dir.
+ */
+final class BinaryProjectFormat {
+    private static final byte[] MAGIC = {'T', 'P', 'P', 'B'};
+    /** Should be increased on any layout change, including the order of the enums stored by ordinal */
+    private static final int VERSION = 2;
+
+    // Settings flags
+    private static final int ALIAS = 1;
+    private static final int DEBUG = 1 << 1;
+    private static final int DUPLICATE_PADDING = 1 << 2;
+    private static final int EDGE_PADDING = 1 << 3;
+    private static final int FAST = 1 << 4;
+    private static final int IGNORE_BLANK_IMAGES = 1 << 5;
+    private static final int POT = 1 << 6;
+    private static final int ROTATION = 1 << 7;
+    private static final int STRIP_WHITESPACE_X = 1 << 8;
+    private static final int STRIP_WHITESPACE_Y = 1 << 9;
+    private static final int PREMULTIPLY_ALPHA = 1 << 10;
+    private static final int COMBINE_SUBDIRECTORIES = 1 << 11;
+    private static final int GRID = 1 << 12;
+    private static final int SQUARE = 1 << 13;
+
+    private BinaryProjectFormat() {
+    }
+
+    static void write(ProjectModel project, FileHandle root, OutputStream output) throws IOException {
+        Array<PackModel> packs = project.getPacks();
+
+        // Bodies go first, as the index needs their offsets
+        ByteArrayOutputStream bodies = new ByteArrayOutputStream(packs.size * 128);
+        DataOutputStream bodiesOut = new DataOutputStream(bodies);
+        int[] offsets = new int[packs.size];
+        int[] lengths = new int[packs.size];
+        for (int i = 0; i < packs.size; i++) {
+            offsets[i] = bodiesOut.size();
+            PackBodyHydrator storedBody = getStoredBody(packs.get(i), root);
+            if (storedBody != null) {
+                // Never hydrated pack is the same as it was loaded, it's not worth resolving its dirs
+                bodiesOut.write(storedBody.data, storedBody.offset, storedBody.length);
+            } else {
+                writePackBody(packs.get(i), root, bodiesOut);
+            }
+            lengths[i] = bodiesOut.size() - offsets[i];
+        }
+        bodiesOut.flush();
+        byte[] bodiesData = bodies.toByteArray();
+
+        DataOutputStream out = new DataOutputStream(output);
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+
+        PngCompressionModel pngCompression = project.getPngCompression();
+        out.writeUTF(pngCompression != null ? pngCompression.getType().key : "");
+        out.writeUTF(pngCompression != null ? toNonNull(pngCompression.serializeState()) : "");
+        EtcOutputModel etcOutput = project.getEtcOutput();
+        out.writeUTF(etcOutput != null ? etcOutput.getFormat().key : "");
+        out.writeUTF(etcOutput != null ? toNonNull(etcOutput.serializeState()) : "");
+
+        out.writeInt(packs.size);
+        for (int i = 0; i < packs.size; i++) {
+            out.writeUTF(packs.get(i).getName());
+            out.writeInt(offsets[i]);
+            out.writeInt(lengths[i]);
+            out.writeInt(computeChecksum(bodiesData, offsets[i], lengths[i]));
+        }
+        out.write(bodiesData);
+        out.flush();
+    }
+
+    /**
+     * @param data the whole file, it's referenced by the packs until they are hydrated
+     * @param serializer is notified if a pack fails to hydrate
+     */
+    static ProjectModel read(byte[] data, FileHandle root, ProjectSerializer serializer) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a binary project file");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported binary project version: " + version);
+
+        ProjectModel project = new ProjectModel();
+
+        // Same keys as in the text format
+        ObjectMap<String, String> values = new ObjectMap<>();
+        putIfNotEmpty(values, "pngCompressionType", in.readUTF());
+        putIfNotEmpty(values, "pngCompressionData", in.readUTF());
+        putIfNotEmpty(values, "etcOutputFormat", in.readUTF());
+        putIfNotEmpty(values, "etcOutputData", in.readUTF());
+        ProjectSerializer.deserializeProjectSection(project, values);
+
+        int packCount = in.readInt();
+        if (packCount < 0) throw new IOException("Unexpected pack count: " + packCount);
+        String[] names = new String[packCount];
+        int[] offsets = new int[packCount];
+        int[] lengths = new int[packCount];
+        int[] checksums = new int[packCount];
+        for (int i = 0; i < packCount; i++) {
+            names[i] = in.readUTF();
+            offsets[i] = in.readInt();
+            lengths[i] = in.readInt();
+            checksums[i] = in.readInt();
+        }
+
+        // Broken bodies would only show up when the packs are accessed, so they are checked right away
+        int bodiesStart = data.length - in.available();
+        for (int i = 0; i < packCount; i++) {
+            int offset = bodiesStart + offsets[i];
+            if (offsets[i] < 0 || lengths[i] < 0 || (long) offset + lengths[i] > data.length) {
+                throw new IOException("Pack data is out of the file: " + names[i]);
+            }
+            if (computeChecksum(data, offset, lengths[i]) != checksums[i]) {
+                throw new IOException("Pack data is corrupted: " + names[i]);
+            }
+
+            project.addPack(new PackModel(names[i], new PackBodyHydrator(data, offset, lengths[i], root, serializer)));
+        }
+        return project;
+    }
+
+    /**
+     * Decodes a pack that is not hydrated yet without touching the file system.
+     * @return pack with the dirs as they are stored (relative to the project dir),
+     * or null if the pack is hydrated or it was loaded from a project in another dir
+     */
+    static PackModel readStoredPack(PackModel pack, FileHandle root) {
+        PackBodyHydrator storedBody = getStoredBody(pack, root);
+        if (storedBody == null) return null;
+
+        try {
+            return storedBody.decode();
+        } catch (IOException e) {
+            // Falls back to the regular hydration, which reports the failure
+            return null;
+        }
+    }
+
+    /** @return null if the pack is hydrated or its dirs are stored relative to another dir */
+    private static PackBodyHydrator getStoredBody(PackModel pack, FileHandle root) {
+        PackModel.Hydrator hydrator = pack.getHydrator();
+        if (!(hydrator instanceof PackBodyHydrator)) return null;
+
+        PackBodyHydrator bodyHydrator = (PackBodyHydrator) hydrator;
+        boolean sameRoot = bodyHydrator.root.file().getAbsoluteFile().equals(root.file().getAbsoluteFile());
+        return sameRoot ? bodyHydrator : null;
+    }
+
+    private static void writePackBody(PackModel pack, FileHandle root, DataOutputStream out) throws IOException {
+        TexturePacker.Settings settings = pack.getSettings();
+
+        out.writeInt(settings.alphaThreshold);
+        out.writeInt(settings.paddingX);
+        out.writeInt(settings.paddingY);
+        out.writeInt(settings.minWidth);
+        out.writeInt(settings.minHeight);
+        out.writeInt(settings.maxWidth);
+        out.writeInt(settings.maxHeight);
+        out.writeFloat(settings.jpegQuality);
+        out.writeByte(settings.filterMin.ordinal());
+        out.writeByte(settings.filterMag.ordinal());
+        out.writeByte(settings.format.ordinal());
+        out.writeByte(settings.wrapX.ordinal());
+        out.writeByte(settings.wrapY.ordinal());
+
+        int flags = 0;
+        if (settings.alias) flags |= ALIAS;
+        if (settings.debug) flags |= DEBUG;
+        if (settings.duplicatePadding) flags |= DUPLICATE_PADDING;
+        if (settings.edgePadding) flags |= EDGE_PADDING;
+        if (settings.fast) flags |= FAST;
+        if (settings.ignoreBlankImages) flags |= IGNORE_BLANK_IMAGES;
+        if (settings.pot) flags |= POT;
+        if (settings.rotation) flags |= ROTATION;
+        if (settings.stripWhitespaceX) flags |= STRIP_WHITESPACE_X;
+        if (settings.stripWhitespaceY) flags |= STRIP_WHITESPACE_Y;
+        if (settings.premultiplyAlpha) flags |= PREMULTIPLY_ALPHA;
+        if (settings.combineSubdirectories) flags |= COMBINE_SUBDIRECTORIES;
+        if (settings.grid) flags |= GRID;
+        if (settings.square) flags |= SQUARE;
+        out.writeInt(flags);
+
+        out.writeUTF(settings.outputFormat);
+        out.writeUTF(pack.getFilename());
+        out.writeUTF(PathUtils.relativize(pack.getInputDir(), root.file().getPath()));
+        out.writeUTF(PathUtils.relativize(pack.getOutputDir(), root.file().getPath()));
+    }
+
+    private static PackModel readPackBody(DataInputStream in) throws IOException {
+        PackModel pack = new PackModel();
+        TexturePacker.Settings settings = pack.getSettings();
+
+        settings.alphaThreshold = in.readInt();
+        settings.paddingX = in.readInt();
+        settings.paddingY = in.readInt();
+        settings.minWidth = in.readInt();
+        settings.minHeight = in.readInt();
+        settings.maxWidth = in.readInt();
+        settings.maxHeight = in.readInt();
+        settings.jpegQuality = in.readFloat();
+        settings.filterMin = readEnum(in, Texture.TextureFilter.values());
+        settings.filterMag = readEnum(in, Texture.TextureFilter.values());
+        settings.format = readEnum(in, Pixmap.Format.values());
+        settings.wrapX = readEnum(in, Texture.TextureWrap.values());
+        settings.wrapY = readEnum(in, Texture.TextureWrap.values());
+
+        int flags = in.readInt();
+        settings.alias = (flags & ALIAS) != 0;
+        settings.debug = (flags & DEBUG) != 0;
+        settings.duplicatePadding = (flags & DUPLICATE_PADDING) != 0;
+        settings.edgePadding = (flags & EDGE_PADDING) != 0;
+        settings.fast = (flags & FAST) != 0;
+        settings.ignoreBlankImages = (flags & IGNORE_BLANK_IMAGES) != 0;
+        settings.pot = (flags & POT) != 0;
+        settings.rotation = (flags & ROTATION) != 0;
+        settings.stripWhitespaceX = (flags & STRIP_WHITESPACE_X) != 0;
+        settings.stripWhitespaceY = (flags & STRIP_WHITESPACE_Y) != 0;
+        settings.premultiplyAlpha = (flags & PREMULTIPLY_ALPHA) != 0;
+        settings.combineSubdirectories = (flags & COMBINE_SUBDIRECTORIES) != 0;
+        settings.grid = (flags & GRID) != 0;
+        settings.square = (flags & SQUARE) != 0;
+
+        settings.outputFormat = in.readUTF();
+        pack.setFilename(in.readUTF());
+        pack.setInputDir(in.readUTF());
+        pack.setOutputDir(in.readUTF());
+        return pack;
+    }
+
+    private static <T extends Enum<T>> T readEnum(DataInputStream in, T[] values) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= values.length) throw new IOException("Unexpected value " + ordinal + " of " + values[0].getDeclaringClass().getSimpleName());
+        return values[ordinal];
+    }
+
+    private static int computeChecksum(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static String toNonNull(String value) {
+        return value != null ? value : "";
+    }
+
+    private static void putIfNotEmpty(ObjectMap<String, String> values, String key, String value) {
+        if (!value.isEmpty()) values.put(key, value);
+    }
+
+    /** Decodes the pack body from the project file data and resolves its dirs. The body is also copied as is when the project is saved. */
+    private static class PackBodyHydrator implements PackModel.Hydrator {
+        private final byte[] data;
+        private final int offset;
+        private final int length;
+        private final FileHandle root;
+        private final ProjectSerializer serializer;
+
+        PackBodyHydrator(byte[] data, int offset, int length, FileHandle root, ProjectSerializer serializer) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+            this.root = root;
+            this.serializer = serializer;
+        }
+
+        @Override
+        public PackModel hydrate() throws Exception {
+            PackModel pack = decode();
+            ProjectSerializer.resolvePackPaths(Array.with(pack), root, null);
+            return pack;
+        }
+
+        /** @return pack with the dirs as they are stored */
+        PackModel decode() throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+            PackModel pack = readPackBody(in);
+            if (in.available() != 0) throw new IOException("Pack data is longer than expected");
+            return pack;
+        }
+
+        @Override
+        public void onHydrationFailed(PackModel pack, Exception e) {
+            serializer.onPackHydrationFailed(pack, e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.crashinvaders.texturepackergui.services;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.scenes.scene2d.Actor;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.scenes.scene2d.utils.ChangeListener;
@@ -18,7 +19,10 @@ import com.github.czyzby.autumn.mvc.component.ui.InterfaceService;
 import com.github.czyzby.autumn.processor.event.EventDispatcher;
 import com.github.czyzby.lml.scene2d.ui.reflected.ButtonTable;
 import com.kotcrab.vis.ui.widget.ButtonBar;
+import com.kotcrab.vis.ui.widget.VisLabel;
+import com.kotcrab.vis.ui.widget.VisProgressBar;
 import com.kotcrab.vis.ui.widget.VisTextField;
+import com.kotcrab.vis.ui.widget.VisWindow;
 
 @Component
 public class CommonDialogs {
@@ -28,6 +32,7 @@ public class CommonDialogs {
     @Inject EventDispatcher eventDispatcher;
     @Inject ModelService modelService;
     @Inject ModelUtils modelUtils;
+    @Inject ProjectSerializer projectSerializer;
 
     public void newPack() {
         final ContentDialog dialog = WidgetUtils.showContentDialog(
@@ -133,6 +138,40 @@ public class CommonDialogs {
                 }).prepare());
     }
 
+    /**
+     * Loads project on a background thread, UI is blocked with a progress dialog meanwhile.
+     * Loaded project replaces the current one only when it's complete.
+     */
+    public void openProject(FileHandle file) {
+        final VisWindow loadingDialog = (VisWindow) interfaceService.getParser().parseTemplate(Gdx.files.internal("lml/dialogProjectLoading.lml")).first();
+        final VisProgressBar progressBar = loadingDialog.findActor("progressBar");
+        progressBar.setRange(0f, 1f);
+        progressBar.setStepSize(0.01f);
+        progressBar.setValue(0f);
+        ((VisLabel) loadingDialog.findActor("lblProjectName")).setText(file.name());
+        loadingDialog.pack();
+        loadingDialog.setCenterOnAdd(true);
+        getStage().addActor(loadingDialog.fadeIn());
+
+        projectSerializer.loadProjectAsync(file, new ProjectSerializer.LoadListener() {
+            @Override
+            public void onProgress(float progress) {
+                progressBar.setValue(progress);
+            }
+
+            @Override
+            public void onLoaded(ProjectModel project) {
+                loadingDialog.fadeOut();
+                modelService.setProject(project);
+            }
+
+            @Override
+            public void onFailed() {
+                loadingDialog.fadeOut();
+            }
+        });
+    }
+
     /** @return localized string */
     private String getString(String key) {
         return localeService.getI18nBundle().get(key);
@@ -165,6 +165,24 @@ public class GlobalActions implements ActionContainer {
         packDialogController.launchPack(project, pack);
     }
 
+    @LmlAction("forcePackAll") public void forcePackAll() {
+        ProjectModel project = getProject();
+        Array<PackModel> packs = getProject().getPacks();
+        if (packs.size == 0) return;
+
+        interfaceService.showDialog(packDialogController.getClass());
+        packDialogController.launchPack(project, packs, true);
+    }
+
+    @LmlAction("forcePackSelected") public void forcePackSelected() {
+        ProjectModel project = getProject();
+        PackModel pack = getSelectedPack();
+        if (pack == null) return;
+
+        interfaceService.showDialog(packDialogController.getClass());
+        packDialogController.launchPack(project, Array.with(pack), true);
+    }
+
     //TODO move model logic code to ModelUtils
     @LmlAction("newProject") public void newProject() {
         //TODO check if there were any changes
@@ -191,17 +209,15 @@ public class GlobalActions implements ActionContainer {
         final FileChooser fileChooser = new FileChooser(dir, FileChooser.Mode.OPEN);
         fileChooser.setSelectionMode(FileChooser.SelectionMode.FILES);
 		fileChooser.setFileTypeFilter(new FileUtils.FileTypeFilterBuilder(true)
-			.rule(getString("projectFileDescription", AppConstants.PROJECT_FILE_EXT), AppConstants.PROJECT_FILE_EXT).get());
+			.rule(getString("projectFileDescription", AppConstants.PROJECT_FILE_EXT), AppConstants.PROJECT_FILE_EXT)
+			.rule(getString("projectBinaryFileDescription", AppConstants.PROJECT_BINARY_FILE_EXT), AppConstants.PROJECT_BINARY_FILE_EXT).get());
         fileChooser.setListener(new FileChooserAdapter() {
             @Override
             public void selected (Array<FileHandle> file) {
                 FileHandle chosenFile = file.first();
                 fileChooserHistory.putLastDir(FileChooserHistory.Type.PROJECT, chosenFile.parent());
 
-                ProjectModel loadedProject = projectSerializer.loadProject(chosenFile);
-                if (loadedProject != null) {
-                    modelService.setProject(loadedProject);
-                }
+                commonDialogs.openProject(chosenFile);
             }
         });
         getStage().addActor(fileChooser.fadeIn());
@@ -230,7 +246,8 @@ public class GlobalActions implements ActionContainer {
         FileChooser fileChooser = new FileChooser(dir, FileChooser.Mode.SAVE);
         fileChooser.setSelectionMode(FileChooser.SelectionMode.FILES);
 		fileChooser.setFileTypeFilter(new FileUtils.FileTypeFilterBuilder(true)
-			.rule(getString("projectFileDescription", AppConstants.PROJECT_FILE_EXT), AppConstants.PROJECT_FILE_EXT).get());
+			.rule(getString("projectFileDescription", AppConstants.PROJECT_FILE_EXT), AppConstants.PROJECT_FILE_EXT)
+			.rule(getString("projectBinaryFileDescription", AppConstants.PROJECT_BINARY_FILE_EXT), AppConstants.PROJECT_BINARY_FILE_EXT).get());
         fileChooser.setListener(new FileChooserAdapter() {
             @Override
             public void selected (Array<FileHandle> file) {
@@ -240,6 +257,7 @@ public class GlobalActions implements ActionContainer {
                 if (chosenFile.extension().length() == 0) {
                     chosenFile = Gdx.files.getFileHandle(chosenFile.path()+"."+AppConstants.PROJECT_FILE_EXT, chosenFile.type());
                 }
+                // Format is defined by the extension, so saving to the other one converts the project
 
                 getProject().setProjectFile(chosenFile);
                 projectSerializer.saveProject(project, chosenFile);
@@ -331,6 +349,9 @@ public class GlobalActions implements ActionContainer {
             case ZOPFLI:
                 interfaceService.showDialog(ZopfliCompDialogController.class);
                 break;
+            case PALETTE:
+                interfaceService.showDialog(PaletteCompDialogController.class);
+                break;
             case TINY_PNG:
                 interfaceService.showDialog(TinifyCompDialogController.class);
                 break;
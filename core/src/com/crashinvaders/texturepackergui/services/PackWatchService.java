@@ -0,0 +1,252 @@
+package com.crashinvaders.texturepackergui.services;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Preferences;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.crashinvaders.texturepackergui.AppConstants;
+import com.crashinvaders.texturepackergui.controllers.packing.processors.DefaultPackPipeline;
+import com.crashinvaders.texturepackergui.events.*;
+import com.crashinvaders.texturepackergui.services.model.ModelService;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.utils.DirectoryWatcher;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackDurationHistory;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackFiles;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessingManager;
+import com.github.czyzby.autumn.annotation.Component;
+import com.github.czyzby.autumn.annotation.Destroy;
+import com.github.czyzby.autumn.annotation.Initiate;
+import com.github.czyzby.autumn.annotation.Inject;
+import com.github.czyzby.autumn.annotation.OnEvent;
+import com.github.czyzby.autumn.mvc.component.i18n.LocaleService;
+import com.github.czyzby.autumn.processor.event.EventDispatcher;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Watch mode. Keeps track of the project packs' input directories and repacks affected packs in background
+ * when input files change. Processing results are delivered through {@link PackAtlasUpdatedEvent}.
+ */
+@Component
+public class PackWatchService {
+    private static final String TAG = PackWatchService.class.getSimpleName();
+    private static final String PREF_KEY_ENABLED = "watch_mode";
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    @Inject EventDispatcher eventDispatcher;
+    @Inject LocaleService localeService;
+    @Inject ModelService modelService;
+    @Inject TinifyService tinifyService;
+    @Inject WorkerPoolService workerPoolService;
+
+    private Preferences prefs;
+    /** Null when watch mode is disabled */
+    private DirectoryWatcher watcher;
+
+    /**
+     * Packs that are waiting for the current watch mode processing run to finish.
+     * Runs of the pack dialog are not tracked here, {@link PackProcessingManager} queues the runs itself.
+     */
+    private final ObjectSet<PackModel> pendingPacks = new ObjectSet<>();
+    private boolean processing;
+
+    @Initiate void initialize() {
+        prefs = Gdx.app.getPreferences(AppConstants.PREF_NAME_COMMON);
+
+        if (prefs.getBoolean(PREF_KEY_ENABLED, false)) {
+            startWatching();
+        }
+    }
+
+    @Destroy void dispose() {
+        stopWatching();
+    }
+
+    public boolean isEnabled() {
+        return watcher != null;
+    }
+
+    public void setEnabled(boolean enabled) {
+        if (enabled == isEnabled()) return;
+
+        if (enabled) {
+            startWatching();
+        } else {
+            stopWatching();
+        }
+
+        prefs.putBoolean(PREF_KEY_ENABLED, enabled);
+        prefs.flush();
+    }
+
+    @OnEvent(ProjectInitializedEvent.class) void onEvent(ProjectInitializedEvent event) {
+        pendingPacks.clear();
+        updateWatchedDirs();
+    }
+
+    @OnEvent(ProjectPropertyChangedEvent.class) void onEvent(ProjectPropertyChangedEvent event) {
+        if (event.getProperty() == ProjectPropertyChangedEvent.Property.PACKS) {
+            updateWatchedDirs();
+        }
+    }
+
+    @OnEvent(PackPropertyChangedEvent.class) void onEvent(PackPropertyChangedEvent event) {
+        switch (event.getProperty()) {
+            case INPUT:
+            case OUTPUT:
+                updateWatchedDirs();
+                break;
+        }
+    }
+
+    private void startWatching() {
+        watcher = new DirectoryWatcher(new DirectoryWatcher.Listener() {
+            @Override
+            public void onFilesChanged(final Set<Path> changedPaths) {
+                Gdx.app.postRunnable(new Runnable() {
+                    @Override
+                    public void run() {
+                        onInputFilesChanged(changedPaths);
+                    }
+                });
+            }
+        }, DEBOUNCE_MILLIS);
+
+        try {
+            watcher.start();
+        } catch (IOException e) {
+            Gdx.app.error(TAG, "Can't start watching input directories", e);
+            watcher = null;
+            return;
+        }
+        updateWatchedDirs();
+    }
+
+    private void stopWatching() {
+        if (watcher == null) return;
+
+        watcher.stop();
+        watcher = null;
+        pendingPacks.clear();
+    }
+
+    private void updateWatchedDirs() {
+        if (watcher == null) return;
+
+        List<Path> inputDirs = new ArrayList<>();
+        for (PackModel pack : getProject().getPacks()) {
+            Path inputDir = PackFiles.toPath(pack.getInputDir());
+            if (inputDir != null) {
+                inputDirs.add(inputDir);
+            }
+        }
+        // TexturePacker always descends into subdirectories (combineSubdirectories only affects page grouping),
+        // so input directories are watched recursively regardless of the pack settings
+        watcher.setRoots(inputDirs);
+    }
+
+    private void onInputFilesChanged(Set<Path> changedPaths) {
+        if (watcher == null) return;
+
+        for (PackModel pack : getProject().getPacks()) {
+            if (isAffected(pack, changedPaths)) {
+                pendingPacks.add(pack);
+            }
+        }
+        launchPendingPacks();
+    }
+
+    private void launchPendingPacks() {
+        if (processing || pendingPacks.size == 0) return;
+
+        ProjectModel project = getProject();
+        Array<PackModel> packs = new Array<>();
+        for (PackModel pack : project.getPacks()) {
+            if (pendingPacks.contains(pack)) {
+                packs.add(pack);
+            }
+        }
+        pendingPacks.clear();
+        if (packs.size == 0) return;
+
+        processing = true;
+        PackProcessingManager packProcessingManager = new PackProcessingManager(
+                new DefaultPackPipeline(project, tinifyService,
+                        workerPoolService.getExecutor(),
+                        workerPoolService.getCompressionExecutor(),
+                        workerPoolService.getUploadExecutor()),
+                new PackProcessingManager.SyncListener(new WatchProcessingListener()));
+        for (PackModel pack : packs) {
+            packProcessingManager.postPack(pack);
+        }
+        packProcessingManager.setTimeBudget(workerPoolService.getPackTimeBudget() * 1000L);
+        packProcessingManager.setDurationHistory(PackDurationHistory.load(project));
+        packProcessingManager.execute(project);
+    }
+
+    private static boolean isAffected(PackModel pack, Set<Path> changedPaths) {
+        Path inputDir = PackFiles.toPath(pack.getInputDir());
+        if (inputDir == null) return false;
+        Path outputDir = PackFiles.toPath(pack.getOutputDir());
+
+        for (Path path : changedPaths) {
+            if (!path.startsWith(inputDir)) continue;
+            // Output files may be located inside the input directory, pack's own output shouldn't trigger repacking
+            if (outputDir != null && PackFiles.isOutputFile(pack, inputDir, outputDir, path)) continue;
+
+            return true;
+        }
+        return false;
+    }
+
+    private ProjectModel getProject() {
+        return modelService.getProject();
+    }
+
+    private class WatchProcessingListener implements PackProcessingManager.Listener {
+        @Override
+        public void onProcessingStarted() {
+        }
+
+        @Override
+        public void onProcessingFinished() {
+            processing = false;
+            // Files may have been changed while we were busy
+            if (watcher != null) {
+                launchPendingPacks();
+            }
+        }
+
+        @Override
+        public void onBegin(PackModel pack) {
+        }
+
+        @Override
+        public void onError(PackModel pack, String log, ObjectMap metadataMap, Exception e) {
+            Gdx.app.error(TAG, "Pack \"" + pack.getName() + "\" failed to repack\n" + log);
+            eventDispatcher.postEvent(new ToastNotificationEvent()
+                    .message(localeService.getI18nBundle().format("toastWatchRepackError", pack.getName()))
+                    .duration(ToastNotificationEvent.DURATION_SHORT));
+        }
+
+        @Override
+        public void onSuccess(PackModel pack, String log, ObjectMap metadataMap) {
+            Gdx.app.log(TAG, "Pack \"" + pack.getName() + "\" has been repacked");
+            eventDispatcher.postEvent(new PackAtlasUpdatedEvent(pack));
+        }
+
+        @Override
+        public void onUpToDate(PackModel pack, String log) {
+        }
+
+        @Override
+        public void onCancelled(PackModel pack, String log) {
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.crashinvaders.texturepackergui.services;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.badlogic.gdx.utils.Timer;
+import com.crashinvaders.texturepackergui.events.*;
+import com.crashinvaders.texturepackergui.services.model.ModelService;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.github.czyzby.autumn.annotation.Component;
+import com.github.czyzby.autumn.annotation.Destroy;
+import com.github.czyzby.autumn.annotation.Initiate;
+import com.github.czyzby.autumn.annotation.Inject;
+import com.github.czyzby.autumn.annotation.OnEvent;
+import com.github.czyzby.autumn.mvc.component.i18n.LocaleService;
+import com.github.czyzby.autumn.mvc.component.ui.InterfaceService;
+import com.github.czyzby.autumn.processor.event.EventDispatcher;
+import com.kotcrab.vis.ui.util.dialog.Dialogs;
+import com.kotcrab.vis.ui.util.dialog.OptionDialogAdapter;
+
+import java.io.IOException;
+
+/**
+ * Periodically writes unsaved changes of the current project to its journal (see {@link ProjectJournal}).
+ * Packs are marked as dirty through {@link PackPropertyChangedEvent} and only those go to the journal,
+ * so autosave is equally cheap for any project size. Explicit save writes everything to the project file
+ * and drops the journal. Journal that is left after a crash is offered to be restored when the project is loaded.
+ * <p/>
+ * Projects that were never saved have no place for the journal and are not autosaved.
+ */
+@Component
+public class ProjectAutosaveService {
+    private static final String TAG = ProjectAutosaveService.class.getSimpleName();
+    /** Seconds */
+    private static final float AUTOSAVE_INTERVAL = 30f;
+
+    @Inject EventDispatcher eventDispatcher;
+    @Inject LocaleService localeService;
+    @Inject InterfaceService interfaceService;
+    @Inject ModelService modelService;
+    @Inject ProjectSerializer projectSerializer;
+
+    private final ObjectSet<PackModel> dirtyPacks = new ObjectSet<>();
+    /** Pack list or project settings have changed, the whole project has to be journaled */
+    private boolean projectDirty;
+    /** Journal of the current project, null if the project has no file yet */
+    private ProjectJournal journal;
+    private Timer.Task autosaveTask;
+
+    @Initiate void initialize() {
+        // Timer tasks are run on the GL thread, the same as all the model changes
+        autosaveTask = Timer.schedule(new Timer.Task() {
+            @Override
+            public void run() {
+                autosave();
+            }
+        }, AUTOSAVE_INTERVAL, AUTOSAVE_INTERVAL);
+    }
+
+    @Destroy void dispose() {
+        if (autosaveTask != null) autosaveTask.cancel();
+    }
+
+    @OnEvent(ProjectInitializedEvent.class) void onEvent(ProjectInitializedEvent event) {
+        FileHandle projectFile = event.getProject().getProjectFile();
+        journal = projectFile != null ? new ProjectJournal(projectSerializer, projectFile) : null;
+        dirtyPacks.clear();
+        projectDirty = false;
+    }
+
+    @OnEvent(PackPropertyChangedEvent.class) void onEvent(PackPropertyChangedEvent event) {
+        dirtyPacks.add(event.getPack());
+    }
+
+    @OnEvent(ProjectPropertyChangedEvent.class) void onEvent(ProjectPropertyChangedEvent event) {
+        switch (event.getProperty()) {
+            case PACKS:
+            case PNG_COMPRESSION:
+            case ETC_OUTPUT:
+                projectDirty = true;
+                break;
+        }
+    }
+
+    @OnEvent(PackListOrderChangedEvent.class) void onEvent(PackListOrderChangedEvent event) {
+        projectDirty = true;
+    }
+
+    @OnEvent(ProjectSerializerEvent.class) void onEvent(ProjectSerializerEvent event) {
+        switch (event.getAction()) {
+            case SAVED:
+                // Project file has everything now, that's where the journal gets compacted to
+                if (journal != null) journal.delete();
+                journal = new ProjectJournal(projectSerializer, event.getFile());
+                journal.delete();
+                dirtyPacks.clear();
+                projectDirty = false;
+                break;
+            case LOADED:
+                final ProjectJournal loadedJournal = new ProjectJournal(projectSerializer, event.getFile());
+                if (!loadedJournal.hasChanges()) break;
+
+                // Loaded project is set to the model right after the event
+                final ProjectModel loadedProject = event.getProject();
+                Gdx.app.postRunnable(new Runnable() {
+                    @Override
+                    public void run() {
+                        offerRestore(loadedProject, loadedJournal);
+                    }
+                });
+                break;
+        }
+    }
+
+    private void offerRestore(final ProjectModel loadedProject, final ProjectJournal loadedJournal) {
+        if (modelService.getProject() != loadedProject) return;
+
+        Dialogs.showOptionDialog(interfaceService.getCurrentController().getStage(),
+                getString("dialogTitleRestoreProject"),
+                getString("dialogTextRestoreProject", loadedJournal.getProjectFile().name()),
+                Dialogs.OptionDialogType.YES_NO, new OptionDialogAdapter() {
+                    @Override
+                    public void yes() {
+                        if (modelService.getProject() != loadedProject) return;
+                        try {
+                            // Journal is kept, the project file still lacks its changes
+                            modelService.setProject(loadedJournal.restore(loadedProject));
+                        } catch (IOException e) {
+                            Gdx.app.error(TAG, "Can't restore project journal", e);
+                            eventDispatcher.postEvent(new ToastNotificationEvent().message(
+                                    getString("toastProjectRestoreError", loadedJournal.getProjectFile().path())));
+                        }
+                    }
+
+                    @Override
+                    public void no() {
+                        loadedJournal.delete();
+                    }
+                });
+    }
+
+    private void autosave() {
+        if (journal == null || (!projectDirty && dirtyPacks.size == 0)) return;
+
+        ProjectModel project = modelService.getProject();
+        try {
+            if (projectDirty) {
+                journal.writeProject(project);
+            } else {
+                journal.appendPacks(project, dirtyPacks);
+            }
+            dirtyPacks.clear();
+            projectDirty = false;
+        } catch (IOException e) {
+            Gdx.app.error(TAG, "Can't write project journal", e);
+        }
+    }
+
+    private String getString(String key, Object... args) {
+        return localeService.getI18nBundle().format(key, args);
+    }
+}
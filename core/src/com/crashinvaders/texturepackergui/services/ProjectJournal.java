@@ -0,0 +1,169 @@
+package com.crashinvaders.texturepackergui.services;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+
+/**
+ * Changes of a project that are not saved to the project file yet, kept next to it in ".&lt;project file name&gt;.tpjournal".
+ * <p/>
+ * Journal is a sequence of records, each of them is closed with a line of its own,
+ * so a record that was cut off by a crash is ignored.
+ * Records are in the text project format whatever the project file format is.
+ * Pack record holds a single pack and replaces the pack at the same index.
+ * Project record holds the whole project, it's written when the pack list or project settings change
+ * and replaces everything that was in the journal before.
+ */
+class ProjectJournal {
+    static final String FILE_EXTENSION = "tpjournal";
+    private static final String PACK_RECORD = "@pack";
+    private static final String PROJECT_RECORD = "@project";
+    private static final String RECORD_END = "@end";
+
+    private final ProjectSerializer serializer;
+    private final FileHandle projectFile;
+    private final File file;
+
+    ProjectJournal(ProjectSerializer serializer, FileHandle projectFile) {
+        this.serializer = serializer;
+        this.projectFile = projectFile;
+        File absoluteFile = projectFile.file().getAbsoluteFile();
+        // Full name, as text and binary files of the same project may live side by side
+        this.file = new File(absoluteFile.getParentFile(), "." + projectFile.name() + "." + FILE_EXTENSION);
+    }
+
+    FileHandle getProjectFile() {
+        return projectFile;
+    }
+
+    /** @return true if the journal has changes that were made after the project file was saved */
+    boolean hasChanges() {
+        return file.isFile() && file.length() > 0 && file.lastModified() >= projectFile.lastModified();
+    }
+
+    /** Appends the packs at their current positions, cost of that doesn't depend on the size of the project */
+    void appendPacks(ProjectModel project, ObjectSet<PackModel> packs) throws IOException {
+        FileHandle root = projectFile.parent();
+        int packCount = project.getPacks().size;
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+        try {
+            for (PackModel pack : packs) {
+                int index = project.getPacks().indexOf(pack, true);
+                // Removed packs don't matter, pack list change is journaled as the whole project anyway
+                if (index < 0) continue;
+
+                writer.write(PACK_RECORD + " " + index + " " + packCount + "\n");
+                writer.write(serializer.serializePack(pack, root));
+                writer.write("\n" + RECORD_END + "\n");
+            }
+            writer.close();
+        } finally {
+            StreamUtils.closeQuietly(writer);
+        }
+    }
+
+    /** Replaces the journal with a single record of the whole project */
+    void writeProject(ProjectModel project) throws IOException {
+        File tmpFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8"));
+            try {
+                writer.write(PROJECT_RECORD + "\n");
+                serializer.serializeProject(project, projectFile.parent(), writer);
+                writer.write("\n" + RECORD_END + "\n");
+                writer.close();
+            } finally {
+                StreamUtils.closeQuietly(writer);
+            }
+            ProjectSerializer.replaceFile(tmpFile, file);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * @param project the project as it's saved in the project file, it's not modified
+     * @return new project with the journal changes applied
+     */
+    ProjectModel restore(ProjectModel project) throws IOException {
+        FileHandle root = projectFile.parent();
+
+        ProjectModel result = new ProjectModel();
+        for (PackModel pack : project.getPacks()) {
+            result.getPacks().add(new PackModel(pack));
+        }
+        result.setPngCompression(project.getPngCompression());
+        result.setEtcOutput(project.getEtcOutput());
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.equals(PROJECT_RECORD)) {
+                    StringBuilder sb = new StringBuilder();
+                    if (!readRecord(reader, sb, null)) break;
+                    result = serializer.readProject(new BufferedReader(new StringReader(sb.toString())), root, null);
+                } else if (line.startsWith(PACK_RECORD + " ")) {
+                    String[] header = line.split(" ");
+                    int index = Integer.parseInt(header[1]);
+                    int packCount = Integer.parseInt(header[2]);
+                    ObjectMap<String, String> values = new ObjectMap<>();
+                    if (!readRecord(reader, null, values)) break;
+                    // Pack list can only differ if the journal is broken, such records are useless
+                    if (packCount != result.getPacks().size || index >= packCount) continue;
+                    result.getPacks().set(index, serializer.readPack(values, root));
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed project journal " + file, e);
+        } finally {
+            StreamUtils.closeQuietly(reader);
+        }
+
+        result.setProjectFile(projectFile);
+        return result;
+    }
+
+    /**
+     * Reads the record body either as text or as key-value pairs (the first occurrence of a key wins)
+     * @return false if the record is not complete
+     */
+    private static boolean readRecord(BufferedReader reader, StringBuilder text, ObjectMap<String, String> values) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.equals(RECORD_END)) return true;
+
+            if (text != null) {
+                text.append(line).append("\n");
+            } else {
+                line = line.trim();
+                int separatorIndex = line.indexOf('=');
+                if (separatorIndex < 0) continue;
+                String key = line.substring(0, separatorIndex);
+                if (!values.containsKey(key)) {
+                    values.put(key, line.substring(separatorIndex + 1));
+                }
+            }
+        }
+        return false;
+    }
+
+    void delete() {
+        file.delete();
+    }
+}
@@ -6,11 +6,17 @@ import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.tools.texturepacker.TexturePacker;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.crashinvaders.texturepackergui.AppConstants;
 import com.crashinvaders.texturepackergui.events.ProjectSerializerEvent;
 import com.crashinvaders.texturepackergui.events.ToastNotificationEvent;
+import com.crashinvaders.texturepackergui.services.model.EtcFormat;
+import com.crashinvaders.texturepackergui.services.model.EtcOutputModel;
 import com.crashinvaders.texturepackergui.services.model.PackModel;
 import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
 import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.services.model.compression.PaletteCompressionModel;
 import com.crashinvaders.texturepackergui.services.model.compression.PngCompressionModel;
 import com.crashinvaders.texturepackergui.services.model.compression.PngtasticCompressionModel;
 import com.crashinvaders.texturepackergui.services.model.compression.TinyPngCompressionModel;
@@ -21,26 +27,45 @@ import com.github.czyzby.autumn.annotation.Inject;
 import com.github.czyzby.autumn.mvc.component.i18n.LocaleService;
 import com.github.czyzby.autumn.processor.event.EventDispatcher;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-
-import static com.crashinvaders.texturepackergui.utils.CommonUtils.splitAndTrim;
-import static com.crashinvaders.texturepackergui.utils.FileUtils.loadTextFromFile;
-import static com.crashinvaders.texturepackergui.utils.FileUtils.saveTextToFile;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 @Component
 public class ProjectSerializer {
     private static final String TAG = ProjectSerializer.class.getSimpleName();
     private static final String PACK_DIVIDER = "---";
     private static final String SECTION_DIVIDER = "-PROJ-";
+    /** Path resolution is mostly waiting for the file system (e.g. a network share), not CPU work */
+    private static final int PATH_RESOLVER_THREADS = 8;
+    /** Part of the loading progress that is taken by reading of the file, the rest is path resolution */
+    private static final float READ_PROGRESS_SHARE = 0.5f;
 
     @Inject EventDispatcher eventDispatcher;
     @Inject LocaleService localeService;
 
     public void saveProject(ProjectModel project, FileHandle file) {
-        String serialized = serializeProject(project, file.parent());
         try {
-            saveTextToFile(serialized, file);
+            writeProject(project, file);
         } catch (IOException e) {
             eventDispatcher.postEvent(new ToastNotificationEvent().message(localeService.getI18nBundle()
                     .format("toastProjectSaveError", project.getProjectFile().path())));
@@ -51,37 +76,213 @@ public class ProjectSerializer {
     }
 
     public ProjectModel loadProject(FileHandle file) {
-        String serialized;
+        ProjectModel project;
         try {
-            serialized = loadTextFromFile(file);
-        } catch (IOException e) {
+            project = readProject(file);
+        } catch (IOException | RuntimeException e) {
+            Gdx.app.error(TAG, "Error loading project " + file.path(), e);
             eventDispatcher.postEvent(new ToastNotificationEvent().message(localeService.getI18nBundle()
                     .format("toastProjectLoadError", file.path())));
             return null;
         }
 
-        ProjectModel project = deserializeProject(serialized, file.parent());
+        eventDispatcher.postEvent(new ProjectSerializerEvent(ProjectSerializerEvent.Action.LOADED, project, file));
+        return project;
+    }
+
+    /**
+     * Loads project on a background thread, the same way {@link #loadProject(FileHandle)} does.
+     * Listener is notified on the GL thread, {@link LoadListener#onLoaded(ProjectModel)} is called only
+     * with a completely loaded project.
+     */
+    public void loadProjectAsync(final FileHandle file, final LoadListener listener) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ProjectModel project = null;
+                try {
+                    project = readProject(file, new ThrottledProgressListener(listener));
+                } catch (Throwable e) {
+                    // Malformed values throw runtime exceptions, the listener has to be notified anyway
+                    Gdx.app.error(TAG, "Error loading project " + file.path(), e);
+                }
+
+                final ProjectModel result = project;
+                Gdx.app.postRunnable(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (result == null) {
+                            eventDispatcher.postEvent(new ToastNotificationEvent().message(localeService.getI18nBundle()
+                                    .format("toastProjectLoadError", file.path())));
+                            listener.onFailed();
+                            return;
+                        }
+                        eventDispatcher.postEvent(new ProjectSerializerEvent(ProjectSerializerEvent.Action.LOADED, result, file));
+                        listener.onLoaded(result);
+                    }
+                });
+            }
+        }, "ProjectLoader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Pack of a binary project that has failed to hydrate is reset to the defaults, the user is notified on the GL thread.
+     * May be called from any thread.
+     */
+    void onPackHydrationFailed(final PackModel pack, Exception e) {
+        if (Gdx.app == null) {
+            System.err.println("Can't read data of pack \"" + pack.getName() + "\", the pack is reset: " + e);
+            return;
+        }
+        Gdx.app.error(TAG, "Can't read data of pack \"" + pack.getName() + "\", the pack is reset", e);
+        // Serializer is not injected outside of application context (e.g. in batch mode)
+        if (eventDispatcher == null) return;
+
+        Gdx.app.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                eventDispatcher.postEvent(new ToastNotificationEvent().message(localeService.getI18nBundle()
+                        .format("toastPackDataError", pack.getName())));
+            }
+        });
+    }
+
+    /** Reads project without notifying anyone. Safe to use outside of application context (e.g. in batch mode). */
+    public ProjectModel readProject(FileHandle file) throws IOException {
+        return readProject(file, null);
+    }
+
+    /**
+     * Same as {@link #readProject(FileHandle)}, but reports the progress on the calling thread.
+     * @param listener may be null
+     */
+    public ProjectModel readProject(FileHandle file, ProgressListener listener) throws IOException {
+        ProjectModel project;
+        File projectFile = file.file();
+        InputStream input = new ProgressInputStream(new FileInputStream(projectFile), projectFile.length(), listener);
+        if (isBinary(file)) {
+            try {
+                project = BinaryProjectFormat.read(StreamUtils.copyStreamToByteArray(input, (int) projectFile.length()), file.parent(), this);
+            } finally {
+                StreamUtils.closeQuietly(input);
+            }
+            // Packs are resolved when they are hydrated
+            if (listener != null) listener.onProgress(1f);
+        } else {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+            try {
+                project = readProject(reader, file.parent(), listener);
+            } finally {
+                StreamUtils.closeQuietly(reader);
+            }
+        }
         project.setProjectFile(file);
+        return project;
+    }
 
-        eventDispatcher.postEvent(new ProjectSerializerEvent(ProjectSerializerEvent.Action.LOADED, project, file));
+    /** @return true if the file is in the binary format, it's determined by the file extension */
+    public static boolean isBinary(FileHandle file) {
+        return AppConstants.PROJECT_BINARY_FILE_EXT.equalsIgnoreCase(file.extension());
+    }
+
+    /** Reads project in the project file format from any source, relative pack dirs are resolved against the root */
+    ProjectModel readProject(BufferedReader reader, FileHandle root, ProgressListener listener) throws IOException {
+        ProjectModel project = deserializeProject(reader);
+        resolvePackPaths(project.getPacks(), root, listener);
         return project;
     }
 
-    private String serializeProject(ProjectModel projectModel, FileHandle root) {
+    /** @param values pack section of the project file as key-value pairs */
+    PackModel readPack(ObjectMap<String, String> values, FileHandle root) throws IOException {
+        PackModel pack = deserializePack(values);
+        resolvePackPaths(Array.with(pack), root, null);
+        return pack;
+    }
+
+    /**
+     * Writes project without notifying anyone. Safe to use outside of application context.
+     * Format is chosen by the file extension (see {@link #isBinary(FileHandle)}), so a project can be converted
+     * from one format to the other just by writing it to a different file.
+     * <p/>
+     * Project is streamed to a temporary file next to the target, which then replaces the target in a single move,
+     * so a failure in the middle never leaves a partially written project. The target is not touched at all
+     * if its content is the same.
+     * @return false if the file already had the same content
+     */
+    public boolean writeProject(ProjectModel project, FileHandle file) throws IOException {
+        File targetFile = file.file().getAbsoluteFile();
+        File tmpFile = File.createTempFile("." + targetFile.getName(), ".tmp", targetFile.getParentFile());
+        try {
+            OutputStream output = new BufferedOutputStream(new FileOutputStream(tmpFile));
+            try {
+                if (isBinary(file)) {
+                    BinaryProjectFormat.write(project, file.parent(), output);
+                } else {
+                    Writer writer = new OutputStreamWriter(output, "UTF-8");
+                    serializeProject(project, file.parent(), writer);
+                    writer.flush();
+                }
+                // Failed flush must not be ignored, otherwise truncated project would replace the target
+                output.close();
+            } finally {
+                StreamUtils.closeQuietly(output);
+            }
+
+            if (hasSameContent(tmpFile, targetFile)) return false;
+
+            replaceFile(tmpFile, targetFile);
+            return true;
+        } finally {
+            // Does nothing if the file has been moved
+            tmpFile.delete();
+        }
+    }
+
+    /** Moves the file over the target in a single step where the file system supports it */
+    static void replaceFile(File file, File targetFile) throws IOException {
+        try {
+            Files.move(file.toPath(), targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(file.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static boolean hasSameContent(File file0, File file1) throws IOException {
+        if (!file1.isFile() || file0.length() != file1.length()) return false;
+
+        InputStream input0 = new BufferedInputStream(new FileInputStream(file0));
+        InputStream input1 = null;
+        try {
+            input1 = new BufferedInputStream(new FileInputStream(file1));
+            int b;
+            do {
+                b = input0.read();
+                if (b != input1.read()) return false;
+            } while (b != -1);
+            return true;
+        } finally {
+            StreamUtils.closeQuietly(input0);
+            StreamUtils.closeQuietly(input1);
+        }
+    }
+
+    /** Packs are serialized one by one, so only a single pack is held in memory */
+    void serializeProject(ProjectModel projectModel, FileHandle root, Writer writer) throws IOException {
         Array<PackModel> packs = projectModel.getPacks();
-        StringBuilder sb = new StringBuilder();
 
         for (int i = 0; i < packs.size; i++) {
-            sb.append(serializePack(packs.get(i), root));
+            writer.write(serializePack(packs.get(i), root));
 
             if (i < packs.size - 1) {
-                sb.append("\n\n---\n\n");
+                writer.write("\n\n---\n\n");
             }
         }
 
+        StringBuilder sb = new StringBuilder();
         serializeProjectSection(projectModel, sb);
-
-        return sb.toString();
+        writer.write(sb.toString());
     }
 
     private void serializeProjectSection(ProjectModel projectModel, StringBuilder sb) {
@@ -92,17 +293,34 @@ public class ProjectSerializer {
             sb.append("pngCompressionType=").append(pngCompression.getType().key).append("\n");
             sb.append("pngCompressionData=").append(pngCompression.serializeState()).append("\n");
         }
+
+        EtcOutputModel etcOutput = projectModel.getEtcOutput();
+        if (etcOutput != null) {
+            sb.append("etcOutputFormat=").append(etcOutput.getFormat().key).append("\n");
+            sb.append("etcOutputData=").append(etcOutput.serializeState()).append("\n");
+        }
+    }
+
+    String serializePack(PackModel pack, FileHandle root) {
+        // Pack of a binary project that was never hydrated already has its dirs relative to the project, it's not worth resolving them
+        PackModel storedPack = BinaryProjectFormat.readStoredPack(pack, root);
+        if (storedPack != null) {
+            return serializePack(pack.getName(), storedPack, storedPack.getInputDir(), storedPack.getOutputDir());
+        }
+        return serializePack(pack.getName(), pack,
+                PathUtils.relativize(pack.getInputDir(), root.file().getPath()),
+                PathUtils.relativize(pack.getOutputDir(), root.file().getPath()));
     }
 
-    private String serializePack(PackModel pack, FileHandle root) {
+    private String serializePack(String name, PackModel pack, String input, String output) {
         StringBuilder sb = new StringBuilder();
 
         String filename = pack.getFilename();
 
-        sb.append("name=").append(pack.getName()).append("\n");
+        sb.append("name=").append(name).append("\n");
         sb.append("filename=").append(filename).append("\n");
-        sb.append("input=").append(PathUtils.relativize(pack.getInputDir(), root.file().getPath())).append("\n");
-        sb.append("output=").append(PathUtils.relativize(pack.getOutputDir(), root.file().getPath())).append("\n");
+        sb.append("input=").append(input).append("\n");
+        sb.append("output=").append(output).append("\n");
 
         sb.append("\n");
 
@@ -139,33 +357,52 @@ public class ProjectSerializer {
         return sb.toString();
     }
 
-    private ProjectModel deserializeProject(String serializedProject, FileHandle root) {
+    /**
+     * Single pass over the lines, values of every section are collected to a map and the section is parsed once it's over.
+     * Dividers are only recognized on their own lines, the same way they are written.
+     */
+    private ProjectModel deserializeProject(BufferedReader reader) throws IOException {
         ProjectModel project = new ProjectModel();
 
-        String[] serializedSections = serializedProject.split(SECTION_DIVIDER);
-        if (serializedSections.length == 0) return project;
-
-        // Project section is always in the end
-        if (serializedSections.length > 1) {
-            String projectSection = serializedSections[1];
-            deserializeProjectSection(project, projectSection);
+        ObjectMap<String, String> values = new ObjectMap<>();
+        boolean sectionEmpty = true;
+        boolean projectSection = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            if (!projectSection && (line.equals(PACK_DIVIDER) || line.equals(SECTION_DIVIDER))) {
+                if (!sectionEmpty) {
+                    project.addPack(deserializePack(values));
+                }
+                values.clear();
+                sectionEmpty = true;
+                // Project section is always in the end
+                projectSection = line.equals(SECTION_DIVIDER);
+                continue;
+            }
+            sectionEmpty = false;
+
+            int separatorIndex = line.indexOf('=');
+            if (separatorIndex < 0) continue;
+            String key = line.substring(0, separatorIndex);
+            // The first occurrence of a key wins
+            if (!values.containsKey(key)) {
+                values.put(key, line.substring(separatorIndex + 1));
+            }
         }
 
-        String[] serializedPacks = serializedSections[0].split(PACK_DIVIDER);
-
-        for (String serializedPack : serializedPacks) {
-            if (serializedPack.trim().length() == 0) continue;
-
-            PackModel pack = deserializePack(serializedPack, root);
-            project.addPack(pack);
+        if (projectSection) {
+            deserializeProjectSection(project, values);
+        } else if (!sectionEmpty) {
+            project.addPack(deserializePack(values));
         }
         return project;
     }
 
-    private void deserializeProjectSection(ProjectModel project, String projectSection) {
-        Array<String> lines = splitAndTrim(projectSection);
-
-        PngCompressionType pngCompType = PngCompressionType.findByKey(find(lines, "pngCompressionType=", null));
+    static void deserializeProjectSection(ProjectModel project, ObjectMap<String, String> values) {
+        PngCompressionType pngCompType = PngCompressionType.findByKey(find(values, "pngCompressionType", null));
         if (pngCompType != null) {
             PngCompressionModel pngCompModel = null;
             switch (pngCompType) {
@@ -175,6 +412,9 @@ public class ProjectSerializer {
                 case ZOPFLI:
                     pngCompModel = new ZopfliCompressionModel();
                     break;
+                case PALETTE:
+                    pngCompModel = new PaletteCompressionModel();
+                    break;
                 case TINY_PNG:
                     pngCompModel = new TinyPngCompressionModel();
                     break;
@@ -182,94 +422,239 @@ public class ProjectSerializer {
                     Gdx.app.error(TAG, "Unexpected PngCompressionType: " + pngCompType);
             }
             if (pngCompModel != null) {
-                String pngCompData = find(lines, "pngCompressionData=", null);
+                String pngCompData = find(values, "pngCompressionData", null);
                 pngCompModel.deserializeState(pngCompData);
             }
             project.setPngCompression(pngCompModel);
         }
+
+        EtcFormat etcFormat = EtcFormat.findByKey(find(values, "etcOutputFormat", null));
+        if (etcFormat != null) {
+            EtcOutputModel etcOutput = new EtcOutputModel(etcFormat);
+            etcOutput.deserializeState(find(values, "etcOutputData", null));
+            project.setEtcOutput(etcOutput);
+        }
     }
 
-    private PackModel deserializePack(String serializedData, FileHandle root) {
+    /** Pack dirs are left as they are written, relative ones are resolved later by {@link #resolvePackPaths(Array, FileHandle, ProgressListener)} */
+    private PackModel deserializePack(ObjectMap<String, String> values) {
         PackModel pack = new PackModel();
 
-        Array<String> lines = splitAndTrim(serializedData);
-        for (String line : lines) {
-            if (line.startsWith("name=")) pack.setName(PathUtils.trim(line.substring("name=".length())).trim());
-            if (line.startsWith("filename=")) pack.setFilename(PathUtils.trim(line.substring("filename=".length())).trim());
-            if (line.startsWith("input=")) pack.setInputDir(PathUtils.trim(line.substring("input=".length())).trim());
-            if (line.startsWith("output=")) pack.setOutputDir(PathUtils.trim(line.substring("output=".length())).trim());
-        }
+        String name = values.get("name");
+        if (name != null) pack.setName(PathUtils.trim(name).trim());
+        String filename = values.get("filename");
+        if (filename != null) pack.setFilename(PathUtils.trim(filename).trim());
+        String input = values.get("input");
+        if (input != null) pack.setInputDir(PathUtils.trim(input).trim());
+        String output = values.get("output");
+        if (output != null) pack.setOutputDir(PathUtils.trim(output).trim());
 
-        try {
-            String inputDir = pack.getInputDir();
-            if (!inputDir.equals("") && !new File(inputDir).isAbsolute()) {
-                pack.setInputDir(new File(root.file(), inputDir).getCanonicalPath());
-            }
-            String outputDir = pack.getOutputDir();
-            if (!outputDir.equals("") && !new File(outputDir).isAbsolute()) {
-                pack.setOutputDir(new File(root.file(), outputDir).getCanonicalPath());
-            }
-        } catch (IOException ex) {
-            //TODO show error to user somehow
-            System.err.println(ex.getMessage());
-            pack.setInputDir("");
-            pack.setOutputDir("");
-        }
 
         TexturePacker.Settings settings = pack.getSettings();
         TexturePacker.Settings defaultSettings = new TexturePacker.Settings();
 
-        settings.alias = find(lines, "atlas=", defaultSettings.alias);
-        settings.alphaThreshold = find(lines, "alphaThreshold=", defaultSettings.alphaThreshold);
-        settings.debug = find(lines, "debug=", defaultSettings.debug);
-        settings.duplicatePadding = find(lines, "duplicatePadding=", defaultSettings.duplicatePadding);
-        settings.edgePadding = find(lines, "edgePadding=", defaultSettings.edgePadding);
-        settings.fast = find(lines, "fast=", defaultSettings.fast);
-        settings.filterMag = Texture.TextureFilter.valueOf(find(lines, "filterMag=", defaultSettings.filterMag.toString()));
-        settings.filterMin = Texture.TextureFilter.valueOf(find(lines, "filterMin=", defaultSettings.filterMin.toString()));
-        settings.format = Pixmap.Format.valueOf(find(lines, "format=", defaultSettings.format.toString()));
-        settings.ignoreBlankImages = find(lines, "ignoreBlankImages=", defaultSettings.ignoreBlankImages);
-        settings.jpegQuality = find(lines, "jpegQuality=", defaultSettings.jpegQuality);
-        settings.maxHeight = find(lines, "maxHeight=", 2048); // defaultSettings.maxHeight value (1024) is outdated and 2048 is recommended
-        settings.maxWidth = find(lines, "maxWidth=", 2048); // defaultSettings.maxWidth value (1024) is outdated and 2048 is recommended
-        settings.minHeight = find(lines, "minHeight=", defaultSettings.minHeight);
-        settings.minWidth = find(lines, "minWidth=", defaultSettings.minWidth);
-        settings.outputFormat = find(lines, "outputFormat=", defaultSettings.outputFormat);
-        settings.paddingX = find(lines, "paddingX=", defaultSettings.paddingX);
-        settings.paddingY = find(lines, "paddingY=", defaultSettings.paddingY);
-        settings.pot = find(lines, "pot=", defaultSettings.pot);
-        settings.rotation = find(lines, "rotation=", defaultSettings.rotation);
-        settings.stripWhitespaceX = find(lines, "stripWhitespaceX=", defaultSettings.stripWhitespaceX);
-        settings.stripWhitespaceY = find(lines, "stripWhitespaceY=", defaultSettings.stripWhitespaceY);
-        settings.wrapX = Texture.TextureWrap.valueOf(find(lines, "wrapX=", defaultSettings.wrapX.toString()));
-        settings.wrapY = Texture.TextureWrap.valueOf(find(lines, "wrapY=", defaultSettings.wrapY.toString()));
-        settings.premultiplyAlpha = find(lines, "premultiplyAlpha=", defaultSettings.premultiplyAlpha);
-        settings.combineSubdirectories = find(lines, "combineSubdirectories=", defaultSettings.combineSubdirectories);
-        settings.grid = find(lines, "grid=", defaultSettings.grid);
-        settings.square = find(lines, "square=", defaultSettings.square);
+        settings.alias = find(values, "atlas", defaultSettings.alias);
+        settings.alphaThreshold = find(values, "alphaThreshold", defaultSettings.alphaThreshold);
+        settings.debug = find(values, "debug", defaultSettings.debug);
+        settings.duplicatePadding = find(values, "duplicatePadding", defaultSettings.duplicatePadding);
+        settings.edgePadding = find(values, "edgePadding", defaultSettings.edgePadding);
+        settings.fast = find(values, "fast", defaultSettings.fast);
+        settings.filterMag = Texture.TextureFilter.valueOf(find(values, "filterMag", defaultSettings.filterMag.toString()));
+        settings.filterMin = Texture.TextureFilter.valueOf(find(values, "filterMin", defaultSettings.filterMin.toString()));
+        settings.format = Pixmap.Format.valueOf(find(values, "format", defaultSettings.format.toString()));
+        settings.ignoreBlankImages = find(values, "ignoreBlankImages", defaultSettings.ignoreBlankImages);
+        settings.jpegQuality = find(values, "jpegQuality", defaultSettings.jpegQuality);
+        settings.maxHeight = find(values, "maxHeight", 2048); // defaultSettings.maxHeight value (1024) is outdated and 2048 is recommended
+        settings.maxWidth = find(values, "maxWidth", 2048); // defaultSettings.maxWidth value (1024) is outdated and 2048 is recommended
+        settings.minHeight = find(values, "minHeight", defaultSettings.minHeight);
+        settings.minWidth = find(values, "minWidth", defaultSettings.minWidth);
+        settings.outputFormat = find(values, "outputFormat", defaultSettings.outputFormat);
+        settings.paddingX = find(values, "paddingX", defaultSettings.paddingX);
+        settings.paddingY = find(values, "paddingY", defaultSettings.paddingY);
+        settings.pot = find(values, "pot", defaultSettings.pot);
+        settings.rotation = find(values, "rotation", defaultSettings.rotation);
+        settings.stripWhitespaceX = find(values, "stripWhitespaceX", defaultSettings.stripWhitespaceX);
+        settings.stripWhitespaceY = find(values, "stripWhitespaceY", defaultSettings.stripWhitespaceY);
+        settings.wrapX = Texture.TextureWrap.valueOf(find(values, "wrapX", defaultSettings.wrapX.toString()));
+        settings.wrapY = Texture.TextureWrap.valueOf(find(values, "wrapY", defaultSettings.wrapY.toString()));
+        settings.premultiplyAlpha = find(values, "premultiplyAlpha", defaultSettings.premultiplyAlpha);
+        settings.combineSubdirectories = find(values, "combineSubdirectories", defaultSettings.combineSubdirectories);
+        settings.grid = find(values, "grid", defaultSettings.grid);
+        settings.square = find(values, "square", defaultSettings.square);
 
         return pack;
     }
 
-    private static String find (Array<String> lines, String start, String defaultValue) {
-        for (String line : lines) {
-            if (line.startsWith(start)) return line.substring(start.length());
+    /**
+     * Replaces relative pack dirs with canonical paths. Every file system call may be slow (e.g. on a network share),
+     * so distinct paths are resolved concurrently. Dirs of a pack are reset if any of them can't be resolved.
+     */
+    static void resolvePackPaths(Array<PackModel> packs, final FileHandle root, ProgressListener listener) throws IOException {
+        // Packs usually share a few output dirs, so every distinct path is resolved only once
+        ObjectMap<String, Future<String>> canonicalPaths = new ObjectMap<>();
+        // Not worth the threads for a single pack (e.g. a hydrated one), it's resolved on the calling thread
+        ExecutorService executor = packs.size > 1 ? WorkerPoolService.createExecutor(PATH_RESOLVER_THREADS, "project-path-resolver") : null;
+        try {
+            for (PackModel pack : packs) {
+                submitPathResolving(executor, root, pack.getInputDir(), canonicalPaths);
+                submitPathResolving(executor, root, pack.getOutputDir(), canonicalPaths);
+            }
+
+            for (int i = 0; i < packs.size; i++) {
+                PackModel pack = packs.get(i);
+                try {
+                    String inputDir = getCanonicalPath(pack.getInputDir(), canonicalPaths);
+                    String outputDir = getCanonicalPath(pack.getOutputDir(), canonicalPaths);
+                    pack.setInputDir(inputDir);
+                    pack.setOutputDir(outputDir);
+                } catch (InterruptedIOException ex) {
+                    throw ex;
+                } catch (IOException ex) {
+                    //TODO show error to user somehow
+                    System.err.println(ex.getMessage());
+                    pack.setInputDir("");
+                    pack.setOutputDir("");
+                }
+
+                if (listener != null) {
+                    listener.onProgress(READ_PROGRESS_SHARE + (1f - READ_PROGRESS_SHARE) * (i + 1) / packs.size);
+                }
+            }
+        } finally {
+            if (executor != null) executor.shutdownNow();
+        }
+    }
+
+    /** @param executor may be null, the path is resolved right away then */
+    private static void submitPathResolving(ExecutorService executor, final FileHandle root, final String path,
+                                            ObjectMap<String, Future<String>> canonicalPaths) {
+        if (path.equals("") || new File(path).isAbsolute() || canonicalPaths.containsKey(path)) return;
+
+        FutureTask<String> task = new FutureTask<>(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return new File(root.file(), path).getCanonicalPath();
+            }
+        });
+        canonicalPaths.put(path, task);
+        if (executor != null) {
+            executor.execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    /** @return resolved path or the same path if it doesn't need resolving */
+    private static String getCanonicalPath(String path, ObjectMap<String, Future<String>> canonicalPaths) throws IOException {
+        Future<String> canonicalPath = canonicalPaths.get(path);
+        if (canonicalPath == null) return path;
+
+        try {
+            return canonicalPath.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Project loading was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
         }
-        return defaultValue;
     }
-    private static boolean find (Array<String> lines, String start, boolean defaultValue) {
-        String str = find(lines, start, null);
+
+    private static String find (ObjectMap<String, String> values, String key, String defaultValue) {
+        return values.get(key, defaultValue);
+    }
+    private static boolean find (ObjectMap<String, String> values, String key, boolean defaultValue) {
+        String str = values.get(key);
         if (str != null) return Boolean.parseBoolean(str);
         return defaultValue;
     }
-    private static int find (Array<String> lines, String start, int defaultValue) {
-        String str = find(lines, start, null);
+    private static int find (ObjectMap<String, String> values, String key, int defaultValue) {
+        String str = values.get(key);
         if (str != null) return Integer.parseInt(str);
         return defaultValue;
     }
-    private static float find (Array<String> lines, String start, float defaultValue) {
-        String str = find(lines, start, null);
+    private static float find (ObjectMap<String, String> values, String key, float defaultValue) {
+        String str = values.get(key);
         if (str != null) return Float.parseFloat(str);
         return defaultValue;
     }
+
+    /** Receives loading progress (from 0 to 1) on the loading thread */
+    public interface ProgressListener {
+        void onProgress(float progress);
+    }
+
+    /** All the methods are called on the GL thread */
+    public interface LoadListener extends ProgressListener {
+        void onLoaded(ProjectModel project);
+
+        /** User is already notified about the error at this point */
+        void onFailed();
+    }
+
+    /** Passes the progress to the GL thread, but only when it changes noticeably, not to flood the render loop */
+    private static class ThrottledProgressListener implements ProgressListener {
+        private static final float STEP = 0.01f;
+
+        private final ProgressListener listener;
+        private float lastProgress = -1f;
+
+        ThrottledProgressListener(ProgressListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onProgress(final float progress) {
+            if (progress - lastProgress < STEP && progress < 1f) return;
+            lastProgress = progress;
+
+            Gdx.app.postRunnable(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onProgress(progress);
+                }
+            });
+        }
+    }
+
+    /** Reports the read part of the file as the first {@link #READ_PROGRESS_SHARE} of the loading progress */
+    private static class ProgressInputStream extends FilterInputStream {
+        private final long length;
+        private final ProgressListener listener;
+        private long position;
+
+        ProgressInputStream(InputStream input, long length, ProgressListener listener) {
+            super(input);
+            this.length = length;
+            this.listener = listener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) advance(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) advance(count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = super.skip(n);
+            advance(count);
+            return count;
+        }
+
+        private void advance(long count) {
+            position += count;
+            if (listener != null && length > 0) {
+                listener.onProgress(READ_PROGRESS_SHARE * Math.min(1f, (float) position / length));
+            }
+        }
+    }
 }
@@ -0,0 +1,201 @@
+package com.crashinvaders.texturepackergui.services;
+
+import com.badlogic.gdx.utils.Base64Coder;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Minimal client of the Tinify HTTP API (see https://tinypng.com/developers/reference).
+ * Unlike the official library it has configurable endpoint (so it can be pointed to a local stub server)
+ * and retries transient failures (connection errors and server side errors) with exponential backoff.
+ * <p/>
+ * Instances are thread safe.
+ */
+public class TinifyClient {
+    public static final String DEFAULT_ENDPOINT = "https://api.tinify.com";
+    /** Number of compressions per month that are free of charge */
+    public static final int FREE_MONTHLY_COMPRESSIONS = 500;
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_RETRY_DELAY_MILLIS = 500L;
+    private static final long MAX_RETRY_DELAY_MILLIS = 8000L;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+    private static final int READ_TIMEOUT_MILLIS = 60000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String endpoint;
+    private final String authorization;
+    private final Random random = new Random();
+    private final CompressionCountListener compressionCountListener;
+
+    /**
+     * @param endpoint API root url, e.g. {@link #DEFAULT_ENDPOINT}
+     * @param compressionCountListener may be null
+     */
+    public TinifyClient(String endpoint, String apiKey, CompressionCountListener compressionCountListener) {
+        this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        this.authorization = "Basic " + new String(Base64Coder.encode(("api:" + apiKey).getBytes(UTF_8)));
+        this.compressionCountListener = compressionCountListener;
+    }
+
+    /**
+     * Blocking call. Transient failures are retried, the rest are reported right away.
+     * @return compressed image data
+     * @throws InterruptedException if thread was interrupted while waiting for the next attempt
+     */
+    public byte[] compress(byte[] imageData) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return compressOnce(imageData);
+            } catch (ApiException e) {
+                if (!e.isTransient() || attempt >= MAX_ATTEMPTS) throw e;
+
+                long delay = computeRetryDelay(attempt);
+                System.out.println(String.format("Tinify request failed (%s), retrying in %.1fs", e.getMessage(), delay / 1000f));
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    private byte[] compressOnce(byte[] imageData) throws IOException {
+        HttpURLConnection connection = openConnection(endpoint + "/shrink", "POST");
+        String outputUrl;
+        try {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(imageData.length);
+            OutputStream output = connection.getOutputStream();
+            try {
+                output.write(imageData);
+            } finally {
+                StreamUtils.closeQuietly(output);
+            }
+
+            int status = connection.getResponseCode();
+            notifyCompressionCount(connection);
+            if (status != HttpURLConnection.HTTP_CREATED) {
+                throw createApiException(connection, status);
+            }
+            outputUrl = connection.getHeaderField("Location");
+            if (outputUrl == null) {
+                throw new ApiException("Response has no output location", status, false);
+            }
+            // Drain the response, so the connection can be reused
+            readFully(connection.getInputStream());
+        } catch (ApiException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new ApiException(e.getClass().getSimpleName() + ": " + e.getMessage(), -1, true, e);
+        } finally {
+            connection.disconnect();
+        }
+
+        HttpURLConnection outputConnection = openConnection(new URL(new URL(endpoint), outputUrl).toString(), "GET");
+        try {
+            int status = outputConnection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw createApiException(outputConnection, status);
+            }
+            return readFully(outputConnection.getInputStream());
+        } catch (ApiException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new ApiException(e.getClass().getSimpleName() + ": " + e.getMessage(), -1, true, e);
+        } finally {
+            outputConnection.disconnect();
+        }
+    }
+
+    private HttpURLConnection openConnection(String url, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestProperty("Authorization", authorization);
+        return connection;
+    }
+
+    private void notifyCompressionCount(HttpURLConnection connection) {
+        String header = connection.getHeaderField("Compression-Count");
+        if (header == null || compressionCountListener == null) return;
+
+        try {
+            compressionCountListener.onCompressionCountUpdated(Integer.parseInt(header.trim()));
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    /** @return exponential delay with a random spread, so parallel uploads don't retry all at once */
+    private long computeRetryDelay(int attempt) {
+        long delay = Math.min(MAX_RETRY_DELAY_MILLIS, BASE_RETRY_DELAY_MILLIS << (attempt - 1));
+        synchronized (random) {
+            return delay / 2 + (long) (random.nextFloat() * delay / 2);
+        }
+    }
+
+    private static ApiException createApiException(HttpURLConnection connection, int status) {
+        String message = "HTTP " + status;
+        try {
+            InputStream errorStream = connection.getErrorStream();
+            if (errorStream != null) {
+                JsonValue json = new JsonReader().parse(new String(readFully(errorStream), UTF_8));
+                message = json.getString("error", "HTTP " + status) + ": " + json.getString("message", "");
+            }
+        } catch (Exception ignored) {
+            // Error body is not essential
+        }
+        // 429 means monthly limit has been reached, no reason to retry
+        return new ApiException(message, status, status >= 500);
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            StreamUtils.copyStream(input, output);
+            return output.toByteArray();
+        } finally {
+            StreamUtils.closeQuietly(input);
+        }
+    }
+
+    public interface CompressionCountListener {
+        /** @param compressionCount number of compressions made with the API key during the current month */
+        void onCompressionCountUpdated(int compressionCount);
+    }
+
+    public static class ApiException extends IOException {
+        private final int status;
+        private final boolean isTransient;
+
+        public ApiException(String message, int status, boolean isTransient) {
+            super(message);
+            this.status = status;
+            this.isTransient = isTransient;
+        }
+
+        public ApiException(String message, int status, boolean isTransient, Throwable cause) {
+            super(message, cause);
+            this.status = status;
+            this.isTransient = isTransient;
+        }
+
+        /** @return HTTP status code or -1 if request has failed on the connection level */
+        public int getStatus() {
+            return status;
+        }
+
+        /** @return true if the same request may succeed later */
+        public boolean isTransient() {
+            return isTransient;
+        }
+    }
+}
@@ -3,15 +3,20 @@ package com.crashinvaders.texturepackergui.services;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Preferences;
 import com.badlogic.gdx.files.FileHandle;
+import com.crashinvaders.texturepackergui.AppConstants;
+import com.crashinvaders.texturepackergui.utils.ThreadPrintStream;
+import com.crashinvaders.texturepackergui.utils.packprocessing.OptimizedPageCache;
 import com.github.czyzby.autumn.annotation.Component;
+import com.github.czyzby.autumn.annotation.Destroy;
 import com.github.czyzby.autumn.annotation.Initiate;
 import com.tinify.AccountException;
 import com.tinify.Exception;
 import com.tinify.Tinify;
 
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.PrintStream;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Provides functionality to compress images using TinyPng or TinyJpeg
@@ -20,19 +25,61 @@ import java.util.concurrent.Executors;
 public class TinifyService {
     public static final String PREF_NAME = "tinify.xml";
     public static final String PREF_KEY_API_KEY = "api_key";
+    public static final String PREF_KEY_UPLOAD_CONCURRENCY = "upload_concurrency";
+    public static final int DEFAULT_UPLOAD_CONCURRENCY = 4;
+    public static final int MAX_UPLOAD_CONCURRENCY = 16;
+    private static final String CACHE_DIR_NAME = "tinify-cache";
+    /** Identifies Tinify results in the cache, should be changed if the way images are sent to Tinify changes */
+    private static final String CACHE_COMPRESSOR_KEY = "tinify";
 
     private Preferences prefs;
 
     private String apiKey;
+    private String apiEndpoint = TinifyClient.DEFAULT_ENDPOINT;
+    private TinifyClient client;
     private ExecutorService executorService;
+    /** Shared by all the packs, so number of simultaneous uploads is bounded for the whole processing run */
+    private ThreadPoolExecutor uploadExecutor;
+    private int uploadConcurrency;
+    /** Compressions made with the API key this month, -1 until the first API response */
+    private final AtomicInteger compressionCount = new AtomicInteger(-1);
+    /** Compressed images addressed by the hash of the uploaded bytes, saves both API quota and upload time */
+    private OptimizedPageCache cache;
 
     @Initiate void initialize() {
-        prefs = Gdx.app.getPreferences(PREF_NAME);
+        initialize(Gdx.app.getPreferences(PREF_NAME));
+    }
+
+    /** Allows to use the service outside of application context (e.g. in batch mode) */
+    public void initialize(Preferences prefs) {
+        this.prefs = prefs;
         apiKey = prefs.getString(PREF_KEY_API_KEY);
+        uploadConcurrency = clampUploadConcurrency(prefs.getInteger(PREF_KEY_UPLOAD_CONCURRENCY, DEFAULT_UPLOAD_CONCURRENCY));
 
         Tinify.setKey(apiKey);
+        client = createClient();
+        cache = new OptimizedPageCache(
+                Gdx.files.external(AppConstants.APP_DATA_DIR + "/" + CACHE_DIR_NAME).file(),
+                OptimizedPageCache.DEFAULT_SIZE_LIMIT);
 
         executorService = Executors.newSingleThreadExecutor();
+        uploadExecutor = new ThreadPoolExecutor(uploadConcurrency, uploadConcurrency,
+                30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger threadCounter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "tinify-upload-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        uploadExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @Destroy void dispose() {
+        if (executorService != null) executorService.shutdownNow();
+        if (uploadExecutor != null) uploadExecutor.shutdownNow();
     }
 
     public synchronized String getApiKey() {
@@ -44,15 +91,125 @@ public class TinifyService {
         prefs.putString(PREF_KEY_API_KEY, apiKey).flush();
 
         Tinify.setKey(apiKey);
+        client = createClient();
+        compressionCount.set(-1);
+    }
+
+    /** Allows to point the service to a different server (e.g. a local stub for testing) */
+    public synchronized void setApiEndpoint(String apiEndpoint) {
+        this.apiEndpoint = apiEndpoint;
+        client = createClient();
+    }
+
+    public synchronized int getUploadConcurrency() {
+        return uploadConcurrency;
+    }
+
+    /** @param uploadConcurrency max number of images that are uploaded simultaneously */
+    public void setUploadConcurrency(int uploadConcurrency) {
+        setUploadConcurrency(uploadConcurrency, true);
+    }
+
+    /** @param persist false to apply the value for the current session only (e.g. command line override) */
+    public synchronized void setUploadConcurrency(int uploadConcurrency, boolean persist) {
+        uploadConcurrency = clampUploadConcurrency(uploadConcurrency);
+        if (persist) {
+            prefs.putInteger(PREF_KEY_UPLOAD_CONCURRENCY, uploadConcurrency).flush();
+        }
+        if (this.uploadConcurrency == uploadConcurrency) return;
+
+        this.uploadConcurrency = uploadConcurrency;
+
+        // Order matters, core size can't exceed max size
+        if (uploadConcurrency > uploadExecutor.getMaximumPoolSize()) {
+            uploadExecutor.setMaximumPoolSize(uploadConcurrency);
+            uploadExecutor.setCorePoolSize(uploadConcurrency);
+        } else {
+            uploadExecutor.setCorePoolSize(uploadConcurrency);
+            uploadExecutor.setMaximumPoolSize(uploadConcurrency);
+        }
+    }
+
+    /** @return number of compressions made with the current API key this month, or -1 if it's not known yet */
+    public int getCompressionCount() {
+        return compressionCount.get();
+    }
+
+    /** @return number of free compressions left for this month, or -1 if it's not known yet */
+    public int getRemainingFreeCompressions() {
+        int count = compressionCount.get();
+        if (count < 0) return -1;
+        return Math.max(0, TinifyClient.FREE_MONTHLY_COMPRESSIONS - count);
     }
 
     public void validateApiKey(final ValidationListener validationListener) {
         executorService.submit(new ValidationCheckRunnable(validationListener));
     }
 
-    /** WARNING: blocking call, use separate thread */
-    public void compressImageSync(FileHandle fileHandle) throws IOException {
-        Tinify.fromFile(fileHandle.path()).toFile(fileHandle.path());
+    /**
+     * Removes all the locally cached compression results
+     * @return number of bytes freed
+     */
+    public long clearCache() {
+        return cache.clear();
+    }
+
+    /**
+     * WARNING: blocking call, use separate thread
+     * @return true if the image was already compressed before and the result was taken from the local cache
+     */
+    public boolean compressImageSync(FileHandle fileHandle) throws IOException, InterruptedException {
+        byte[] imageData = fileHandle.readBytes();
+        String cacheKey = OptimizedPageCache.computeKey(imageData, CACHE_COMPRESSOR_KEY);
+        byte[] compressedData = cache.get(cacheKey);
+        if (compressedData != null) {
+            fileHandle.writeBytes(compressedData, false);
+            return true;
+        }
+
+        TinifyClient client;
+        synchronized (this) {
+            client = this.client;
+        }
+        compressedData = client.compress(imageData);
+        fileHandle.writeBytes(compressedData, false);
+        cache.put(cacheKey, compressedData);
+        return false;
+    }
+
+    /**
+     * Compresses the image on one of the upload threads. Number of simultaneous uploads is limited
+     * by {@link #getUploadConcurrency()} for all the callers together.
+     * Calling thread's {@link System#out} is used by the upload thread as well.
+     * @return future result of {@link #compressImageSync(FileHandle)}
+     */
+    public Future<Boolean> compressImageAsync(final FileHandle fileHandle) {
+        final PrintStream log = ThreadPrintStream.getThreadLocalSystemOut();
+        return uploadExecutor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws java.lang.Exception {
+                PrintStream uploadThreadLog = ThreadPrintStream.getThreadLocalSystemOut();
+                ThreadPrintStream.setThreadLocalSystemOut(log);
+                try {
+                    return compressImageSync(fileHandle);
+                } finally {
+                    ThreadPrintStream.setThreadLocalSystemOut(uploadThreadLog);
+                }
+            }
+        });
+    }
+
+    private TinifyClient createClient() {
+        return new TinifyClient(apiEndpoint, apiKey, new TinifyClient.CompressionCountListener() {
+            @Override
+            public void onCompressionCountUpdated(int count) {
+                compressionCount.set(count);
+            }
+        });
+    }
+
+    private static int clampUploadConcurrency(int uploadConcurrency) {
+        return Math.max(1, Math.min(MAX_UPLOAD_CONCURRENCY, uploadConcurrency));
     }
 
     public interface ValidationListener {
@@ -61,7 +218,7 @@ public class TinifyService {
         void onError(Exception e);
     }
 
-    private static class ValidationCheckRunnable implements Runnable {
+    private class ValidationCheckRunnable implements Runnable {
         private final ValidationListener validationListener;
 
         public ValidationCheckRunnable(ValidationListener validationListener) {
@@ -72,6 +229,9 @@ public class TinifyService {
         public void run() {
             try {
                 final boolean result = Tinify.validate();
+                if (result) {
+                    compressionCount.set(Tinify.compressionCount());
+                }
                 Gdx.app.postRunnable(new Runnable() {
                     @Override
                     public void run() {
@@ -0,0 +1,171 @@
+package com.crashinvaders.texturepackergui.services;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Preferences;
+import com.crashinvaders.texturepackergui.AppConstants;
+import com.crashinvaders.texturepackergui.controllers.packing.processors.DefaultPackPipeline;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackPipeline;
+import com.github.czyzby.autumn.annotation.Component;
+import com.github.czyzby.autumn.annotation.Destroy;
+import com.github.czyzby.autumn.annotation.Initiate;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Application-wide thread pools for pack processing stages (see {@link DefaultPackPipeline}).
+ * Number of packing and compression worker threads, as well as the number of pages compressed at the same time,
+ * is configured through global settings and defaults to the number of available processors.
+ */
+@Component
+public class WorkerPoolService {
+    private static final String TAG = WorkerPoolService.class.getSimpleName();
+    private static final String PREF_KEY_WORKER_THREADS = "worker_threads";
+    private static final String PREF_KEY_PACK_TIME_BUDGET = "pack_time_budget";
+    public static final int MAX_WORKER_THREADS = 64;
+    /**
+     * Uploads are network bound, so they don't compete with CPU workers.
+     * Upload stage workers only wait for the pages, the page uploads themselves are limited by {@link TinifyService}.
+     */
+    public static final int UPLOAD_THREADS = 4;
+
+    private Preferences prefs;
+    private ThreadPoolExecutor executor;
+    private ThreadPoolExecutor compressionExecutor;
+    private ThreadPoolExecutor uploadExecutor;
+
+    @Initiate void initialize() {
+        prefs = Gdx.app.getPreferences(AppConstants.PREF_NAME_COMMON);
+
+        int workerThreads = clampWorkerThreads(prefs.getInteger(PREF_KEY_WORKER_THREADS, getDefaultWorkerThreads()));
+        executor = createExecutor(workerThreads, "pack-worker");
+        compressionExecutor = createBoundedExecutor(workerThreads, "compression-worker");
+        uploadExecutor = createBoundedExecutor(UPLOAD_THREADS, "upload-worker");
+        DefaultPackPipeline.setPageParallelism(workerThreads);
+    }
+
+    @Destroy void dispose() {
+        shutdown(executor);
+        shutdown(compressionExecutor);
+        shutdown(uploadExecutor);
+    }
+
+    /** @return executor of the packing stage, it also suits for any other pack processing task */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public ExecutorService getCompressionExecutor() {
+        return compressionExecutor;
+    }
+
+    public ExecutorService getUploadExecutor() {
+        return uploadExecutor;
+    }
+
+    public int getWorkerThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        workerThreads = clampWorkerThreads(workerThreads);
+        if (workerThreads == executor.getMaximumPoolSize()) return;
+
+        resize(executor, workerThreads);
+        resize(compressionExecutor, workerThreads);
+        DefaultPackPipeline.setPageParallelism(workerThreads);
+
+        prefs.putInteger(PREF_KEY_WORKER_THREADS, workerThreads);
+        prefs.flush();
+    }
+
+    /** @return max processing time of a single pack in seconds, zero means no limit */
+    public int getPackTimeBudget() {
+        return prefs.getInteger(PREF_KEY_PACK_TIME_BUDGET, 0);
+    }
+
+    public void setPackTimeBudget(int seconds) {
+        prefs.putInteger(PREF_KEY_PACK_TIME_BUDGET, Math.max(0, seconds));
+        prefs.flush();
+    }
+
+    /** @return number of packing tasks that are waiting for a free worker */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /** @return approximate number of workers that are currently busy */
+    public int getActiveWorkers() {
+        return executor.getActiveCount();
+    }
+
+    public static int getDefaultWorkerThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Creates fixed size pool with daemon threads, which never hold the application from shutting down */
+    public static ThreadPoolExecutor createExecutor(int threads, String namePrefix) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                createThreadFactory(namePrefix));
+        // Let idle workers go, there is no point to keep them alive between packing runs
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Same as {@link #createExecutor(int, String)}, but the queue is limited to a couple of tasks per thread.
+     * Submitter is blocked when the queue is full, which throttles the stages that feed this one.
+     */
+    public static ThreadPoolExecutor createBoundedExecutor(int threads, String namePrefix) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                30L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * 2),
+                createThreadFactory(namePrefix),
+                PackPipeline.BLOCKING_SUBMIT);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadFactory createThreadFactory(final String namePrefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, namePrefix + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static void resize(ThreadPoolExecutor executor, int threads) {
+        // Core size should never exceed maximum size, so the order of updates matters
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    private static void shutdown(ThreadPoolExecutor executor) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                Gdx.app.log(TAG, "Worker threads are still busy, interrupting them");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int clampWorkerThreads(int workerThreads) {
+        return Math.max(1, Math.min(MAX_WORKER_THREADS, workerThreads));
+    }
+}
@@ -0,0 +1,24 @@
+package com.crashinvaders.texturepackergui.services.model;
+
+public enum EtcFormat {
+    /** Pages with transparency get a separate alpha page */
+    ETC1("etc1"),
+    /** Pages with transparency are encoded as ETC2 RGBA8 */
+    ETC2("etc2");
+
+    public final String key;
+
+    EtcFormat(String key) {
+        this.key = key;
+    }
+
+    /** @return enum constant or null if not found */
+    public static EtcFormat findByKey(String key) {
+        if (key == null) return null;
+
+        for (EtcFormat format : values()) {
+            if (format.key.equals(key)) return format;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,54 @@
+package com.crashinvaders.texturepackergui.services.model;
+
+import com.badlogic.gdx.utils.*;
+
+import java.io.StringWriter;
+
+/** GPU compressed copies of the atlas pages. Atlas files refer to them instead of the original pages. */
+public class EtcOutputModel {
+    private final EtcFormat format;
+    /** Pages are written as gzipped .zktx files if true, as .ktx files otherwise */
+    private boolean zipped = true;
+
+    public EtcOutputModel(EtcFormat format) {
+        this.format = format;
+    }
+
+    public EtcFormat getFormat() {
+        return format;
+    }
+
+    public boolean isZipped() {
+        return zipped;
+    }
+
+    public void setZipped(boolean zipped) {
+        this.zipped = zipped;
+    }
+
+    /** @return extension of the page files without the dot */
+    public String getFileExtension() {
+        return zipped ? "zktx" : "ktx";
+    }
+
+    public String serializeState() {
+        StringWriter buffer = new StringWriter();
+        try {
+            Json json = new Json();
+            json.setWriter(new JsonWriter(buffer));
+            json.writeObjectStart();
+            json.writeValue("zipped", zipped);
+            json.writeObjectEnd();
+            return buffer.toString();
+        } finally {
+            StreamUtils.closeQuietly(buffer);
+        }
+    }
+
+    public void deserializeState(String data) {
+        if (data == null) return;
+
+        JsonValue jsonValue = new JsonReader().parse(data);
+        zipped = jsonValue.getBoolean("zipped", zipped);
+    }
+}
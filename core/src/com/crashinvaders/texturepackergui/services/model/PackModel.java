@@ -18,6 +18,8 @@ public class PackModel {
 	private String outputDir = "";
 
     private EventDispatcher eventDispatcher;
+    /** Provides everything except the name for a pack that is not loaded yet, null once the pack is hydrated */
+    private Hydrator hydrator;
 
 	public PackModel () {
 
@@ -26,7 +28,21 @@ public class PackModel {
 		settings.maxHeight = 2048; // Default settings.maxHeight value (1024) is outdated and 2048 is recommended
 	}
 
+	/** Creates a pack that only has its name loaded, the rest is taken from the hydrator on the first access */
+	public PackModel (String name, Hydrator hydrator) {
+		this.name = name;
+		this.hydrator = hydrator;
+	}
+
+	/** Pack that is not hydrated yet is copied as is, both of the packs are hydrated from the same source on demand */
 	public PackModel (PackModel pack) {
+		synchronized (pack) {
+			if (pack.hydrator != null) {
+				this.name = pack.name;
+				this.hydrator = pack.hydrator;
+				return;
+			}
+		}
 		settings = new Settings(pack.settings);
 		this.name = pack.name;
 		this.filename = pack.filename;
@@ -48,6 +64,7 @@ public class PackModel {
 	}
 
 	public void setFilename (String filename) {
+        hydrate();
         if (Strings.equals(this.filename, filename)) return;
 
 		this.filename = filename;
@@ -57,6 +74,7 @@ public class PackModel {
 	}
 
 	public void setInputDir(String inputDir) {
+        hydrate();
         if (Strings.equals(this.inputDir, inputDir)) return;
 
         this.inputDir = inputDir;
@@ -66,6 +84,7 @@ public class PackModel {
 	}
 
 	public void setOutputDir(String outputDir) {
+        hydrate();
         if (Strings.equals(this.outputDir, outputDir)) return;
 
         this.outputDir = outputDir;
@@ -79,23 +98,36 @@ public class PackModel {
 	}
 
 	public String getFilename () {
+		hydrate();
 		return filename;
 	}
 
 	public String getInputDir() {
+		hydrate();
 		return inputDir;
 	}
 
 	public String getOutputDir() {
+		hydrate();
 		return outputDir;
 	}
 
 	public Settings getSettings () {
+		hydrate();
 		return settings;
 	}
 
 	public void setSettings(Settings settings) {
+		hydrate();
 		this.settings = settings;
+		notifySettingsChanged();
+	}
+
+	/** Settings are mutable, so whoever changes them in place should call this */
+	public void notifySettingsChanged() {
+		if (eventDispatcher != null) {
+			eventDispatcher.postEvent(new PackPropertyChangedEvent(this, Property.SETTINGS));
+		}
 	}
 
 	@Override
@@ -108,6 +140,7 @@ public class PackModel {
 	}
 
 	public String getCanonicalFilename() {
+		hydrate();
 		String filename = this.filename.trim().isEmpty() ? getCanonicalName()+settings.atlasExtension : this.filename;
 		return filename;
 	}
@@ -116,6 +149,7 @@ public class PackModel {
 	 * @return may be null
 	 */
 	public String getAtlasPath() {
+		hydrate();
 		String atlasPath = null;
 		if (outputDir != null && !outputDir.trim().isEmpty()) {
 			String filename = getCanonicalFilename();
@@ -123,4 +157,48 @@ public class PackModel {
 		}
 		return atlasPath;
 	}
+
+	/** @return false if only the name of the pack is loaded so far */
+	public synchronized boolean isHydrated() {
+		return hydrator == null;
+	}
+
+	/** @return source the pack is going to be hydrated from, null once the pack is hydrated */
+	public synchronized Hydrator getHydrator() {
+		return hydrator;
+	}
+
+	/** Packs may be accessed from the processing threads, so hydration is synchronized */
+	private synchronized void hydrate() {
+		if (hydrator == null) return;
+
+		Hydrator pendingHydrator = hydrator;
+		hydrator = null;
+		PackModel data;
+		Exception failure = null;
+		try {
+			data = pendingHydrator.hydrate();
+		} catch (Exception e) {
+			// Getters are called from anywhere (UI, processing threads), they shouldn't fail, so the pack is reset to the defaults
+			data = new PackModel();
+			failure = e;
+		}
+		settings = data.settings;
+		filename = data.filename;
+		inputDir = data.inputDir;
+		outputDir = data.outputDir;
+
+		if (failure != null) {
+			pendingHydrator.onHydrationFailed(this, failure);
+		}
+	}
+
+	/** Loads pack data on demand, it's never reported as a pack change. May be shared by copies of the pack. */
+	public interface Hydrator {
+		/** @return fully loaded pack, its name is ignored */
+		PackModel hydrate() throws Exception;
+
+		/** Called from the thread that has accessed the pack, the pack has the default values at this point */
+		void onHydrationFailed(PackModel pack, Exception e);
+	}
 }
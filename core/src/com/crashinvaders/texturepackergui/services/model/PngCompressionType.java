@@ -3,6 +3,7 @@ package com.crashinvaders.texturepackergui.services.model;
 public enum PngCompressionType {
     PNGTASTIC("pngtastic"),
     ZOPFLI("zopfli"),
+    PALETTE("palette"),
     TINY_PNG("tinify");
 
     public final String key;
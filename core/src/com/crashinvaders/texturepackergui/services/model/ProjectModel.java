@@ -14,6 +14,7 @@ public class ProjectModel {
     private EventDispatcher eventDispatcher;
 
     private PngCompressionModel pngCompression;
+    private EtcOutputModel etcOutput;
 
     public ProjectModel() {
     }
@@ -88,4 +89,24 @@ public class ProjectModel {
             eventDispatcher.postEvent(new ProjectPropertyChangedEvent(this, ProjectPropertyChangedEvent.Property.PNG_COMPRESSION));
         }
     }
+
+    /** Compression model is mutable, so whoever changes it in place should call this */
+    public void notifyPngCompressionChanged() {
+        if (eventDispatcher != null) {
+            eventDispatcher.postEvent(new ProjectPropertyChangedEvent(this, ProjectPropertyChangedEvent.Property.PNG_COMPRESSION));
+        }
+    }
+
+    public EtcOutputModel getEtcOutput() {
+        return etcOutput;
+    }
+
+    public void setEtcOutput(EtcOutputModel etcOutput) {
+        if (this.etcOutput == etcOutput) return;
+        this.etcOutput = etcOutput;
+
+        if (eventDispatcher != null) {
+            eventDispatcher.postEvent(new ProjectPropertyChangedEvent(this, ProjectPropertyChangedEvent.Property.ETC_OUTPUT));
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package com.crashinvaders.texturepackergui.services.model.compression;
+
+import com.badlogic.gdx.utils.*;
+import com.crashinvaders.texturepackergui.services.model.PngCompressionType;
+
+import java.io.StringWriter;
+
+/** Lossy compression, pages are reduced to a color palette and then optimized losslessly */
+public class PaletteCompressionModel extends PngCompressionModel {
+
+    private int maxColors = 256;
+    /** Share of the quantization error that is spread over the neighbor pixels, from 0 (no dithering) to 1 */
+    private float dithering = 1f;
+    /** Min quality from 0 to 100 of a quantized page, pages of lower quality are only optimized losslessly */
+    private int qualityFloor = 0;
+
+    public PaletteCompressionModel() {
+        super(PngCompressionType.PALETTE);
+    }
+
+    public int getMaxColors() {
+        return maxColors;
+    }
+
+    public void setMaxColors(int maxColors) {
+        this.maxColors = maxColors;
+    }
+
+    public float getDithering() {
+        return dithering;
+    }
+
+    public void setDithering(float dithering) {
+        this.dithering = dithering;
+    }
+
+    public int getQualityFloor() {
+        return qualityFloor;
+    }
+
+    public void setQualityFloor(int qualityFloor) {
+        this.qualityFloor = qualityFloor;
+    }
+
+    @Override
+    public String serializeState() {
+        StringWriter buffer = new StringWriter();
+        try {
+            Json json = new Json();
+            json.setWriter(new JsonWriter(buffer));
+            json.writeObjectStart();
+            json.writeValue("maxColors", maxColors);
+            json.writeValue("dithering", dithering);
+            json.writeValue("qualityFloor", qualityFloor);
+            json.writeObjectEnd();
+            return buffer.toString();
+        } finally {
+            StreamUtils.closeQuietly(buffer);
+        }
+    }
+
+    @Override
+    public void deserializeState(String data) {
+        if (data == null) return;
+
+        JsonValue jsonValue = new JsonReader().parse(data);
+        maxColors = jsonValue.getInt("maxColors", maxColors);
+        dithering = jsonValue.getFloat("dithering", dithering);
+        qualityFloor = jsonValue.getInt("qualityFloor", qualityFloor);
+    }
+}
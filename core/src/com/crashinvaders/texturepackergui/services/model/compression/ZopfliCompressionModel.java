@@ -9,6 +9,10 @@ public class ZopfliCompressionModel extends PngCompressionModel {
 
     private int level = 3;
     private int iterations = 1;
+    /** Max compression time of a single page in seconds, zero means no limit */
+    private int pageTimeLimit = 0;
+    /** Min size reduction in percents of a step to try more iterations, zero means no limit */
+    private float minStepGain = 0f;
 
     public ZopfliCompressionModel() {
         super(PngCompressionType.ZOPFLI);
@@ -30,6 +34,30 @@ public class ZopfliCompressionModel extends PngCompressionModel {
         this.iterations = iterations;
     }
 
+    public int getPageTimeLimit() {
+        return pageTimeLimit;
+    }
+
+    public void setPageTimeLimit(int pageTimeLimit) {
+        this.pageTimeLimit = pageTimeLimit;
+    }
+
+    public float getMinStepGain() {
+        return minStepGain;
+    }
+
+    public void setMinStepGain(float minStepGain) {
+        this.minStepGain = minStepGain;
+    }
+
+    /**
+     * @return true if pages should be compressed with progressively increasing number of iterations
+     * (up to {@link #getIterations()}), until time limit is reached or more iterations stop paying off
+     */
+    public boolean isAdaptive() {
+        return pageTimeLimit > 0 || minStepGain > 0f;
+    }
+
     @Override
     public String serializeState() {
         StringWriter buffer = new StringWriter();
@@ -39,6 +67,8 @@ public class ZopfliCompressionModel extends PngCompressionModel {
             json.writeObjectStart();
             json.writeValue("level", level);
             json.writeValue("iterations", iterations);
+            json.writeValue("pageTimeLimit", pageTimeLimit);
+            json.writeValue("minStepGain", minStepGain);
             json.writeObjectEnd();
             return buffer.toString();
         } finally {
@@ -53,5 +83,7 @@ public class ZopfliCompressionModel extends PngCompressionModel {
         JsonValue jsonValue = new JsonReader().parse(data);
         level = jsonValue.getInt("level", level);
         iterations = jsonValue.getInt("iterations", iterations);
+        pageTimeLimit = jsonValue.getInt("pageTimeLimit", pageTimeLimit);
+        minStepGain = jsonValue.getFloat("minStepGain", minStepGain);
     }
 }
@@ -0,0 +1,181 @@
+package com.crashinvaders.texturepackergui.utils;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches directory trees for changes on a dedicated daemon thread.
+ * Bursts of file events are debounced, so listener gets notified once the file system has been quiet for a while.
+ */
+public class DirectoryWatcher {
+    /** How often watcher thread checks for updated roots when there are no file events */
+    private static final long IDLE_POLL_MILLIS = 250;
+    /** Limits notification delay when file events don't stop coming */
+    private static final long MAX_DEBOUNCE_FACTOR = 10;
+
+    private final Listener listener;
+    private final long debounceMillis;
+
+    private final Object rootsLock = new Object();
+    /** Roots to be applied by watcher thread, null if there are no updates */
+    private Set<Path> pendingRoots;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    /** Accessed from watcher thread only */
+    private final Map<WatchKey, Path> watchKeys = new HashMap<>();
+
+    /**
+     * @param listener gets notified from the watcher thread
+     * @param debounceMillis time without file events after which listener is notified
+     */
+    public DirectoryWatcher(Listener listener, long debounceMillis) {
+        this.listener = listener;
+        this.debounceMillis = debounceMillis;
+    }
+
+    public void start() throws IOException {
+        if (thread != null) throw new IllegalStateException("Watcher is already started");
+
+        watchService = FileSystems.getDefault().newWatchService();
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watchLoop();
+            }
+        }, "directory-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        if (thread == null) return;
+
+        thread.interrupt();
+        thread = null;
+        try {
+            watchService.close();
+        } catch (IOException ignored) { }
+        watchService = null;
+    }
+
+    /** Replaces all the watched directory trees. Non existing directories are ignored. */
+    public void setRoots(Collection<Path> roots) {
+        synchronized (rootsLock) {
+            pendingRoots = new HashSet<>(roots);
+        }
+    }
+
+    private void watchLoop() {
+        WatchService watchService = this.watchService;
+        Set<Path> changedPaths = new HashSet<>();
+        long firstChangeTime = 0;
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                applyPendingRoots(watchService);
+
+                long timeout = changedPaths.isEmpty() ? IDLE_POLL_MILLIS : debounceMillis;
+                WatchKey key = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+                    if (changedPaths.isEmpty()) {
+                        firstChangeTime = System.currentTimeMillis();
+                    }
+                    processEvents(watchService, key, changedPaths);
+                }
+
+                boolean quiet = key == null;
+                boolean overdue = System.currentTimeMillis() - firstChangeTime > debounceMillis * MAX_DEBOUNCE_FACTOR;
+                if (!changedPaths.isEmpty() && (quiet || overdue)) {
+                    listener.onFilesChanged(Collections.unmodifiableSet(new HashSet<>(changedPaths)));
+                    changedPaths.clear();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // Watcher was stopped
+        } finally {
+            watchKeys.clear();
+        }
+    }
+
+    private void processEvents(WatchService watchService, WatchKey key, Set<Path> changedPaths) {
+        Path dir = watchKeys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (dir == null) continue;
+
+            if (event.kind() == OVERFLOW) {
+                // Some events were lost, consider the whole directory changed
+                changedPaths.add(dir);
+                continue;
+            }
+
+            Path path = dir.resolve((Path) event.context());
+            changedPaths.add(path);
+
+            // Newly created subdirectories should be watched as well
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                registerTree(watchService, path);
+            }
+        }
+
+        if (!key.reset()) {
+            // Directory is no longer accessible
+            watchKeys.remove(key);
+        }
+    }
+
+    private void applyPendingRoots(WatchService watchService) {
+        Set<Path> roots;
+        synchronized (rootsLock) {
+            roots = pendingRoots;
+            pendingRoots = null;
+        }
+        if (roots == null) return;
+
+        for (WatchKey key : watchKeys.keySet()) {
+            key.cancel();
+        }
+        watchKeys.clear();
+
+        for (Path root : roots) {
+            if (Files.isDirectory(root)) {
+                registerTree(watchService, root);
+            }
+        }
+    }
+
+    private void registerTree(final WatchService watchService, Path root) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                    watchKeys.put(key, dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called from the watcher thread.
+         * @param changedPaths created, modified or deleted files and directories
+         */
+        void onFilesChanged(Set<Path> changedPaths);
+    }
+}
@@ -1,6 +1,8 @@
 package com.crashinvaders.texturepackergui.utils;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.PrintStream;
 
 /**
@@ -14,11 +16,16 @@ public class ThreadPrintStream extends PrintStream {
     public static final PrintStream stdout = System.out;
     public static final PrintStream stderr = System.err;
 
+    /** Number of {@link #replaceSystemOut()} calls that are not reverted yet */
+    private static int replaceCount;
+
     /**
      * Changes System.out to a ThreadPrintStream which will
      * send output to a separate file for each thread.
+     * Calls are counted, System.out is replaced only by the first one.
      */
-    public static void replaceSystemOut() {
+    public static synchronized void replaceSystemOut() {
+        if (replaceCount++ > 0) return;
 
         // Create a ThreadPrintStream and install it as System.out
         final ThreadPrintStream threadStdOut = new ThreadPrintStream();
@@ -29,6 +36,17 @@ public class ThreadPrintStream extends PrintStream {
         threadStdOut.setThreadOut(stdout);
     }
 
+    /**
+     * Reverts a single {@link #replaceSystemOut()} call.
+     * System.out is restored only when the last one is reverted, so the other users keep their output.
+     */
+    public static synchronized void restoreSystemOut() {
+        if (replaceCount == 0 || --replaceCount > 0) return;
+
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.out)));
+        System.setErr(new PrintStream(new FileOutputStream(FileDescriptor.err)));
+    }
+
     public static PrintStream getThreadLocalSystemOut() {
         return out.get();
     }
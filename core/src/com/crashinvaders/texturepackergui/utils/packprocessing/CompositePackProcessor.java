@@ -20,6 +20,7 @@ public class CompositePackProcessor implements PackProcessor {
     @Override
     public void processPackage(ProjectModel projectModel, PackModel packModel, ObjectMap metadata) throws Exception {
         for (int i = 0; i < processors.size; i++) {
+            PackProcessingManager.checkCancelled();
             processors.get(i).processPackage(projectModel, packModel, metadata);
         }
     }
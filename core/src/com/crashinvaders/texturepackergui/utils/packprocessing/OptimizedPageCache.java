@@ -0,0 +1,195 @@
+package com.crashinvaders.texturepackergui.utils.packprocessing;
+
+import com.badlogic.gdx.Gdx;
+import com.crashinvaders.texturepackergui.AppConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * On-disk cache of optimized PNG pages. Pages are addressed by the hash of their packed (not yet optimized) bytes
+ * and the compressor's settings, so unchanged pages don't go through the slow optimization again.
+ * <p/>
+ * Cache size is capped, the least recently used pages are removed first (file modification time serves as the access time).
+ * Several application instances may share the same cache directory, so every file operation is allowed to fail.
+ */
+public class OptimizedPageCache {
+    public static final long DEFAULT_SIZE_LIMIT = 256L * 1024L * 1024L;
+    private static final String DIR_NAME = "page-cache";
+    private static final String FILE_SUFFIX = ".png";
+    /** Eviction goes a bit further than the limit, so it doesn't happen on every new page */
+    private static final float EVICTION_TARGET = 0.75f;
+    /** Should be increased whenever optimizers produce different output for the same settings */
+    private static final int FORMAT_VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static OptimizedPageCache defaultInstance;
+
+    private final File dir;
+    private final long sizeLimit;
+    /** Negative until cache directory is scanned */
+    private long totalSize = -1L;
+
+    public OptimizedPageCache(File dir, long sizeLimit) {
+        this.dir = dir;
+        this.sizeLimit = sizeLimit;
+    }
+
+    /** @return cache located in the application's data directory */
+    public static synchronized OptimizedPageCache getDefault() {
+        if (defaultInstance == null) {
+            File dir = Gdx.files.external(AppConstants.APP_DATA_DIR + "/" + DIR_NAME).file();
+            defaultInstance = new OptimizedPageCache(dir, DEFAULT_SIZE_LIMIT);
+        }
+        return defaultInstance;
+    }
+
+    /** @param compressorKey identifies compressor and all of its settings that affect the output */
+    public static String computeKey(byte[] pageBytes, String compressorKey) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Should never happen, every JVM implementation is required to support SHA-256
+            throw new RuntimeException(e);
+        }
+        digest.update(String.valueOf(FORMAT_VERSION).getBytes(UTF_8));
+        digest.update((byte) '\n');
+        digest.update(compressorKey.getBytes(UTF_8));
+        digest.update((byte) '\n');
+        digest.update(pageBytes);
+
+        byte[] hash = digest.digest();
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /** @return null if there is no such page in cache */
+    public byte[] get(String key) {
+        File file = getFile(key);
+        if (!file.isFile()) return null;
+
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            // Mark as recently used
+            file.setLastModified(System.currentTimeMillis());
+            return bytes;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void put(String key, byte[] bytes) {
+        File file = getFile(key);
+        if (file.isFile()) return;
+
+        File tmpFile = new File(dir, key + ".tmp" + Thread.currentThread().getId());
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) return;
+
+            Files.write(tmpFile.toPath(), bytes);
+            // Readers never see partially written pages
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            tmpFile.delete();
+            return;
+        }
+        onPageAdded(bytes.length);
+    }
+
+    /**
+     * Removes all the cached pages
+     * @return number of bytes freed
+     */
+    public synchronized long clear() {
+        long freedSize = 0L;
+        for (File file : listPages()) {
+            long size = file.length();
+            if (file.delete()) {
+                freedSize += size;
+            }
+        }
+        totalSize = -1L;
+        return freedSize;
+    }
+
+    private synchronized void onPageAdded(long size) {
+        if (totalSize < 0L) {
+            // Includes the page we've just added
+            totalSize = 0L;
+            for (File file : listPages()) {
+                totalSize += file.length();
+            }
+        } else {
+            totalSize += size;
+        }
+
+        if (totalSize > sizeLimit) {
+            evict();
+        }
+    }
+
+    private void evict() {
+        File[] files = listPages();
+        // File times may be changed by other threads while sorting, so take a snapshot
+        CachedPage[] pages = new CachedPage[files.length];
+        totalSize = 0L;
+        for (int i = 0; i < files.length; i++) {
+            pages[i] = new CachedPage(files[i]);
+            totalSize += pages[i].size;
+        }
+        Arrays.sort(pages, new Comparator<CachedPage>() {
+            @Override
+            public int compare(CachedPage page0, CachedPage page1) {
+                return page0.lastUsed < page1.lastUsed ? -1 : (page0.lastUsed == page1.lastUsed ? 0 : 1);
+            }
+        });
+
+        long targetSize = (long) (sizeLimit * EVICTION_TARGET);
+        for (int i = 0; i < pages.length && totalSize > targetSize; i++) {
+            if (pages[i].file.delete()) {
+                totalSize -= pages[i].size;
+            }
+        }
+    }
+
+    private File[] listPages() {
+        File[] files = dir.listFiles();
+        if (files == null) return new File[0];
+
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(FILE_SUFFIX)) {
+                files[count++] = file;
+            }
+        }
+        return Arrays.copyOf(files, count);
+    }
+
+    private File getFile(String key) {
+        return new File(dir, key + FILE_SUFFIX);
+    }
+
+    private static class CachedPage {
+        final File file;
+        final long size;
+        final long lastUsed;
+
+        CachedPage(File file) {
+            this.file = file;
+            this.size = file.length();
+            this.lastUsed = file.lastModified();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.crashinvaders.texturepackergui.utils.packprocessing;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import com.badlogic.gdx.utils.JsonWriter;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Comparator;
+
+/**
+ * Per project record of how long every pack took at every processing stage.
+ * Used to start the longest packs first, so a huge pack at the end of the list doesn't stretch the whole run.
+ * Durations of packs that were processed with other stages are estimated from the size of their input files,
+ * as it was recorded by the last run. Packs that have never been processed are estimated from their input files,
+ * which are scanned for that, so ordering should not happen on the main thread.
+ * <p/>
+ * History is stored next to the project file. Projects that are not saved yet keep it in memory only.
+ */
+public class PackDurationHistory {
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_PREFIX = ".";
+    private static final String FILE_SUFFIX = ".tphistory";
+
+    /** May be null */
+    private final FileHandle file;
+    private final ObjectMap<String, PackRecord> records = new ObjectMap<>();
+    private boolean modified;
+
+    private PackDurationHistory(FileHandle file) {
+        this.file = file;
+    }
+
+    /** @return empty history if project has no stored one or it can't be read */
+    public static PackDurationHistory load(ProjectModel project) {
+        FileHandle projectFile = project.getProjectFile();
+        FileHandle file = null;
+        if (projectFile != null) {
+            file = projectFile.sibling(FILE_PREFIX + projectFile.name() + FILE_SUFFIX);
+        }
+
+        PackDurationHistory history = new PackDurationHistory(file);
+        if (file != null && file.exists()) {
+            try {
+                history.read(new JsonReader().parse(file.readString("UTF-8")));
+            } catch (Exception e) {
+                e.printStackTrace();
+                history.records.clear();
+            }
+        }
+        return history;
+    }
+
+    /** Writes history if there are new records. Does nothing for projects that are not saved yet. */
+    public synchronized void save() {
+        if (file == null || !modified) return;
+
+        try {
+            file.writeString(serialize(), false, "UTF-8");
+            modified = false;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * May be called from any thread
+     * @param inputBytes size of the pack's input files, as it was scanned by the first stage (see {@link StageMetrics#getInputBytes()})
+     */
+    public synchronized void record(PackModel pack, String stage, long durationMillis, long inputBytes) {
+        String key = getKey(pack);
+        PackRecord record = records.get(key);
+        if (record == null) {
+            record = new PackRecord();
+            records.put(key, record);
+        }
+        record.inputBytes = inputBytes;
+
+        // Smooth out occasional spikes (e.g. system was busy with something else)
+        Long prevDuration = record.stageDurations.get(stage);
+        long duration = prevDuration == null ? durationMillis : (prevDuration + durationMillis) / 2;
+        record.stageDurations.put(stage, duration);
+        modified = true;
+    }
+
+    /**
+     * @param stages names of the stages pack is going to be processed with
+     * @return expected processing duration in milliseconds, or -1 if the pack has never been processed
+     */
+    public synchronized long estimate(PackModel pack, Array<String> stages) {
+        PackRecord record = records.get(getKey(pack));
+        if (record == null) return -1L;
+
+        long estimation = 0L;
+        for (String stage : stages) {
+            Long duration = record.stageDurations.get(stage);
+            if (duration != null) {
+                estimation += duration;
+                continue;
+            }
+            float rate = getStageRate(stage);
+            if (rate >= 0f) {
+                estimation += (long) (record.inputBytes * rate);
+            }
+        }
+        return estimation;
+    }
+
+    /**
+     * Sorts packs by expected processing duration, the longest go first. Order of equal packs is preserved.
+     * Packs that have never been processed are estimated from the size of their input images, those are scanned here.
+     * If there are no durations to compare the size with, they are expected to take an average time of the others.
+     * <p/>
+     * WARNING: blocking call, use separate thread
+     */
+    public void sortLongestFirst(Array<PackModel> packs, Array<String> stages) {
+        final ObjectMap<PackModel, Long> estimations = new ObjectMap<>();
+        Array<PackModel> unseenPacks = new Array<>();
+        long totalEstimation = 0L;
+        for (PackModel pack : packs) {
+            long estimation = estimate(pack, stages);
+            if (estimation < 0L) {
+                unseenPacks.add(pack);
+                continue;
+            }
+            estimations.put(pack, estimation);
+            totalEstimation += estimation;
+        }
+        long averageEstimation = estimations.size > 0 ? totalEstimation / estimations.size : 0L;
+        // With no history at all, sizes can only be compared with each other, which is enough for ordering
+        boolean sizeOnly = estimations.size == 0;
+        for (PackModel pack : unseenPacks) {
+            long inputBytes = scanInputBytes(pack);
+            long estimation = sizeOnly ? inputBytes : estimateBySize(inputBytes, stages);
+            estimations.put(pack, estimation >= 0L ? estimation : averageEstimation);
+        }
+        // Array#sort is stable (TimSort)
+        packs.sort(new Comparator<PackModel>() {
+            @Override
+            public int compare(PackModel pack0, PackModel pack1) {
+                long estimation0 = estimations.get(pack0);
+                long estimation1 = estimations.get(pack1);
+                return estimation0 < estimation1 ? 1 : (estimation0 == estimation1 ? 0 : -1);
+            }
+        });
+    }
+
+    /** @return expected processing duration in milliseconds, or -1 if none of the stages has data to compare the size with */
+    private synchronized long estimateBySize(long inputBytes, Array<String> stages) {
+        long estimation = -1L;
+        for (String stage : stages) {
+            float rate = getStageRate(stage);
+            if (rate >= 0f) {
+                estimation = Math.max(estimation, 0L) + (long) (inputBytes * rate);
+            }
+        }
+        return estimation;
+    }
+
+    /** @return total size of the images TexturePacker would take from the pack's input dir */
+    private static long scanInputBytes(PackModel pack) {
+        String inputDir = pack.getInputDir();
+        if (inputDir == null || inputDir.trim().isEmpty()) return 0L;
+        return scanInputBytes(new File(inputDir));
+    }
+
+    private static long scanInputBytes(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) return 0L;
+
+        long inputBytes = 0L;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                inputBytes += scanInputBytes(file);
+            } else if (PackFiles.isInputImage(file.getName())) {
+                inputBytes += file.length();
+            }
+        }
+        return inputBytes;
+    }
+
+    /** @return average milliseconds per input byte for the stage, or -1 if there is no data for it */
+    private float getStageRate(String stage) {
+        long totalDuration = 0L;
+        long totalBytes = 0L;
+        for (PackRecord record : records.values()) {
+            Long duration = record.stageDurations.get(stage);
+            if (duration == null || record.inputBytes <= 0L) continue;
+
+            totalDuration += duration;
+            totalBytes += record.inputBytes;
+        }
+        if (totalBytes == 0L) return -1f;
+        return totalDuration / (float) totalBytes;
+    }
+
+    /** Packs are identified by their output, it's unique within a project */
+    private static String getKey(PackModel pack) {
+        String atlasPath = pack.getAtlasPath();
+        return atlasPath != null ? atlasPath : pack.getCanonicalName();
+    }
+
+    private void read(JsonValue jsonValue) {
+        if (jsonValue.getInt("version", -1) != FORMAT_VERSION) return;
+
+        JsonValue packs = jsonValue.get("packs");
+        if (packs == null) return;
+
+        for (JsonValue pack = packs.child; pack != null; pack = pack.next) {
+            PackRecord record = new PackRecord();
+            record.inputBytes = pack.getLong("inputBytes", 0L);
+            JsonValue stages = pack.get("stages");
+            if (stages != null) {
+                for (JsonValue stage = stages.child; stage != null; stage = stage.next) {
+                    record.stageDurations.put(stage.name, stage.asLong());
+                }
+            }
+            records.put(pack.name, record);
+        }
+    }
+
+    private String serialize() {
+        StringWriter buffer = new StringWriter();
+        try {
+            Json json = new Json();
+            json.setWriter(new JsonWriter(buffer));
+            json.writeObjectStart();
+            json.writeValue("version", FORMAT_VERSION);
+            json.writeObjectStart("packs");
+            for (ObjectMap.Entry<String, PackRecord> entry : records) {
+                json.writeObjectStart(entry.key);
+                json.writeValue("inputBytes", entry.value.inputBytes);
+                json.writeObjectStart("stages");
+                for (ObjectMap.Entry<String, Long> stage : entry.value.stageDurations) {
+                    json.writeValue(stage.key, stage.value);
+                }
+                json.writeObjectEnd();
+                json.writeObjectEnd();
+            }
+            json.writeObjectEnd();
+            json.writeObjectEnd();
+            return buffer.toString();
+        } finally {
+            StreamUtils.closeQuietly(buffer);
+        }
+    }
+
+    private static class PackRecord {
+        long inputBytes;
+        /** Stage name mapped to its duration in milliseconds */
+        final ObjectMap<String, Long> stageDurations = new ObjectMap<>();
+    }
+}
@@ -0,0 +1,65 @@
+package com.crashinvaders.texturepackergui.utils.packprocessing;
+
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/** Rules telling which files of a pack's input directory TexturePacker consumes and which are pack's own output */
+public class PackFiles {
+    /** Per directory settings file of TexturePacker */
+    public static final String SETTINGS_FILENAME = "pack.json";
+
+    private PackFiles() {
+    }
+
+    /** @return true for the files TexturePacker packs as images */
+    public static boolean isInputImage(String filename) {
+        String name = filename.toLowerCase(Locale.ENGLISH);
+        return name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg");
+    }
+
+    /** @return true for the files TexturePacker reads (images and per directory settings) */
+    public static boolean isPackerInput(String filename) {
+        return isInputImage(filename) || filename.equals(SETTINGS_FILENAME);
+    }
+
+    /**
+     * Output files may be located inside the input directory, this tells them apart from the input files.
+     * @param inputDir  absolute normalized path (see {@link #toPath(String)})
+     * @param outputDir absolute normalized path (see {@link #toPath(String)})
+     * @param path      absolute normalized path of a file inside the input directory
+     */
+    public static boolean isOutputFile(PackModel pack, Path inputDir, Path outputDir, Path path) {
+        if (!outputDir.equals(inputDir) && outputDir.startsWith(inputDir)) {
+            // Dedicated output subdirectory
+            return path.startsWith(outputDir);
+        }
+        if (!outputDir.equals(path.getParent())) return false;
+
+        // Atlas file, its hidden sidecar files (".name.atlas.tpmanifest", ...), its pages ("name.png", "name2.png", ...),
+        // previous pages moved aside during packing (".name.png.tpprev") and ETC copies of the pages. Anything else is an input file, even if its name starts with the same base name (e.g. "name_button.png")
+        String filename = pack.getCanonicalFilename();
+        String pathName = path.getFileName().toString();
+        if (pathName.equals(filename) || pathName.startsWith("." + filename + ".")) return true;
+
+        int extIndex = filename.lastIndexOf('.');
+        String baseName = extIndex > 0 ? filename.substring(0, extIndex) : filename;
+        String pageExtension = Pattern.quote(pack.getSettings().outputFormat);
+        return pathName.matches("\\.?" + Pattern.quote(baseName) + "\\d*\\." + pageExtension + "(\\.tpprev)?") ||
+                pathName.matches(Pattern.quote(baseName) + "\\d*(_alpha)?\\.z?ktx");
+    }
+
+    /** @return absolute normalized path, or null if path is not specified or invalid */
+    public static Path toPath(String path) {
+        if (path == null || path.trim().isEmpty()) return null;
+        try {
+            return Paths.get(path).toAbsolutePath().normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+}
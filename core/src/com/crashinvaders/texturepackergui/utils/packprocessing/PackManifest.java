@@ -0,0 +1,229 @@
+package com.crashinvaders.texturepackergui.utils.packprocessing;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import com.badlogic.gdx.utils.JsonWriter;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.crashinvaders.texturepackergui.services.model.EtcOutputModel;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.services.model.compression.PngCompressionModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Fingerprint of everything that affects pack's output (input files, pack settings, png compression and ETC output state).
+ * Manifest is stored next to the pack's atlas file and is used to skip processing of packs that are up to date.
+ */
+public class PackManifest {
+    private static final int FORMAT_VERSION = 2;
+    private static final String FILE_PREFIX = ".";
+    private static final String FILE_SUFFIX = ".tpmanifest";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String fingerprint;
+    /** Output file name mapped to its "length:lastModified" state */
+    private final ObjectMap<String, String> outputs = new ObjectMap<>();
+
+    private PackManifest(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @param fingerprint of the state the pack is going to be processed from (see {@link #computeFingerprint(ProjectModel, PackModel)})
+     * @return true if pack's output files were produced from the same inputs and settings and weren't modified since
+     */
+    public static boolean isUpToDate(PackModel pack, String fingerprint) {
+        FileHandle manifestFile = getManifestFile(pack);
+        if (manifestFile == null || !manifestFile.exists()) return false;
+
+        try {
+            PackManifest stored = read(manifestFile);
+            if (stored == null) return false;
+            if (!stored.fingerprint.equals(fingerprint)) return false;
+
+            FileHandle outputDir = manifestFile.parent();
+            for (ObjectMap.Entry<String, String> entry : stored.outputs) {
+                File file = outputDir.child(entry.key).file();
+                if (!file.isFile() || !entry.value.equals(fileState(file))) return false;
+            }
+            return stored.outputs.size > 0;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Writes manifest for the pack's output. Should be called once pack has been successfully processed.
+     * @param fingerprint the one pack was checked with before processing. Inputs that changed during processing
+     *                    are not reflected in the output, so the next run will not consider such pack as up to date.
+     */
+    public static void store(PackModel pack, String fingerprint) throws IOException {
+        FileHandle manifestFile = getManifestFile(pack);
+        if (manifestFile == null) return;
+
+        PackManifest manifest = new PackManifest(fingerprint);
+
+        FileHandle atlasFile = manifestFile.parent().child(pack.getCanonicalFilename());
+        if (!atlasFile.exists()) return;
+
+        manifest.putOutput(atlasFile.file());
+        TextureAtlas.TextureAtlasData atlasData = new TextureAtlas.TextureAtlasData(atlasFile, atlasFile.parent(), false);
+        for (TextureAtlas.TextureAtlasData.Page page : atlasData.getPages()) {
+            manifest.putOutput(page.textureFile.file());
+        }
+
+        manifestFile.writeString(manifest.serialize(), false, "UTF-8");
+    }
+
+    /** Removes stored manifest, so the next processing run will not consider pack as up to date */
+    public static void invalidate(PackModel pack) {
+        FileHandle manifestFile = getManifestFile(pack);
+        if (manifestFile != null && manifestFile.exists()) {
+            manifestFile.delete();
+        }
+    }
+
+    /** @return may be null */
+    private static FileHandle getManifestFile(PackModel pack) {
+        String outputDir = pack.getOutputDir();
+        if (outputDir == null || outputDir.trim().isEmpty()) return null;
+
+        return new FileHandle(new File(outputDir, FILE_PREFIX + pack.getCanonicalFilename() + FILE_SUFFIX));
+    }
+
+    /** @throws IOException if pack's input directory doesn't exist or can't be read */
+    public static String computeFingerprint(ProjectModel project, PackModel pack) throws IOException {
+        MessageDigest digest = createDigest();
+
+        update(digest, "version", String.valueOf(FORMAT_VERSION));
+        update(digest, "filename", pack.getCanonicalFilename());
+        update(digest, "output", pack.getOutputDir());
+        update(digest, "settings", new Json().toJson(pack.getSettings()));
+
+        PngCompressionModel pngCompression = project.getPngCompression();
+        if (pngCompression != null) {
+            update(digest, "pngCompressionType", pngCompression.getType().key);
+            update(digest, "pngCompressionData", pngCompression.serializeState());
+        }
+
+        EtcOutputModel etcOutput = project.getEtcOutput();
+        if (etcOutput != null) {
+            update(digest, "etcOutputFormat", etcOutput.getFormat().key);
+            update(digest, "etcOutputData", etcOutput.serializeState());
+        }
+
+        File inputDir = new File(pack.getInputDir());
+        if (!inputDir.isDirectory()) {
+            throw new IOException("Input directory doesn't exist: " + pack.getInputDir());
+        }
+        Path inputPath = PackFiles.toPath(pack.getInputDir());
+        updateWithDir(digest, pack, inputPath, PackFiles.toPath(pack.getOutputDir()), inputDir, "");
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Only the files TexturePacker consumes are taken into account.
+     * Pack's own output may be located inside the input directory and must not affect the fingerprint.
+     * @param outputPath may be null
+     */
+    private static void updateWithDir(MessageDigest digest, PackModel pack, Path inputPath, Path outputPath,
+                                      File dir, String relativePath) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) throw new IOException("Can't list files of " + dir.getAbsolutePath());
+
+        // Keep fingerprint independent from the file system listing order
+        Arrays.sort(files);
+        for (File file : files) {
+            if (outputPath != null && PackFiles.isOutputFile(pack, inputPath, outputPath, file.toPath().toAbsolutePath().normalize())) continue;
+
+            String path = relativePath + "/" + file.getName();
+            if (file.isDirectory()) {
+                updateWithDir(digest, pack, inputPath, outputPath, file, path);
+            } else if (PackFiles.isPackerInput(file.getName())) {
+                update(digest, path, fileState(file));
+            }
+        }
+    }
+
+    private static void update(MessageDigest digest, String key, String value) {
+        digest.update(key.getBytes(UTF_8));
+        digest.update((byte) '=');
+        digest.update(String.valueOf(value).getBytes(UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    private static String fileState(File file) {
+        return file.length() + ":" + file.lastModified();
+    }
+
+    private void putOutput(File file) {
+        outputs.put(file.getName(), fileState(file));
+    }
+
+    private String serialize() {
+        StringWriter buffer = new StringWriter();
+        try {
+            Json json = new Json();
+            json.setWriter(new JsonWriter(buffer));
+            json.writeObjectStart();
+            json.writeValue("version", FORMAT_VERSION);
+            json.writeValue("fingerprint", fingerprint);
+            json.writeObjectStart("outputs");
+            for (ObjectMap.Entry<String, String> entry : outputs) {
+                json.writeValue(entry.key, entry.value);
+            }
+            json.writeObjectEnd();
+            json.writeObjectEnd();
+            return buffer.toString();
+        } finally {
+            StreamUtils.closeQuietly(buffer);
+        }
+    }
+
+    /** @return null if manifest was written by incompatible version */
+    private static PackManifest read(FileHandle file) {
+        JsonValue jsonValue = new JsonReader().parse(file.readString("UTF-8"));
+        if (jsonValue.getInt("version", -1) != FORMAT_VERSION) return null;
+
+        PackManifest manifest = new PackManifest(jsonValue.getString("fingerprint"));
+        JsonValue outputs = jsonValue.get("outputs");
+        if (outputs != null) {
+            for (JsonValue output = outputs.child; output != null; output = output.next) {
+                manifest.outputs.put(output.name, output.asString());
+            }
+        }
+        return manifest;
+    }
+
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Should never happen, every JVM implementation is required to support SHA-1
+            throw new RuntimeException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
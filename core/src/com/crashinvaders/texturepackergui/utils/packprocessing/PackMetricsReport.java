@@ -0,0 +1,231 @@
+package com.crashinvaders.texturepackergui.utils.packprocessing;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import com.badlogic.gdx.utils.JsonWriter;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+
+import java.io.StringWriter;
+
+/**
+ * Stage metrics of the packs of a processing run.
+ * Exported as "&lt;project&gt;.report.json" and "&lt;project&gt;.report.csv" next to the project file.
+ * <p/>
+ * Runs of a part of the packs are merged into the existing report by the pack name,
+ * so the report always holds the last known metrics of every pack of the project.
+ */
+public class PackMetricsReport {
+    public static final String STATUS_SUCCESS = "success";
+    public static final String STATUS_ERROR = "error";
+    public static final String STATUS_UP_TO_DATE = "up-to-date";
+    public static final String STATUS_CANCELLED = "cancelled";
+
+    private static final String CSV_HEADER = "pack,status,stage,wall_ms,cpu_ms,input_images,input_bytes,pages,output_bytes,peak_heap_delta_bytes";
+
+    /** May be null */
+    private final FileHandle projectFile;
+    /** Packs of the project, entries of the other packs are dropped from the existing report */
+    private final ObjectSet<String> packNames = new ObjectSet<>();
+    private final Array<PackEntry> entries = new Array<>();
+
+    /** Report of a project that is not saved yet is not exported anywhere */
+    public PackMetricsReport(ProjectModel project) {
+        this.projectFile = project.getProjectFile();
+        for (PackModel pack : project.getPacks()) {
+            packNames.add(pack.getCanonicalName());
+        }
+    }
+
+    /**
+     * May be called from any thread
+     * @param stageMetrics may be null
+     */
+    public synchronized void addPack(PackModel pack, String status, Array<StageMetrics> stageMetrics) {
+        PackEntry entry = new PackEntry(pack.getCanonicalName(), status);
+        if (stageMetrics != null) {
+            for (StageMetrics metrics : stageMetrics) {
+                entry.stages.add(new StageEntry(metrics));
+            }
+        }
+        entries.add(entry);
+    }
+
+    /** Writes JSON and CSV reports, errors are printed and otherwise ignored */
+    public synchronized void save() {
+        if (projectFile == null) return;
+
+        String baseName = projectFile.nameWithoutExtension();
+        FileHandle jsonFile = projectFile.sibling(baseName + ".report.json");
+        try {
+            Array<PackEntry> mergedEntries = merge(readEntries(jsonFile), entries);
+            jsonFile.writeString(toJson(mergedEntries), false, "UTF-8");
+            projectFile.sibling(baseName + ".report.csv").writeString(toCsv(mergedEntries), false, "UTF-8");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Packs of the run replace their previous entries in place, the new ones go to the end */
+    private Array<PackEntry> merge(Array<PackEntry> existingEntries, Array<PackEntry> runEntries) {
+        Array<PackEntry> result = new Array<>();
+        ObjectSet<String> mergedNames = new ObjectSet<>();
+        for (PackEntry existingEntry : existingEntries) {
+            if (!packNames.contains(existingEntry.name) || !mergedNames.add(existingEntry.name)) continue;
+
+            PackEntry replacement = existingEntry;
+            for (PackEntry runEntry : runEntries) {
+                if (runEntry.name.equals(existingEntry.name)) {
+                    replacement = runEntry;
+                    break;
+                }
+            }
+            result.add(replacement);
+        }
+        for (PackEntry runEntry : runEntries) {
+            if (mergedNames.add(runEntry.name)) {
+                result.add(runEntry);
+            }
+        }
+        return result;
+    }
+
+    /** @return entries of the existing report, empty if there is none or it can't be read */
+    private static Array<PackEntry> readEntries(FileHandle jsonFile) {
+        Array<PackEntry> result = new Array<>();
+        if (!jsonFile.exists()) return result;
+
+        try {
+            JsonValue packs = new JsonReader().parse(jsonFile.readString("UTF-8")).get("packs");
+            if (packs == null) return result;
+
+            for (JsonValue pack = packs.child; pack != null; pack = pack.next) {
+                PackEntry entry = new PackEntry(pack.getString("name"), pack.getString("status", ""));
+                JsonValue stages = pack.get("stages");
+                if (stages != null) {
+                    for (JsonValue stage = stages.child; stage != null; stage = stage.next) {
+                        entry.stages.add(new StageEntry(stage));
+                    }
+                }
+                result.add(entry);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            result.clear();
+        }
+        return result;
+    }
+
+    private static String toJson(Array<PackEntry> entries) {
+        StringWriter buffer = new StringWriter();
+        try {
+            Json json = new Json(JsonWriter.OutputType.json);
+            json.setWriter(new JsonWriter(buffer));
+            json.writeObjectStart();
+            json.writeArrayStart("packs");
+            for (PackEntry entry : entries) {
+                json.writeObjectStart();
+                json.writeValue("name", entry.name);
+                json.writeValue("status", entry.status);
+                json.writeArrayStart("stages");
+                for (StageEntry stage : entry.stages) {
+                    json.writeObjectStart();
+                    json.writeValue("stage", stage.stage);
+                    json.writeValue("wallMillis", stage.wallMillis);
+                    json.writeValue("cpuMillis", stage.cpuMillis);
+                    json.writeValue("inputImages", stage.inputImages);
+                    json.writeValue("inputBytes", stage.inputBytes);
+                    json.writeValue("pages", stage.pages);
+                    json.writeValue("outputBytes", stage.outputBytes);
+                    json.writeValue("peakHeapDeltaBytes", stage.peakHeapDelta);
+                    json.writeObjectEnd();
+                }
+                json.writeArrayEnd();
+                json.writeObjectEnd();
+            }
+            json.writeArrayEnd();
+            json.writeObjectEnd();
+            return buffer.toString();
+        } finally {
+            StreamUtils.closeQuietly(buffer);
+        }
+    }
+
+    private static String toCsv(Array<PackEntry> entries) {
+        StringBuilder sb = new StringBuilder(CSV_HEADER).append("\n");
+        for (PackEntry entry : entries) {
+            if (entry.stages.size == 0) {
+                sb.append(csvEscape(entry.name)).append(",").append(entry.status).append(",,,,,,,,\n");
+                continue;
+            }
+            for (StageEntry stage : entry.stages) {
+                sb.append(csvEscape(entry.name)).append(",")
+                        .append(entry.status).append(",")
+                        .append(csvEscape(stage.stage)).append(",")
+                        .append(stage.wallMillis).append(",")
+                        .append(stage.cpuMillis).append(",")
+                        .append(stage.inputImages).append(",")
+                        .append(stage.inputBytes).append(",")
+                        .append(stage.pages).append(",")
+                        .append(stage.outputBytes).append(",")
+                        .append(stage.peakHeapDelta).append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String csvEscape(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static class PackEntry {
+        final String name;
+        final String status;
+        final Array<StageEntry> stages = new Array<>();
+
+        PackEntry(String name, String status) {
+            this.name = name;
+            this.status = status;
+        }
+    }
+
+    /** Values of {@link StageMetrics}, the entries of the existing report are read back into them */
+    private static class StageEntry {
+        final String stage;
+        final long wallMillis;
+        final long cpuMillis;
+        final int inputImages;
+        final long inputBytes;
+        final int pages;
+        final long outputBytes;
+        final long peakHeapDelta;
+
+        StageEntry(StageMetrics metrics) {
+            stage = metrics.getStage();
+            wallMillis = metrics.getWallMillis();
+            cpuMillis = metrics.getCpuMillis();
+            inputImages = metrics.getInputImages();
+            inputBytes = metrics.getInputBytes();
+            pages = metrics.getPages();
+            outputBytes = metrics.getOutputBytes();
+            peakHeapDelta = metrics.getPeakHeapDelta();
+        }
+
+        StageEntry(JsonValue json) {
+            stage = json.getString("stage", "");
+            wallMillis = json.getLong("wallMillis", 0L);
+            cpuMillis = json.getLong("cpuMillis", 0L);
+            inputImages = json.getInt("inputImages", 0);
+            inputBytes = json.getLong("inputBytes", 0L);
+            pages = json.getInt("pages", 0);
+            outputBytes = json.getLong("outputBytes", 0L);
+            peakHeapDelta = json.getLong("peakHeapDeltaBytes", 0L);
+        }
+    }
+}
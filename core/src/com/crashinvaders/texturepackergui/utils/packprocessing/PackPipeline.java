@@ -0,0 +1,82 @@
+package com.crashinvaders.texturepackergui.utils.packprocessing;
+
+import com.badlogic.gdx.utils.Array;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Ordered list of processing stages. Every stage has its own executor, so once a pack leaves the stage,
+ * the stage's workers are free to process the next pack (e.g. packing of one pack overlaps with compression of another).
+ */
+public class PackPipeline {
+
+    private final Array<Stage> stages = new Array<>(true, 4);
+
+    /**
+     * @param executor is not owned by the pipeline. If it has a bounded queue,
+     *                 it's expected to block submitters when the queue is full (see {@link #BLOCKING_SUBMIT}).
+     */
+    public PackPipeline addStage(String name, PackProcessor processor, ExecutorService executor) {
+        stages.add(new Stage(name, processor, executor));
+        return this;
+    }
+
+    public Array<Stage> getStages() {
+        return stages;
+    }
+
+    /**
+     * Makes previous stage's worker wait for a free slot in the full queue instead of rejecting the pack.
+     * That way slow stage throttles the faster ones before it.
+     */
+    public static final ThreadPoolExecutor.AbortPolicy BLOCKING_SUBMIT = new ThreadPoolExecutor.AbortPolicy() {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                super.rejectedExecution(runnable, executor);
+                return;
+            }
+            try {
+                executor.getQueue().put(runnable);
+                // Queued directly, so make sure there is a worker to pick it up
+                executor.prestartCoreThread();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                super.rejectedExecution(runnable, executor);
+            }
+        }
+    };
+
+    public static class Stage {
+        private final String name;
+        private final PackProcessor processor;
+        private final ExecutorService executor;
+
+        Stage(String name, PackProcessor processor, ExecutorService executor) {
+            this.name = name;
+            this.processor = processor;
+            this.executor = executor;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public PackProcessor getProcessor() {
+            return processor;
+        }
+
+        public ExecutorService getExecutor() {
+            return executor;
+        }
+
+        /** @return number of packs waiting for this stage, or -1 if executor doesn't expose its queue */
+        public int getQueueDepth() {
+            if (executor instanceof ThreadPoolExecutor) {
+                return ((ThreadPoolExecutor) executor).getQueue().size();
+            }
+            return -1;
+        }
+    }
+}
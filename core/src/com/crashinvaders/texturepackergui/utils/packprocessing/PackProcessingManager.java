@@ -7,28 +7,63 @@ import com.crashinvaders.texturepackergui.services.model.PackModel;
 import com.crashinvaders.texturepackergui.services.model.ProjectModel;
 import com.crashinvaders.texturepackergui.utils.CommonUtils;
 import com.crashinvaders.texturepackergui.utils.ThreadPrintStream;
-import org.apache.commons.io.IOUtils;
 
 import java.io.ByteArrayOutputStream;
-import java.io.FileDescriptor;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PackProcessingManager {
 
     private final Array<PackModel> packModels = new Array<>();
-    private final PackProcessor processor;
-    private final SyncListener listener;
-    private final ExecutorService executorService;
+    private final PackPipeline pipeline;
+    private final Listener listener;
+    /** Packs that are not finished yet */
+    private final ObjectMap<PackModel, PackRun> packRuns = new ObjectMap<>();
+    private final Array<StageStats> stageStats = new Array<>();
+
+    /** Packs in the order they are submitted once the manager starts */
+    private final Array<PackRun> startOrder = new Array<>();
+
+    /** Lazily created on the first use and shared by all the managers */
+    private static ScheduledExecutorService scheduler;
+    /** Managers that wait for {@link #activeManager} to finish */
+    private static final Array<PackProcessingManager> managerQueue = new Array<>();
+    private static PackProcessingManager activeManager;
 
     private boolean processing;
+    private boolean forceRepack;
+    private long timeBudgetMillis;
+    private PackDurationHistory durationHistory;
+    private PackMetricsReport metricsReport;
+    private long startTime;
+    private long finishTime;
+
+    /**
+     * Single stage processing.
+     * @param listener is notified from worker threads, use {@link SyncListener} to receive events on the main thread
+     * @param executorService is not owned by the manager and will not be shut down once processing is finished
+     */
+    public PackProcessingManager(PackProcessor processor, Listener listener, ExecutorService executorService) {
+        this(new PackPipeline().addStage("processing", processor, executorService), listener);
+    }
+
+    /**
+     * @param listener is notified from worker threads, use {@link SyncListener} to receive events on the main thread
+     */
+    public PackProcessingManager(PackPipeline pipeline, Listener listener) {
+        if (pipeline.getStages().size == 0) throw new IllegalArgumentException("Pipeline has no stages");
+
+        this.pipeline = pipeline;
+        this.listener = listener;
 
-    public PackProcessingManager(PackProcessor processor, Listener listener) {
-        this.processor = processor;
-        this.listener = new SyncListener(listener);
-        this.executorService = Executors.newFixedThreadPool(4);
+        for (PackPipeline.Stage stage : pipeline.getStages()) {
+            stageStats.add(new StageStats(stage.getName()));
+        }
     }
 
     public void postPack(PackModel pack) {
@@ -38,58 +73,539 @@ public class PackProcessingManager {
         packModels.add(pack);
     }
 
+    /** @param forceRepack if true, packs will be processed even if their outputs are up to date */
+    public void setForceRepack(boolean forceRepack) {
+        this.forceRepack = forceRepack;
+    }
+
+    /**
+     * @param timeBudgetMillis max processing time for a single pack, packs that exceed it are interrupted and fail.
+     *                         Zero or negative value means no limit.
+     */
+    public void setTimeBudget(long timeBudgetMillis) {
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * @param durationHistory if set, packs are started in the longest expected first order
+     *                        and their stage durations are recorded to the history (which is saved once processing is finished)
+     */
+    public void setDurationHistory(PackDurationHistory durationHistory) {
+        this.durationHistory = durationHistory;
+    }
+
+    /** @param metricsReport if set, stage metrics of all the packs are added to the report, which is saved once processing is finished */
+    public void setMetricsReport(PackMetricsReport metricsReport) {
+        this.metricsReport = metricsReport;
+    }
+
+    /**
+     * Processing runs of different managers never overlap, as they may share the packs and their output directories.
+     * If another manager is processing at the moment, this one waits in the queue and starts once all the previous runs are finished.
+     */
     synchronized public void execute(final ProjectModel projectModel) {
         if (processing) throw new IllegalStateException("Already in processing stage");
 
         processing = true;
         listener.onProcessingStarted();
 
+        // Runs are registered right away, so the queued manager can be cancelled too.
+        // Iterate over a copy, finished packs are removed from the original array by worker threads.
+        for (final PackModel packModel : new Array<>(packModels)) {
+            PackRun packRun = new PackRun(projectModel, packModel);
+            synchronized (packRuns) {
+                packRuns.put(packModel, packRun);
+            }
+            startOrder.add(packRun);
+        }
+
+        synchronized (managerQueue) {
+            if (activeManager != null) {
+                managerQueue.add(this);
+                return;
+            }
+            activeManager = this;
+        }
+        start();
+    }
+
+    /** Submits all the packs to the pipeline */
+    private void start() {
+        startTime = System.currentTimeMillis();
         ThreadPrintStream.replaceSystemOut();
 
-        for (final PackModel packModel : packModels) {
-            executorService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    ObjectMap metadataMap = new ObjectMap();
-
-                    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                    ThreadPrintStream.setThreadLocalSystemOut(new PrintStream(outputStream));
-                    try {
-                        listener.onBegin(packModel);
-                        processor.processPackage(projectModel, packModel, metadataMap);
-                        listener.onSuccess(packModel, outputStream.toString(), metadataMap);
-                        packProcessed(packModel);
-                    } catch (Exception e) {
-                        String message = CommonUtils.fetchMessageStack(e);
-                        System.err.println("[output-red]Exception occurred:[] " + message);
-                        System.err.println("[output-red]Stack trace:[] ");
-                        e.printStackTrace();
-
-                        listener.onError(packModel, outputStream.toString(), metadataMap, e);
-                        packProcessed(packModel);
-                    } finally {
-                        IOUtils.closeQuietly(outputStream);
-                    }
-                }
-            });
+        if (startOrder.size == 0) {
+            finishProcessing();
+            return;
+        }
+        if (durationHistory == null) {
+            submitStartOrder();
+            return;
+        }
+
+        // Packs that have never been processed are estimated from their input files, so they are ordered off the main thread
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sortStartOrder();
+                submitStartOrder();
+            }
+        }, "pack-ordering");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Longest expected packs go first, so a huge pack at the end of the list doesn't stretch the whole run */
+    private void sortStartOrder() {
+        Array<String> stageNames = new Array<>();
+        for (PackPipeline.Stage stage : pipeline.getStages()) {
+            stageNames.add(stage.getName());
+        }
+        Array<PackModel> executionOrder = new Array<>();
+        ObjectMap<PackModel, PackRun> runs = new ObjectMap<>();
+        for (PackRun packRun : startOrder) {
+            executionOrder.add(packRun.packModel);
+            runs.put(packRun.packModel, packRun);
+        }
+
+        try {
+            durationHistory.sortLongestFirst(executionOrder, stageNames);
+        } catch (Exception e) {
+            // Order is just an optimization, packs are started as they were posted
+            e.printStackTrace();
+            return;
+        }
+        startOrder.clear();
+        for (PackModel packModel : executionOrder) {
+            startOrder.add(runs.get(packModel));
+        }
+    }
+
+    private void submitStartOrder() {
+        for (PackRun packRun : startOrder) {
+            packRun.submitStage(0);
+        }
+        startOrder.clear();
+    }
+
+    /**
+     * Stops processing of all the packs. Packs that are not started yet will not be processed at all,
+     * the running ones are interrupted and stop at the nearest stage or page boundary.
+     */
+    public void cancel() {
+        boolean dequeued;
+        synchronized (managerQueue) {
+            dequeued = managerQueue.removeValue(this, true);
+        }
+
+        Array<PackRun> runs;
+        synchronized (packRuns) {
+            runs = packRuns.values().toArray();
+        }
+        for (PackRun run : runs) {
+            run.cancel();
+        }
+
+        // Nothing will really be processed, all the packs are reported as cancelled without waiting for the active manager
+        if (dequeued) {
+            start();
+        }
+    }
+
+    /** @return per stage statistics of the current (or the last finished) processing run */
+    public Array<StageStats> getStageStats() {
+        return stageStats;
+    }
+
+    /** @return human readable statistics for all the stages, one line per stage */
+    public String getStageStatsSummary() {
+        long elapsedMillis = (processing ? System.currentTimeMillis() : finishTime) - startTime;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < stageStats.size; i++) {
+            StageStats stats = stageStats.get(i);
+            if (i > 0) sb.append("\n");
+            sb.append(String.format(Locale.US, "%s: %d pack(s), %.2f packs/s, busy %.2fs, queued %.2fs, max queue %d",
+                    stats.getName(),
+                    stats.getProcessedPacks(),
+                    stats.getThroughput(elapsedMillis),
+                    stats.getBusyMillis() / 1000f,
+                    stats.getQueuedMillis() / 1000f,
+                    stats.getMaxQueueDepth()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Cooperative cancellation point. Processors should call it between heavy operations.
+     * @throws InterruptedException if processing of the current pack has been cancelled
+     */
+    public static void checkCancelled() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException("Pack processing was cancelled");
         }
     }
 
     private void packProcessed(PackModel packModel) {
+        synchronized (packRuns) {
+            packRuns.remove(packModel);
+        }
         synchronized (packModels) {
             packModels.removeValue(packModel, true);
 
             if (packModels.size == 0) {
-                System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.out)));
-                System.setErr(new PrintStream(new FileOutputStream(FileDescriptor.err)));
+                finishProcessing();
+            }
+        }
+    }
+
+    private void finishProcessing() {
+        if (durationHistory != null) {
+            durationHistory.save();
+        }
+        if (metricsReport != null) {
+            metricsReport.save();
+        }
+        ThreadPrintStream.restoreSystemOut();
+
+        finishTime = System.currentTimeMillis();
+        processing = false;
+        listener.onProcessingFinished();
+
+        // Let the next queued manager in (a cancelled queued manager never was the active one)
+        PackProcessingManager nextManager = null;
+        synchronized (managerQueue) {
+            if (activeManager == this) {
+                activeManager = managerQueue.size > 0 ? managerQueue.removeIndex(0) : null;
+                nextManager = activeManager;
+            }
+        }
+        if (nextManager != null) {
+            nextManager.start();
+        }
+    }
+
+    /** Runs short housekeeping tasks (timeouts, metrics sampling) */
+    static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "pack-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+        }
+        return scheduler;
+    }
+
+    /** Processing state of a single pack, while it travels through the pipeline stages */
+    private class PackRun {
+        private final ProjectModel projectModel;
+        private final PackModel packModel;
+        private final ObjectMap metadataMap = new ObjectMap();
+        private final Array<StageMetrics> stageMetrics = new Array<>();
+        private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        private final PrintStream printStream = new PrintStream(outputStream);
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private volatile StageTask currentTask;
+        private volatile long stageSubmitTime;
+        private volatile boolean cancelled;
+        private volatile boolean timedOut;
+        private ScheduledFuture<?> timeout;
+        /** Taken once at the first stage, the manifest is stored for the state the pack was processed from. May be null. */
+        private volatile String fingerprint;
+
+        @SuppressWarnings("unchecked")
+        PackRun(ProjectModel projectModel, PackModel packModel) {
+            this.projectModel = projectModel;
+            this.packModel = packModel;
+            metadataMap.put(PackProcessor.META_STAGE_METRICS, stageMetrics);
+        }
+
+        void cancel() {
+            cancelled = true;
+            StageTask task = currentTask;
+            if (task != null) {
+                task.cancel(true);
+            }
+        }
+
+        void submitStage(int stageIndex) {
+            StageTask task = new StageTask(this, stageIndex);
+            currentTask = task;
+            stageSubmitTime = System.nanoTime();
+            // Pack may have been cancelled while we were switching the stages
+            if (cancelled) task.cancel(false);
+
+            PackPipeline.Stage stage = pipeline.getStages().get(stageIndex);
+            stageStats.get(stageIndex).updateQueueDepth(stage.getQueueDepth() + 1);
+            stage.getExecutor().execute(task);
+        }
+
+        /** Called from the stage's worker thread */
+        void processStage(int stageIndex) {
+            long queuedNanos = System.nanoTime() - stageSubmitTime;
+            PackPipeline.Stage stage = pipeline.getStages().get(stageIndex);
+            StageStats stats = stageStats.get(stageIndex);
+
+            PrintStream poolThreadOut = ThreadPrintStream.getThreadLocalSystemOut();
+            ThreadPrintStream.setThreadLocalSystemOut(printStream);
+            try {
+                if (stageIndex == 0) {
+                    startTimeout();
+                    listener.onBegin(packModel);
+                    checkRunCancelled();
+
+                    fingerprint = computeFingerprint();
+                    if (!forceRepack && fingerprint != null && PackManifest.isUpToDate(packModel, fingerprint)) {
+                        System.out.println("Pack is up to date, processing skipped");
+                        finishUpToDate();
+                        return;
+                    }
+                    PackManifest.invalidate(packModel);
+                }
+                checkRunCancelled();
 
-                processing = false;
-                listener.onProcessingFinished();
+                StageMetrics.Recorder metricsRecorder = new StageMetrics.Recorder(
+                        stage.getName(), packModel, stageMetrics.size > 0 ? stageMetrics.peek() : null);
+                long stageStartTime = System.nanoTime();
+                metricsRecorder.start();
+                try {
+                    stage.getProcessor().processPackage(projectModel, packModel, metadataMap);
+                } finally {
+                    StageMetrics metrics = metricsRecorder.finish(packModel,
+                            (PendingOutput) metadataMap.get(PackProcessor.META_PENDING_OUTPUT));
+                    stageMetrics.add(metrics);
+                    System.out.println(String.format(Locale.US, "Stage %s (%.2fs in queue)", metrics, queuedNanos / 1e9f));
+                }
+                long busyNanos = System.nanoTime() - stageStartTime;
+                stats.packProcessed(busyNanos, queuedNanos);
+                if (durationHistory != null) {
+                    // Only the first stage scans the input files, the others take the output of the previous one
+                    durationHistory.record(packModel, stage.getName(), TimeUnit.NANOSECONDS.toMillis(busyNanos),
+                            stageMetrics.first().getInputBytes());
+                }
+                checkRunCancelled();
+
+                if (stageIndex + 1 < pipeline.getStages().size) {
+                    submitStage(stageIndex + 1);
+                } else {
+                    writePendingOutput();
+                    if (fingerprint != null) {
+                        PackManifest.store(packModel, fingerprint);
+                    }
+                    finishSuccess();
+                }
+            } catch (Exception e) {
+                finishFailure(e);
+            } finally {
+                ThreadPrintStream.setThreadLocalSystemOut(poolThreadOut);
+                // Don't let cancellation interrupt leak to the next task of the worker thread
+                Thread.interrupted();
+            }
+        }
+
+        /** @return null if the fingerprint can't be computed, such pack is never considered up to date */
+        private String computeFingerprint() {
+            try {
+                return PackManifest.computeFingerprint(projectModel, packModel);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        private void checkRunCancelled() throws InterruptedException {
+            if (cancelled) throw new InterruptedException("Pack processing was cancelled");
+            checkCancelled();
+        }
+
+        /** Writes the files that stages have left in memory, nothing is written if there are none */
+        private void writePendingOutput() throws IOException {
+            PendingOutput pendingOutput = (PendingOutput) metadataMap.remove(PackProcessor.META_PENDING_OUTPUT);
+            if (pendingOutput != null) {
+                pendingOutput.writeAll();
+            }
+        }
+
+        /** Failed and cancelled packs should still leave the output in the same state as it was before the in-memory handoff */
+        private void writePendingOutputQuietly() {
+            try {
+                writePendingOutput();
+            } catch (IOException e) {
+                System.err.println("[output-red]Can't write pending output:[] " + e.getMessage());
+            }
+        }
+
+        private void startTimeout() {
+            if (timeBudgetMillis <= 0) return;
+
+            timeout = getScheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    timedOut = true;
+                    cancel();
+                }
+            }, timeBudgetMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private boolean markFinished() {
+            if (!finished.compareAndSet(false, true)) return false;
+
+            if (timeout != null) timeout.cancel(false);
+            return true;
+        }
+
+        private void addToReport(String status) {
+            if (metricsReport != null) {
+                metricsReport.addPack(packModel, status, stageMetrics);
+            }
+        }
+
+        private void finishSuccess() {
+            if (!markFinished()) return;
+            addToReport(PackMetricsReport.STATUS_SUCCESS);
+            listener.onSuccess(packModel, outputStream.toString(), metadataMap);
+            packProcessed(packModel);
+        }
+
+        private void finishUpToDate() {
+            if (!markFinished()) return;
+            addToReport(PackMetricsReport.STATUS_UP_TO_DATE);
+            listener.onUpToDate(packModel, outputStream.toString());
+            packProcessed(packModel);
+        }
+
+        /** May be called from any thread */
+        void finishCancelled() {
+            if (!markFinished()) return;
+            writePendingOutputQuietly();
+            addToReport(PackMetricsReport.STATUS_CANCELLED);
+            listener.onCancelled(packModel, outputStream.toString());
+            packProcessed(packModel);
+        }
+
+        private void finishFailure(Exception e) {
+            if (timedOut) {
+                e = new TimeoutException("Pack processing exceeded time budget of " + timeBudgetMillis + "ms");
+            } else if (cancelled) {
+                System.out.println("Processing was cancelled");
+                finishCancelled();
+                return;
+            }
+
+            String message = CommonUtils.fetchMessageStack(e);
+            System.err.println("[output-red]Exception occurred:[] " + message);
+            System.err.println("[output-red]Stack trace:[] ");
+            e.printStackTrace();
+
+            if (!markFinished()) return;
+            writePendingOutputQuietly();
+            addToReport(PackMetricsReport.STATUS_ERROR);
+            listener.onError(packModel, outputStream.toString(), metadataMap, e);
+            packProcessed(packModel);
+        }
+    }
+
+    /** Future handle of a single pipeline stage of the pack */
+    private class StageTask extends FutureTask<Void> {
+        private final PackRun packRun;
+        private final AtomicBoolean started;
+
+        StageTask(final PackRun packRun, final int stageIndex) {
+            this(packRun, stageIndex, new AtomicBoolean());
+        }
+
+        private StageTask(final PackRun packRun, final int stageIndex, final AtomicBoolean started) {
+            super(new Runnable() {
+                @Override
+                public void run() {
+                    started.set(true);
+                    packRun.processStage(stageIndex);
+                }
+            }, null);
+            this.packRun = packRun;
+            this.started = started;
+        }
+
+        @Override
+        public void run() {
+            super.run();
+            // Cancelled before the stage had a chance to start
+            if (!started.get()) {
+                packRun.finishCancelled();
+            }
+        }
+
+        @Override
+        protected void done() {
+            // Pending stage is reported right away, the running one reports itself
+            if (isCancelled() && !started.get()) {
+                packRun.finishCancelled();
             }
         }
     }
 
-    private static class SyncListener implements Listener {
+    /** Throughput and load of a single pipeline stage during processing run */
+    public static class StageStats {
+        private final String name;
+        private final AtomicInteger processedPacks = new AtomicInteger();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicLong queuedNanos = new AtomicLong();
+        private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+        StageStats(String name) {
+            this.name = name;
+        }
+
+        void packProcessed(long busyNanos, long queuedNanos) {
+            this.processedPacks.incrementAndGet();
+            this.busyNanos.addAndGet(busyNanos);
+            this.queuedNanos.addAndGet(queuedNanos);
+        }
+
+        void updateQueueDepth(int queueDepth) {
+            int max;
+            do {
+                max = maxQueueDepth.get();
+            } while (queueDepth > max && !maxQueueDepth.compareAndSet(max, queueDepth));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getProcessedPacks() {
+            return processedPacks.get();
+        }
+
+        /** @return total time stage workers spent processing packs */
+        public long getBusyMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(busyNanos.get());
+        }
+
+        /** @return total time packs spent waiting for a free stage worker */
+        public long getQueuedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(queuedNanos.get());
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth.get();
+        }
+
+        /** @return processed packs per second of the run time */
+        public float getThroughput(long elapsedMillis) {
+            if (elapsedMillis <= 0) return 0f;
+            return processedPacks.get() * 1000f / elapsedMillis;
+        }
+    }
+
+    /** Delivers all the events to the wrapped listener on the application's main thread */
+    public static class SyncListener implements Listener {
         private final Listener listener;
 
         public SyncListener(Listener listener) {
@@ -142,6 +658,24 @@ public class PackProcessingManager {
                 }
             });
         }
+        @Override
+        public void onUpToDate(final PackModel pack, final String log) {
+            Gdx.app.postRunnable(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onUpToDate(pack, log);
+                }
+            });
+        }
+        @Override
+        public void onCancelled(final PackModel pack, final String log) {
+            Gdx.app.postRunnable(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onCancelled(pack, log);
+                }
+            });
+        }
     }
 
     public interface Listener {
@@ -151,5 +685,9 @@ public class PackProcessingManager {
         void onBegin(PackModel pack);
         void onError(PackModel pack, String log, ObjectMap metadataMap, Exception e);
         void onSuccess(PackModel pack, String log, ObjectMap metadataMap);
+        /** Pack's inputs and settings haven't changed since the last successful processing */
+        void onUpToDate(PackModel pack, String log);
+        /** Processing was cancelled through {@link PackProcessingManager#cancel()} */
+        void onCancelled(PackModel pack, String log);
     }
 }
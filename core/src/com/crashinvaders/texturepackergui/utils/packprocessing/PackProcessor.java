@@ -6,6 +6,10 @@ import com.crashinvaders.texturepackergui.services.model.ProjectModel;
 
 public interface PackProcessor {
     String META_COMPRESSION_RATE = "compressionRate";
+    /** {@link com.badlogic.gdx.utils.Array} of {@link StageMetrics}, one per processed stage. Filled by {@link PackProcessingManager}. */
+    String META_STAGE_METRICS = "stageMetrics";
+    /** {@link PendingOutput} of the files that are passed in memory between stages, absent if there are none */
+    String META_PENDING_OUTPUT = "pendingOutput";
 
     void processPackage(ProjectModel projectModel, PackModel packModel, ObjectMap metadata) throws Exception;
 }
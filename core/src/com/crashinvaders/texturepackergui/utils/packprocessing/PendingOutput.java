@@ -0,0 +1,19 @@
+package com.crashinvaders.texturepackergui.utils.packprocessing;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Output files that a stage keeps in memory for the next stages instead of writing them right away.
+ * Stored in the pack's metadata under {@link PackProcessor#META_PENDING_OUTPUT}.
+ * <p/>
+ * Whatever is left when the pack leaves the pipeline (including failures and cancellation)
+ * is written by {@link PackProcessingManager}, so the output is never left incomplete.
+ */
+public interface PendingOutput {
+    /** @return size of the file content that is not written yet, or -1 if the file is not pending */
+    long getPendingSize(File file);
+
+    /** Writes all the pending files. May be called from any thread. */
+    void writeAll() throws IOException;
+}
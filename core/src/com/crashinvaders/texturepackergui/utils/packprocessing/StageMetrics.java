@@ -0,0 +1,233 @@
+package com.crashinvaders.texturepackergui.utils.packprocessing;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time and size figures of a single pipeline stage of a pack.
+ * Collected by {@link PackProcessingManager} and stored to the pack's metadata under {@link PackProcessor#META_STAGE_METRICS}.
+ * <p/>
+ * Stage inputs are the source images for the first stage and the previous stage's output for the rest.
+ * Heap usage is JVM wide, so it also includes memory taken by the packs that were processed at the same time.
+ */
+public class StageMetrics {
+    private static final long HEAP_SAMPLE_MILLIS = 20L;
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    /** CPU time of the helper threads (e.g. page optimizers) working on the current thread's stage */
+    private static final ThreadLocal<AtomicLong> helperCpuTime = new ThreadLocal<>();
+    private static final Set<Recorder> activeRecorders = Collections.newSetFromMap(new ConcurrentHashMap<Recorder, Boolean>());
+    private static ScheduledFuture<?> heapSampling;
+
+    private final String stage;
+    private long wallMillis;
+    private long cpuMillis;
+    private int inputImages;
+    private long inputBytes;
+    private int pages;
+    private long outputBytes;
+    private long peakHeapDelta;
+
+    StageMetrics(String stage) {
+        this.stage = stage;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    /** @return CPU time of the stage's worker and its helper threads, or -1 if JVM doesn't support CPU time measurement */
+    public long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    public int getInputImages() {
+        return inputImages;
+    }
+
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    /** @return total size of the atlas file and its pages once the stage is done */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    /** @return max heap growth since the stage's start */
+    public long getPeakHeapDelta() {
+        return peakHeapDelta;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: %.2fs wall, %s CPU, %d image(s) (%s) -> %d page(s) (%s), peak heap +%s",
+                stage,
+                wallMillis / 1000f,
+                cpuMillis < 0 ? "n/a" : String.format(Locale.US, "%.2fs", cpuMillis / 1000f),
+                inputImages, formatBytes(inputBytes),
+                pages, formatBytes(outputBytes),
+                formatBytes(peakHeapDelta));
+    }
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024L) return bytes + " B";
+        if (bytes < 1024L * 1024L) return String.format(Locale.US, "%.1f KB", bytes / 1024f);
+        return String.format(Locale.US, "%.1f MB", bytes / (1024f * 1024f));
+    }
+
+    /**
+     * Counter for the CPU time spent by helper threads on behalf of the calling thread's stage.
+     * Tasks that are offloaded to other threads should add their {@link #getCurrentThreadCpuNanos() CPU time} to it.
+     * @return null if the calling thread is not processing a stage
+     */
+    public static AtomicLong getHelperCpuTimeCounter() {
+        return helperCpuTime.get();
+    }
+
+    /** @return -1 if JVM doesn't support CPU time measurement */
+    public static long getCurrentThreadCpuNanos() {
+        if (!threadBean.isCurrentThreadCpuTimeSupported()) return -1L;
+        return threadBean.getCurrentThreadCpuTime();
+    }
+
+    private static long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static synchronized void startHeapSampling(Recorder recorder) {
+        activeRecorders.add(recorder);
+        if (heapSampling == null) {
+            heapSampling = PackProcessingManager.getScheduler().scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    long usedHeap = getUsedHeap();
+                    for (Recorder activeRecorder : activeRecorders) {
+                        activeRecorder.updatePeakHeap(usedHeap);
+                    }
+                }
+            }, HEAP_SAMPLE_MILLIS, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static synchronized void stopHeapSampling(Recorder recorder) {
+        activeRecorders.remove(recorder);
+        if (activeRecorders.isEmpty() && heapSampling != null) {
+            heapSampling.cancel(false);
+            heapSampling = null;
+        }
+    }
+
+    /** Measures a single stage run. Must be started and finished on the stage's worker thread. */
+    static class Recorder {
+        private final StageMetrics metrics;
+        private final AtomicLong helperCpuNanos = new AtomicLong();
+        private final AtomicLong peakHeap = new AtomicLong();
+        private long startNanos;
+        private long startCpuNanos;
+        private long startHeap;
+
+        /**
+         * @param previous metrics of the pack's previous stage, null for the first stage
+         */
+        Recorder(String stage, PackModel pack, StageMetrics previous) {
+            metrics = new StageMetrics(stage);
+            if (previous != null) {
+                metrics.inputImages = previous.pages;
+                metrics.inputBytes = previous.outputBytes;
+            } else if (pack.getInputDir() != null) {
+                scanInputImages(new File(pack.getInputDir()));
+            }
+        }
+
+        void start() {
+            helperCpuTime.set(helperCpuNanos);
+            startHeap = getUsedHeap();
+            peakHeap.set(startHeap);
+            startHeapSampling(this);
+            startCpuNanos = getCurrentThreadCpuNanos();
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * Should be called even if the stage has failed
+         * @param pendingOutput output files that are not written yet, may be null
+         */
+        StageMetrics finish(PackModel pack, PendingOutput pendingOutput) {
+            metrics.wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            long cpuNanos = getCurrentThreadCpuNanos();
+            metrics.cpuMillis = startCpuNanos < 0 || cpuNanos < 0 ? -1L :
+                    TimeUnit.NANOSECONDS.toMillis(cpuNanos - startCpuNanos + helperCpuNanos.get());
+            updatePeakHeap(getUsedHeap());
+            stopHeapSampling(this);
+            helperCpuTime.remove();
+            metrics.peakHeapDelta = Math.max(0L, peakHeap.get() - startHeap);
+
+            scanOutputs(pack, pendingOutput);
+            return metrics;
+        }
+
+        private void updatePeakHeap(long usedHeap) {
+            long peak;
+            do {
+                peak = peakHeap.get();
+            } while (usedHeap > peak && !peakHeap.compareAndSet(peak, usedHeap));
+        }
+
+        private void scanInputImages(File dir) {
+            File[] files = dir.listFiles();
+            if (files == null) return;
+
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    scanInputImages(file);
+                    continue;
+                }
+                String name = file.getName().toLowerCase(Locale.ENGLISH);
+                if (name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+                    metrics.inputImages++;
+                    metrics.inputBytes += file.length();
+                }
+            }
+        }
+
+        private void scanOutputs(PackModel pack, PendingOutput pendingOutput) {
+            String atlasPath = pack.getAtlasPath();
+            if (atlasPath == null) return;
+            FileHandle atlasFile = new FileHandle(atlasPath);
+            if (!atlasFile.exists()) return;
+
+            metrics.outputBytes = atlasFile.length();
+            try {
+                TextureAtlas.TextureAtlasData atlasData = new TextureAtlas.TextureAtlasData(atlasFile, atlasFile.parent(), false);
+                for (TextureAtlas.TextureAtlasData.Page page : atlasData.getPages()) {
+                    metrics.pages++;
+                    long pendingSize = pendingOutput != null ? pendingOutput.getPendingSize(page.textureFile.file()) : -1L;
+                    metrics.outputBytes += pendingSize >= 0L ? pendingSize : page.textureFile.length();
+                }
+            } catch (Exception ignored) {
+                // Atlas is not complete yet or was written in a different format, page figures are not essential
+            }
+        }
+    }
+}
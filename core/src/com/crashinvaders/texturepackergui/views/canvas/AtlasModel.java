@@ -10,6 +10,8 @@ import com.badlogic.gdx.utils.Disposable;
 
 /** This is simple TextureAtlas wrapper that holds some extra info for service use */
 public class AtlasModel implements Disposable {
+    private static final String[] ORIGINAL_PAGE_EXTENSIONS = {"png", "jpg"};
+
     private final FileHandle atlasFile;
     private final TextureAtlas atlas;
     private final Array<Page> pages = new Array<>(true, 8);
@@ -17,12 +19,33 @@ public class AtlasModel implements Disposable {
 
     public AtlasModel(FileHandle atlasFile) {
         this.atlasFile = atlasFile;
-        this.atlas = new TextureAtlas(atlasFile);
+        this.atlas = new TextureAtlas(createPreviewData(atlasFile));
         atlasPath = atlasFile.file().getAbsolutePath();
 
         generatePages(atlas);
     }
 
+    /**
+     * ETC pages may not be supported by the desktop GPU (and ETC1 alpha pages are not applied anyway),
+     * so their original pages are shown instead when they are still around.
+     */
+    private static TextureAtlas.TextureAtlasData createPreviewData(FileHandle atlasFile) {
+        TextureAtlas.TextureAtlasData data = new TextureAtlas.TextureAtlasData(atlasFile, atlasFile.parent(), false);
+        for (TextureAtlas.TextureAtlasData.Page page : data.getPages()) {
+            String extension = page.textureFile.extension();
+            if (!extension.equals("ktx") && !extension.equals("zktx")) continue;
+
+            for (String originalExtension : ORIGINAL_PAGE_EXTENSIONS) {
+                FileHandle originalFile = page.textureFile.sibling(page.textureFile.nameWithoutExtension() + "." + originalExtension);
+                if (originalFile.exists()) {
+                    page.texture = new Texture(originalFile, page.format, page.useMipMaps);
+                    break;
+                }
+            }
+        }
+        return data;
+    }
+
     private void generatePages(TextureAtlas atlas) {
         Array<Texture> textures = new Array<>();
 
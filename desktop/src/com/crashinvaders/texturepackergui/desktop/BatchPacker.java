@@ -0,0 +1,226 @@
+package com.crashinvaders.texturepackergui.desktop;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.lwjgl.LwjglFiles;
+import com.badlogic.gdx.backends.lwjgl.LwjglPreferences;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.crashinvaders.texturepackergui.controllers.packing.processors.DefaultPackPipeline;
+import com.crashinvaders.texturepackergui.services.ProjectSerializer;
+import com.crashinvaders.texturepackergui.services.TinifyService;
+import com.crashinvaders.texturepackergui.services.WorkerPoolService;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.utils.CommonUtils;
+import com.crashinvaders.texturepackergui.utils.ThreadPrintStream;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackDurationHistory;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackMetricsReport;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessingManager;
+import com.crashinvaders.texturepackergui.utils.packprocessing.PackProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Packs project without any GL context or window. Intended to be used on build servers.
+ */
+class BatchPacker {
+    static final int EXIT_SUCCESS = 0;
+    static final int EXIT_PACKING_FAILED = 1;
+    static final int EXIT_WRONG_ARGUMENTS = 2;
+
+    private final File projectFile;
+    private final Array<String> packNames;
+    private final int threads;
+    private final boolean forceRepack;
+    private int timeBudgetSeconds;
+    private int tinifyUploads;
+    private String tinifyEndpoint;
+
+    /**
+     * @param packNames names of the packs to process, all the project packs will be processed if empty
+     * @param threads number of worker threads, if not positive, number of available processors will be used
+     */
+    BatchPacker(File projectFile, Array<String> packNames, int threads, boolean forceRepack) {
+        this.projectFile = projectFile;
+        this.packNames = packNames;
+        this.threads = threads > 0 ? threads : WorkerPoolService.getDefaultWorkerThreads();
+        this.forceRepack = forceRepack;
+    }
+
+    /** @param seconds max processing time of a single pack, packs that exceed it fail. Zero means no limit. */
+    void setTimeBudget(int seconds) {
+        this.timeBudgetSeconds = seconds;
+    }
+
+    /** @param uploads max number of simultaneous Tinify uploads, if not positive, the application's setting is used */
+    void setTinifyUploads(int uploads) {
+        this.tinifyUploads = uploads;
+    }
+
+    /** @param endpoint Tinify API server url, if null, the default server is used */
+    void setTinifyEndpoint(String endpoint) {
+        this.tinifyEndpoint = endpoint;
+    }
+
+    /** @return process exit code */
+    int run() {
+        // Processors access files through Gdx.files, that's the only backend module we need here
+        Gdx.files = new LwjglFiles();
+
+        FileHandle projectFileHandle = Gdx.files.absolute(projectFile.getAbsolutePath());
+        if (!projectFileHandle.exists()) {
+            log("Project file doesn't exist: " + projectFileHandle.path());
+            return EXIT_WRONG_ARGUMENTS;
+        }
+
+        ProjectModel project;
+        try {
+            project = new ProjectSerializer().readProject(projectFileHandle);
+        } catch (IOException e) {
+            log("Can't read project file: " + CommonUtils.fetchMessageStack(e));
+            return EXIT_WRONG_ARGUMENTS;
+        }
+
+        Array<PackModel> packs = selectPacks(project);
+        if (packs == null) return EXIT_WRONG_ARGUMENTS;
+        if (packs.size == 0) {
+            log("Nothing to pack");
+            return EXIT_SUCCESS;
+        }
+
+        TinifyService tinifyService = new TinifyService();
+        tinifyService.initialize(new LwjglPreferences(new FileHandle(
+                LwjglFiles.externalPath + DesktopLauncher.PREFERENCES_DIR + "/" + TinifyService.PREF_NAME)));
+        if (tinifyUploads > 0) {
+            tinifyService.setUploadConcurrency(tinifyUploads, false);
+        }
+        if (tinifyEndpoint != null) {
+            tinifyService.setApiEndpoint(tinifyEndpoint);
+        }
+
+        log("Packing " + packs.size + " pack(s) using " + threads + " thread(s)");
+
+        ThreadPoolExecutor packingExecutor = WorkerPoolService.createExecutor(threads, "batch-worker");
+        ThreadPoolExecutor compressionExecutor = WorkerPoolService.createBoundedExecutor(threads, "batch-compression");
+        ThreadPoolExecutor uploadExecutor = WorkerPoolService.createBoundedExecutor(WorkerPoolService.UPLOAD_THREADS, "batch-upload");
+        DefaultPackPipeline.setPageParallelism(threads);
+        BatchListener listener = new BatchListener();
+        PackProcessingManager packProcessingManager = new PackProcessingManager(
+                new DefaultPackPipeline(project, tinifyService, packingExecutor, compressionExecutor, uploadExecutor),
+                listener);
+        try {
+            for (PackModel pack : packs) {
+                packProcessingManager.postPack(pack);
+            }
+            packProcessingManager.setForceRepack(forceRepack);
+            packProcessingManager.setTimeBudget(timeBudgetSeconds * 1000L);
+            packProcessingManager.setDurationHistory(PackDurationHistory.load(project));
+            packProcessingManager.setMetricsReport(new PackMetricsReport(project));
+            packProcessingManager.execute(project);
+
+            listener.awaitFinish();
+        } catch (InterruptedException e) {
+            log("Packing was interrupted");
+            return EXIT_PACKING_FAILED;
+        } finally {
+            packingExecutor.shutdownNow();
+            compressionExecutor.shutdownNow();
+            uploadExecutor.shutdownNow();
+        }
+
+        log(packProcessingManager.getStageStatsSummary());
+        log(String.format("Done: %d succeeded, %d up to date, %d failed",
+                listener.succeeded, listener.upToDate, listener.failed));
+        return listener.failed > 0 ? EXIT_PACKING_FAILED : EXIT_SUCCESS;
+    }
+
+    /** @return null if some of the requested packs can't be found */
+    private Array<PackModel> selectPacks(ProjectModel project) {
+        if (packNames.size == 0) return new Array<>(project.getPacks());
+
+        Array<PackModel> packs = new Array<>();
+        for (String packName : packNames) {
+            PackModel pack = findPack(project, packName);
+            if (pack == null) {
+                log("Project doesn't contain pack: " + packName);
+                return null;
+            }
+            packs.add(pack);
+        }
+        return packs;
+    }
+
+    private static PackModel findPack(ProjectModel project, String name) {
+        for (PackModel pack : project.getPacks()) {
+            if (pack.getName().equals(name)) return pack;
+        }
+        return null;
+    }
+
+    /** Worker threads have their System.out redirected to the pack logs, so we write to the original stream */
+    private static void log(String message) {
+        PrintStream stdout = ThreadPrintStream.stdout;
+        synchronized (stdout) {
+            stdout.println(message);
+        }
+    }
+
+    private static class BatchListener implements PackProcessingManager.Listener {
+        private final CountDownLatch finishLatch = new CountDownLatch(1);
+        int succeeded = 0;
+        int upToDate = 0;
+        int failed = 0;
+
+        void awaitFinish() throws InterruptedException {
+            finishLatch.await();
+        }
+
+        @Override
+        public void onProcessingStarted() {
+        }
+
+        @Override
+        public void onProcessingFinished() {
+            finishLatch.countDown();
+        }
+
+        @Override
+        public void onBegin(PackModel pack) {
+        }
+
+        @Override
+        public synchronized void onError(PackModel pack, String log, ObjectMap metadataMap, Exception e) {
+            failed++;
+            log("[FAILED] " + pack.getCanonicalName() + "\n" + log);
+        }
+
+        @Override
+        public synchronized void onSuccess(PackModel pack, String log, ObjectMap metadataMap) {
+            succeeded++;
+            String message = "[OK] " + pack.getCanonicalName();
+            if (metadataMap.containsKey(PackProcessor.META_COMPRESSION_RATE)) {
+                float compression = (float) metadataMap.get(PackProcessor.META_COMPRESSION_RATE);
+                message += String.format(" (compression %+5.2f%%)", compression * 100f);
+            }
+            log(message);
+        }
+
+        @Override
+        public synchronized void onUpToDate(PackModel pack, String log) {
+            upToDate++;
+            log("[UP TO DATE] " + pack.getCanonicalName());
+        }
+
+        @Override
+        public synchronized void onCancelled(PackModel pack, String log) {
+            // Batch runs are never cancelled explicitly, though count it as a failure just in case
+            failed++;
+            log("[CANCELLED] " + pack.getCanonicalName());
+        }
+    }
+}
@@ -3,16 +3,23 @@ package com.crashinvaders.texturepackergui.desktop;
 import com.badlogic.gdx.Files;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplication;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplicationConfiguration;
+import com.badlogic.gdx.utils.Array;
 import com.crashinvaders.texturepackergui.App;
+import com.crashinvaders.texturepackergui.AppConstants;
 import com.crashinvaders.texturepackergui.AppParams;
 import com.github.czyzby.autumn.fcs.scanner.DesktopClassScanner;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
 
 import java.io.File;
 
+import static com.crashinvaders.texturepackergui.utils.CommonUtils.splitAndTrim;
+
 public class DesktopLauncher {
+	static final String PREFERENCES_DIR = AppConstants.APP_DATA_DIR;
+
 	public static void main(final String[] args) {
 		Arguments arguments = new Arguments();
 
@@ -21,16 +28,37 @@ public class DesktopLauncher {
 			parser.parseArgument(args);
 		} catch (CmdLineException e) {
 			System.out.println("Error: " + e.getLocalizedMessage());
+			if (isBatchMode(args)) {
+				e.getParser().printUsage(System.out);
+				System.exit(BatchPacker.EXIT_WRONG_ARGUMENTS);
+			}
 			return;
 		}
 
+		if (arguments.convertTo != null) {
+			if (arguments.project == null) {
+				System.out.println("Error: project to convert is not specified");
+				System.exit(BatchPacker.EXIT_WRONG_ARGUMENTS);
+			}
+			System.exit(new ProjectConverter(arguments.project, arguments.convertTo).run());
+		}
+
+		if (arguments.batchProject != null) {
+			Array<String> packNames = arguments.packs != null ? splitAndTrim(arguments.packs, ",") : new Array<String>();
+			BatchPacker batchPacker = new BatchPacker(arguments.batchProject, packNames, arguments.threads, arguments.force);
+			batchPacker.setTimeBudget(arguments.timeout);
+			batchPacker.setTinifyUploads(arguments.tinifyUploads);
+			batchPacker.setTinifyEndpoint(arguments.tinifyEndpoint);
+			System.exit(batchPacker.run());
+		}
+
 
 		final LwjglApplicationConfiguration configuration = new LwjglApplicationConfiguration();
 		configuration.title = "LibGDX Texture Packer GUI";
 		configuration.addIcon("icon128.png", Files.FileType.Internal);
 		configuration.addIcon("icon32.png", Files.FileType.Internal);
 		configuration.addIcon("icon16.png", Files.FileType.Internal);
-		configuration.preferencesDirectory = ".gdxtexturepackergui";
+		configuration.preferencesDirectory = PREFERENCES_DIR;
 		configuration.width = 1024;
 		configuration.height = 600;
 
@@ -41,9 +69,40 @@ public class DesktopLauncher {
 		new LwjglApplication(new WindowParamsPersistingApplicationWrapper(app, configuration), configuration);
 	}
 
+	private static boolean isBatchMode(String[] args) {
+		for (String arg : args) {
+			if (arg.equals("--batch") || arg.equals("--convert")) return true;
+		}
+		return false;
+	}
+
 	private static class Arguments {
 		@Argument
 		File project;
+
+		@Option(name = "--convert", metaVar = "<target.tpprojb>", usage = "convert the project to the format of the target file (.tpproj or .tpprojb) without launching the UI")
+		File convertTo;
+
+		@Option(name = "--batch", metaVar = "<project.tpproj>", usage = "pack the project without launching the UI")
+		File batchProject;
+
+		@Option(name = "--packs", metaVar = "name1,name2", usage = "names of the packs to process in batch mode (all by default)")
+		String packs;
+
+		@Option(name = "--threads", metaVar = "N", usage = "number of worker threads in batch mode (CPU cores by default)")
+		int threads = 0;
+
+		@Option(name = "--force", usage = "process packs in batch mode even if they are up to date")
+		boolean force = false;
+
+		@Option(name = "--timeout", metaVar = "SECONDS", usage = "max processing time of a single pack in batch mode (unlimited by default)")
+		int timeout = 0;
+
+		@Option(name = "--tinify-uploads", metaVar = "N", usage = "max number of simultaneous Tinify uploads in batch mode (app settings by default)")
+		int tinifyUploads = 0;
+
+		@Option(name = "--tinify-endpoint", metaVar = "URL", usage = "Tinify API server, e.g. a local stub for testing (https://api.tinify.com by default)")
+		String tinifyEndpoint;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.crashinvaders.texturepackergui.desktop;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.lwjgl.LwjglFiles;
+import com.badlogic.gdx.files.FileHandle;
+import com.crashinvaders.texturepackergui.services.ProjectSerializer;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.utils.CommonUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Converts project between the text and binary formats without launching the UI.
+ * Formats are defined by the file extensions.
+ */
+class ProjectConverter {
+    private final File sourceFile;
+    private final File targetFile;
+
+    ProjectConverter(File sourceFile, File targetFile) {
+        this.sourceFile = sourceFile;
+        this.targetFile = targetFile;
+    }
+
+    /** @return process exit code */
+    int run() {
+        Gdx.files = new LwjglFiles();
+
+        FileHandle source = Gdx.files.absolute(sourceFile.getAbsolutePath());
+        FileHandle target = Gdx.files.absolute(targetFile.getAbsolutePath());
+        if (!source.exists()) {
+            System.out.println("Project file doesn't exist: " + source.path());
+            return BatchPacker.EXIT_WRONG_ARGUMENTS;
+        }
+
+        ProjectSerializer serializer = new ProjectSerializer();
+        try {
+            ProjectModel project = serializer.readProject(source);
+            serializer.writeProject(project, target);
+            System.out.println("Converted " + project.getPacks().size + " pack(s) to " + target.path());
+            return BatchPacker.EXIT_SUCCESS;
+        } catch (IOException e) {
+            System.out.println("Can't convert project: " + CommonUtils.fetchMessageStack(e));
+            return BatchPacker.EXIT_PACKING_FAILED;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.crashinvaders.texturepackergui.desktop;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.crashinvaders.texturepackergui.AppConstants;
+import com.crashinvaders.texturepackergui.services.ProjectSerializer;
+import com.crashinvaders.texturepackergui.services.model.PackModel;
+import com.crashinvaders.texturepackergui.services.model.ProjectModel;
+import com.crashinvaders.texturepackergui.services.model.compression.PngtasticCompressionModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures reading of a generated project with lots of packs, in both text and binary formats.
+ * Packs of the binary project are hydrated lazily, so its read time covers the pack list only.
+ * <p/>
+ * Usage: ProjectLoadBenchmark [packs] [runs], 5000 packs and 10 runs by default.
+ * Run it with "gradlew desktop:benchmarkProjectLoad [-Ppacks=N] [-Pruns=N]".
+ */
+public class ProjectLoadBenchmark {
+    private static final int WARM_UP_RUNS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int packCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        File dir = Files.createTempDirectory("tpgui-benchmark").toFile();
+        FileHandle dirHandle = new FileHandle(dir);
+        try {
+            ProjectSerializer serializer = new ProjectSerializer();
+            ProjectModel sourceProject = createProject(dir, packCount);
+            for (String extension : new String[]{AppConstants.PROJECT_FILE_EXT, AppConstants.PROJECT_BINARY_FILE_EXT}) {
+                FileHandle projectFile = dirHandle.child("benchmark." + extension);
+                serializer.writeProject(sourceProject, projectFile);
+                benchmark(serializer, projectFile, packCount, runs);
+            }
+        } finally {
+            dirHandle.deleteDirectory();
+        }
+    }
+
+    private static void benchmark(ProjectSerializer serializer, FileHandle projectFile, int packCount, int runs) throws IOException {
+        System.out.println(String.format(Locale.US, "Project: %s, %d packs, %.1f KB", projectFile.name(), packCount, projectFile.length() / 1024f));
+
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            serializer.readProject(projectFile);
+        }
+
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long startTime = System.nanoTime();
+            ProjectModel project = serializer.readProject(projectFile);
+            times[i] = System.nanoTime() - startTime;
+
+            if (project.getPacks().size != packCount) {
+                throw new IllegalStateException("Expected " + packCount + " packs, but read " + project.getPacks().size);
+            }
+        }
+
+        Arrays.sort(times);
+        System.out.println(String.format(Locale.US, "Read time: min %.1f ms, median %.1f ms, max %.1f ms (%d runs)",
+                times[0] / 1e6, times[runs / 2] / 1e6, times[runs - 1] / 1e6, runs));
+    }
+
+    private static ProjectModel createProject(File dir, int packCount) {
+        ProjectModel project = new ProjectModel();
+        for (int i = 0; i < packCount; i++) {
+            PackModel pack = new PackModel();
+            pack.setName("pack" + i);
+            pack.setFilename("pack" + i + ".atlas");
+            pack.setInputDir(new File(dir, "input/pack" + i).getPath());
+            pack.setOutputDir(new File(dir, "output").getPath());
+            project.addPack(pack);
+        }
+        project.setPngCompression(new PngtasticCompressionModel());
+        return project;
+    }
+}